@@ -0,0 +1,88 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the map accessors of WaterSystem, which copy their structures into new Sets on every call. The
+ * active tank map grows with the tank count times the overlap depth, so these stop at 10^3 tanks.
+ *
+ * @author ian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class AccessorBenchmark
+{
+    @Param({ "10", "100", "1000" })
+    public int m_tankCount;
+
+    /**
+     * The average number of tanks active at a height. Below one the tanks leave gaps, and far above it most tanks are
+     * partially filled at any water height.
+     */
+    @Param({ "0.5", "50" })
+    public double m_overlapDepth;
+
+    /**
+     * The probability that each edge snaps to the shared grid, so that break points are shared by many tanks.
+     */
+    @Param({ "0", "1" })
+    public double m_duplication;
+
+    @Param({ "UNIFORM" })
+    public TankNetworkGenerator.HeightDistribution m_heightDistribution;
+
+    private WaterSystem m_system;
+
+    /**
+     * Generates a system whose structures are already generated.
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        m_system = new WaterSystem(WaterSystemBenchmark.generate(m_tankCount, m_overlapDepth, m_duplication,
+                m_heightDistribution));
+        m_system.generateStructures();
+    }
+
+    @Benchmark
+    public NavigableMap<Double, Set<Tank>> tanksByBottom()
+    {
+        return m_system.tanksByBottom();
+    }
+
+    @Benchmark
+    public NavigableMap<Double, Set<Tank>> activeTanks()
+    {
+        return m_system.activeTanks();
+    }
+
+    @Benchmark
+    public NavigableMap<Double, Set<Tank>> tanksByBottomSnapshot()
+    {
+        return m_system.tanksByBottomSnapshot();
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for building a WaterSystem and for its volume and tank level queries, over networks of 10 to 10^6 tanks
+ * from TankNetworkGenerator. The queries cycle through a fixed set of random heights and volumes, so that the branch
+ * predictor and caches cannot settle on a single answer.
+ *
+ * @author ian
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class WaterSystemBenchmark
+{
+    /**
+     * The number of distinct query arguments, a power of two so that cycling through them is a mask.
+     */
+    private static final int s_queryCount = 1 << 10;
+
+    /**
+     * The seed of the generated tanks, so that every run measures the same tanks.
+     */
+    private static final long s_seed = 293;
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int m_tankCount;
+
+    /**
+     * The average number of tanks active at a height. Below one the tanks leave gaps, and far above it most tanks are
+     * partially filled at any water height.
+     */
+    @Param({ "0.5", "50" })
+    public double m_overlapDepth;
+
+    /**
+     * The probability that each edge snaps to the shared grid, so that break points are shared by many tanks.
+     */
+    @Param({ "0", "1" })
+    public double m_duplication;
+
+    @Param({ "UNIFORM" })
+    public TankNetworkGenerator.HeightDistribution m_heightDistribution;
+
+    private Set<Tank> m_tanks;
+
+    private WaterSystem m_system;
+
+    private double[] m_heights;
+
+    private double[] m_volumes;
+
+    private int m_next;
+
+    /**
+     * Generates the tanks, and a system whose structures are already generated for the query benchmarks.
+     */
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        m_tanks = generate(m_tankCount, m_overlapDepth, m_duplication, m_heightDistribution);
+        m_system = new WaterSystem(m_tanks);
+
+        // Spread the query arguments over the whole range of the system
+        double minHeight = m_system.tanksByBottomSnapshot().firstKey();
+        double maxHeight = m_system.tanksByTopSnapshot().lastKey();
+        double maxVolume = m_system.heightToVolume(maxHeight);
+
+        // Generate the structures the queries use, but not the snapshot of the active tanks, which grows with the
+        // tank count times the overlap depth
+        m_system.heightToTankLevel(minHeight);
+        Random random = new Random(s_queryCount);
+        m_heights = new double[s_queryCount];
+        m_volumes = new double[s_queryCount];
+        for (int i = 0; i < s_queryCount; ++i)
+        {
+            m_heights[i] = minHeight + random.nextDouble() * (maxHeight - minHeight);
+            m_volumes[i] = random.nextDouble() * maxVolume;
+        }
+    }
+
+    /**
+     * Construction and the first query, which generates the volume profile and everything it depends on.
+     *
+     * @return The volume, so that the work is not eliminated.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public Double buildAndFirstQuery()
+    {
+        return new WaterSystem(m_tanks).heightToVolume(m_heights[0]);
+    }
+
+    @Benchmark
+    public Double heightToVolume()
+    {
+        return m_system.heightToVolume(this.nextHeight());
+    }
+
+    @Benchmark
+    public Map<Tank, Double> heightToTankLevel()
+    {
+        return m_system.heightToTankLevel(this.nextHeight());
+    }
+
+    @Benchmark
+    public Map<Tank, Double> volumeToTankLevel()
+    {
+        return m_system.volumeToTankLevel(m_volumes[this.nextIndex()]);
+    }
+
+    /**
+     * Generates the tanks of a network into a set.
+     *
+     * @param tankCount The number of tanks.
+     * @param overlapDepth The average number of tanks active at a height.
+     * @param duplication The probability that each edge is snapped to the shared grid.
+     * @param heightDistribution The distribution of the tank heights.
+     * @return A new Set of the tanks.
+     */
+    static Set<Tank> generate(int tankCount, double overlapDepth, double duplication,
+                              TankNetworkGenerator.HeightDistribution heightDistribution)
+    {
+        return new TankNetworkGenerator(s_seed, tankCount, overlapDepth, duplication, heightDistribution).toSet();
+    }
+
+    private double nextHeight()
+    {
+        return m_heights[this.nextIndex()];
+    }
+
+    private int nextIndex()
+    {
+        return m_next++ & (s_queryCount - 1);
+    }
+}
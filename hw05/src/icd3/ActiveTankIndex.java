@@ -0,0 +1,309 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An index of the tanks active at each height, stored as activation and deactivation deltas plus sparse checkpoints.
+ *
+ * The deltas are the edge maps themselves: a tank activates at its bottom and deactivates at its top. A checkpoint
+ * holds the full active set at one height, and a new checkpoint is only taken once at least as many deltas have been
+ * applied since the last one as there are active tanks. Every checkpoint is therefore paid for by the deltas before
+ * it, and the whole index is linear in the number of tanks. The active set at any height is materialized on demand by
+ * replaying the deltas since the nearest checkpoint below it.
+ *
+ * Adding a tank adds its deltas to the gaps above the checkpoints below its edges. Each checkpoint counts the deltas
+ * added to its gap since it was taken, and once they pay for a copy of its active set, the gap is checkpointed again
+ * by the same rule, so replay stays bounded however many tanks are added. Removing a tank only shortens the replay.
+ *
+ * Tanks are referred to by their indices in a TankStore, and only turned into Tank objects when materialized.
+ *
+ * @author ian
+ *
+ */
+class ActiveTankIndex
+{
+    /**
+     * The store that resolves tank indices.
+     */
+    private final TankStore m_tankStore;
+
+    /**
+     * A map that associates to each break point the indices of the tanks whose bottoms are exactly at the break point.
+     */
+    private final NavigableMap<Double, IntList> m_tanksByBottom;
+
+    /**
+     * A map that associates to each break point the indices of the tanks whose tops are exactly at the break point.
+     */
+    private final NavigableMap<Double, IntList> m_tanksByTop;
+
+    /**
+     * A map that associates to some heights the indices of all the tanks active at that height. The first checkpoint
+     * is an empty set at negative infinity, so that every height has a checkpoint below it.
+     */
+    private final NavigableMap<Double, Checkpoint> m_checkpoints;
+
+    /**
+     * Initializes the index over the given edge maps. The maps are shared rather than copied, and must be kept current
+     * by the owner as tanks are added and removed.
+     *
+     * @param tankStore The store that resolves tank indices.
+     * @param tanksByBottom A NavigableMap of bottom edges to tank indices.
+     * @param tanksByTop A NavigableMap of top edges to tank indices.
+     */
+    public ActiveTankIndex(TankStore tankStore, NavigableMap<Double, IntList> tanksByBottom,
+                           NavigableMap<Double, IntList> tanksByTop)
+    {
+        m_tankStore = tankStore;
+        m_tanksByBottom = tanksByBottom;
+        m_tanksByTop = tanksByTop;
+        m_checkpoints = new TreeMap<>();
+
+        // Checkpoint every break point above an empty set at the bottom
+        m_checkpoints.put(Double.NEGATIVE_INFINITY, new Checkpoint(new IndexSet(0)));
+        this.checkpointGap(Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Get the set of tanks active at a height, that is, whose bottoms are at or below it and whose tops are above it.
+     *
+     * @param height The height at which to measure.
+     * @return A new Set of the active tanks.
+     */
+    public Set<Tank> activeAt(double height)
+    {
+        // Start from the nearest checkpoint
+        Entry<Double, Checkpoint> checkpoint = m_checkpoints.floorEntry(height);
+        Set<Tank> activeTanks = new HashSet<>();
+        double from = checkpoint.getKey();
+        this.activate(activeTanks, checkpoint.getValue().m_activeTanks.toIntList());
+
+        // Any tank whose top is replayed was either in the checkpoint or has its bottom replayed, so all activations
+        // can be applied before all deactivations
+        for (IntList tanks : m_tanksByBottom.subMap(from, false, height, true).values())
+        {
+            this.activate(activeTanks, tanks);
+        }
+        for (IntList tanks : m_tanksByTop.subMap(from, false, height, true).values())
+        {
+            this.deactivate(activeTanks, tanks);
+        }
+
+        return activeTanks;
+    }
+
+    /**
+     * Materialize the active set at every break point.
+     *
+     * @return A new NavigableMap associating break points to new sets of active tanks.
+     */
+    public NavigableMap<Double, Set<Tank>> materialize()
+    {
+        NavigableMap<Double, Set<Tank>> activeTanks = new TreeMap<>();
+        Set<Tank> runningActiveTanks = new HashSet<>();
+
+        for (double breakPoint : breakPoints(m_tanksByBottom, m_tanksByTop))
+        {
+            this.activate(runningActiveTanks, m_tanksByBottom.get(breakPoint));
+            this.deactivate(runningActiveTanks, m_tanksByTop.get(breakPoint));
+
+            activeTanks.put(breakPoint, new HashSet<Tank>(runningActiveTanks));
+        }
+
+        return activeTanks;
+    }
+
+    /**
+     * Adds a tank to every checkpoint within its height range, and checkpoints again any gap whose added deltas have
+     * paid for it. The edge maps must already include the tank.
+     *
+     * @param tankIndex The index of the tank that was added.
+     * @param bottom The bottom of the tank.
+     * @param top The top of the tank.
+     */
+    public void addTank(int tankIndex, double bottom, double top)
+    {
+        for (Checkpoint checkpoint : m_checkpoints.subMap(bottom, true, top, false).values())
+        {
+            checkpoint.m_activeTanks.add(tankIndex);
+        }
+
+        // Charge each edge to the gap it will be replayed in. The top is charged first, since checkpointing the gap
+        // below the bottom may take a new checkpoint at the top.
+        this.addDelta(top);
+        this.addDelta(bottom);
+    }
+
+    /**
+     * Removes a tank from every checkpoint within its height range. The edge maps must be updated separately.
+     *
+     * @param tankIndex The index of the tank that was removed.
+     * @param bottom The bottom of the tank.
+     * @param top The top of the tank.
+     */
+    public void removeTank(int tankIndex, double bottom, double top)
+    {
+        for (Checkpoint checkpoint : m_checkpoints.subMap(bottom, true, top, false).values())
+        {
+            checkpoint.m_activeTanks.remove(tankIndex);
+        }
+    }
+
+    /**
+     * Get the number of checkpoints, each of which retains a full active set.
+     *
+     * @return The number of checkpoints.
+     */
+    public int checkpointCount()
+    {
+        // The empty checkpoint at negative infinity retains nothing
+        return m_checkpoints.size() - 1;
+    }
+
+    /**
+     * Charges a delta at a height to the gap above the checkpoint below it, and checkpoints that gap again once its
+     * added deltas have paid for a copy of the checkpoint's active set. A delta at a checkpoint is never replayed.
+     *
+     * @param height The height of the delta.
+     */
+    private void addDelta(double height)
+    {
+        if (m_checkpoints.containsKey(height))
+        {
+            return;
+        }
+
+        Entry<Double, Checkpoint> below = m_checkpoints.lowerEntry(height);
+        Checkpoint checkpoint = below.getValue();
+        if (++checkpoint.m_addedDeltaCount > checkpoint.m_activeTanks.size())
+        {
+            this.checkpointGap(below.getKey());
+        }
+    }
+
+    /**
+     * Takes checkpoints at the break points between a checkpoint and the next, replaying the deltas from the
+     * checkpoint's active set and taking a new checkpoint once at least as many deltas have been applied since the
+     * last one as there are active tanks.
+     *
+     * @param from The height of the checkpoint at the bottom of the gap.
+     */
+    private void checkpointGap(double from)
+    {
+        Checkpoint checkpoint = m_checkpoints.get(from);
+        checkpoint.m_addedDeltaCount = 0;
+        Double to = m_checkpoints.higherKey(from);
+        if (null == to)
+        {
+            to = Double.POSITIVE_INFINITY;
+        }
+
+        // Create a running set of active tanks, and count the deltas applied to it since the last checkpoint
+        IndexSet runningActiveTanks = new IndexSet(checkpoint.m_activeTanks);
+        int deltaCount = 0;
+
+        NavigableMap<Double, IntList> tanksByBottom = m_tanksByBottom.subMap(from, false, to, false);
+        NavigableMap<Double, IntList> tanksByTop = m_tanksByTop.subMap(from, false, to, false);
+        for (double breakPoint : breakPoints(tanksByBottom, tanksByTop))
+        {
+            IntList bottoms = tanksByBottom.get(breakPoint);
+            IntList tops = tanksByTop.get(breakPoint);
+
+            for (int i = 0; null != bottoms && i < bottoms.size(); ++i)
+            {
+                runningActiveTanks.add(bottoms.get(i));
+                ++deltaCount;
+            }
+            for (int i = 0; null != tops && i < tops.size(); ++i)
+            {
+                runningActiveTanks.remove(tops.get(i));
+                ++deltaCount;
+            }
+
+            // Only checkpoint once the deltas since the last checkpoint have paid for the copy
+            if (deltaCount >= runningActiveTanks.size())
+            {
+                m_checkpoints.put(breakPoint, new Checkpoint(new IndexSet(runningActiveTanks)));
+                deltaCount = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the union of the break points of two edge maps, in increasing order.
+     *
+     * @param tanksByBottom A NavigableMap of bottom edges to tank indices.
+     * @param tanksByTop A NavigableMap of top edges to tank indices.
+     * @return The set of break points.
+     */
+    private static Set<Double> breakPoints(NavigableMap<Double, IntList> tanksByBottom,
+                                           NavigableMap<Double, IntList> tanksByTop)
+    {
+        Set<Double> breakPoints = new TreeSet<>(tanksByBottom.navigableKeySet());
+        breakPoints.addAll(tanksByTop.navigableKeySet());
+        return breakPoints;
+    }
+
+    /**
+     * Activates a list of tanks, if there is one.
+     *
+     * @param activeTanks The running Set of active tanks.
+     * @param tanks The indices of the tanks to activate, or null.
+     */
+    private void activate(Set<Tank> activeTanks, IntList tanks)
+    {
+        for (int i = 0; null != tanks && i < tanks.size(); ++i)
+        {
+            activeTanks.add(m_tankStore.tank(tanks.get(i)));
+        }
+    }
+
+    /**
+     * Deactivates a list of tanks, if there is one.
+     *
+     * @param activeTanks The running Set of active tanks.
+     * @param tanks The indices of the tanks to deactivate, or null.
+     */
+    private void deactivate(Set<Tank> activeTanks, IntList tanks)
+    {
+        for (int i = 0; null != tanks && i < tanks.size(); ++i)
+        {
+            activeTanks.remove(m_tankStore.tank(tanks.get(i)));
+        }
+    }
+
+    /**
+     * The full active set at a checkpoint, and the deltas added to the gap above it since it was taken.
+     */
+    private static class Checkpoint
+    {
+        /**
+         * The indices of all the tanks active at the checkpoint.
+         */
+        private final IndexSet m_activeTanks;
+
+        /**
+         * The number of deltas added between this checkpoint and the next since the gap was last checkpointed.
+         */
+        private int m_addedDeltaCount;
+
+        /**
+         * Initializes a checkpoint with no added deltas.
+         *
+         * @param activeTanks The indices of all the tanks active at the checkpoint.
+         */
+        Checkpoint(IndexSet activeTanks)
+        {
+            m_activeTanks = activeTanks;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A stateful reader of a WaterSystem's height to volume function, for streams of queries that move slowly up or down.
+ * The cursor remembers the cross section of its last query and searches outward from it, so a query in the same or a
+ * nearby cross section costs a few comparisons instead of a full search. Each query also leaves the cursor on the
+ * active base area of its cross section, which is the rate of change of volume with height there.
+ *
+ * A cursor reads the state of the system when it was created, and does not reflect later changes. It is not
+ * thread-safe.
+ *
+ * @author ian
+ *
+ */
+public class BijectionCursor
+{
+    /**
+     * The function being read.
+     */
+    private final VolumeBreakPointBijection m_volumeBijection;
+
+    /**
+     * The index of the break point below the cross section of the last query.
+     */
+    private int m_lastBreak;
+
+    /**
+     * Initializes the cursor at the bottom of the system.
+     *
+     * @param volumeBijection The function to read.
+     */
+    BijectionCursor(VolumeBreakPointBijection volumeBijection)
+    {
+        m_volumeBijection = volumeBijection;
+        m_lastBreak = 0;
+    }
+
+    /**
+     * Get the total volume of water in the system given a specified water height, and move the cursor to its cross
+     * section.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The volume of the water in all the tanks.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public double heightToVolume(double waterHeight)
+    {
+        m_volumeBijection.throwIfInvalidWaterHeight(waterHeight);
+
+        m_lastBreak = m_volumeBijection.floorBreakPoint(waterHeight, m_lastBreak);
+        return m_volumeBijection.volumeAbove(m_lastBreak, waterHeight);
+    }
+
+    /**
+     * Get the water height of the system given a specified water volume, and move the cursor to its cross section.
+     *
+     * @param waterVolume The volume of the WaterSystem at which to measure.
+     * @return The height of the water.
+     * @throws IllegalArgumentException if the waterVolume is negative or exceeds the maximum volume.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public double volumeToHeight(double waterVolume)
+    {
+        m_volumeBijection.throwIfInvalidWaterVolume(waterVolume);
+
+        m_lastBreak = m_volumeBijection.floorVolume(waterVolume, m_lastBreak);
+        return m_volumeBijection.heightAbove(m_lastBreak, waterVolume);
+    }
+
+    /**
+     * Get the total active base area at the last query, which is the derivative of volume with respect to height
+     * there. At a break point, this is the area of the cross section above it.
+     *
+     * @return The active base area, or 0 before the first query of an empty system.
+     */
+    public double activeArea()
+    {
+        return m_volumeBijection.isEmpty() ? 0.0 : m_volumeBijection.areaAbove(m_lastBreak);
+    }
+}
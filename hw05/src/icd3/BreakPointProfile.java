@@ -0,0 +1,299 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A volume profile stored as three parallel sequences indexed by break point: the heights, the total volumes and the
+ * active base areas above them. Because volume is monotone in height, queries in either direction are a search for
+ * the last break point at or below the key followed by a linear interpolation across its cross section. Subclasses
+ * provide only the storage, whether heap arrays or mapped buffers, so every profile searches and interpolates alike.
+ *
+ * @author ian
+ *
+ */
+abstract class BreakPointProfile extends VolumeProfile
+{
+    /**
+     * Get the number of break points.
+     *
+     * @return The number of break points.
+     */
+    abstract int breakPointCount();
+
+    /**
+     * Get the height of a break point.
+     *
+     * @param breakPoint The index of the break point.
+     * @return The height.
+     */
+    abstract double breakPointHeight(int breakPoint);
+
+    /**
+     * Get the total volume of the system at a break point.
+     *
+     * @param breakPoint The index of the break point.
+     * @return The volume.
+     */
+    abstract double breakPointVolume(int breakPoint);
+
+    /**
+     * Get the total active base area above a break point, which is the rate of change of volume with height there.
+     *
+     * @param lastBreak The index of the break point.
+     * @return The area of the cross section.
+     */
+    abstract double areaAbove(int lastBreak);
+
+    @Override
+    protected double volumeAt(double waterHeight)
+    {
+        // Get the last break point before or at waterHeight
+        int lastBreak = this.floorIndex(false, waterHeight, 0, this.breakPointCount() - 1);
+
+        return this.volumeAbove(lastBreak, waterHeight);
+    }
+
+    @Override
+    protected double heightAt(double waterVolume)
+    {
+        // Get the last break point at or before this volume. Break points separated by empty space share a volume,
+        // in which case the highest of them is used.
+        int lastBreak = this.floorIndex(true, waterVolume, 0, this.breakPointCount() - 1);
+
+        return this.heightAbove(lastBreak, waterVolume);
+    }
+
+    /**
+     * Get the volume at a height within the cross section above a break point.
+     *
+     * @param lastBreak The index of the last break point at or below waterHeight.
+     * @param waterHeight The given height.
+     * @return The volume.
+     */
+    double volumeAbove(int lastBreak, double waterHeight)
+    {
+        // Add the volume of the cross section above the last break point
+        return this.breakPointVolume(lastBreak) + this.areaAbove(lastBreak) * (waterHeight - this.breakPointHeight(
+                lastBreak));
+    }
+
+    /**
+     * Get the height at a volume within the cross section above a break point.
+     *
+     * @param lastBreak The index of the last break point whose volume is at or below waterVolume.
+     * @param waterVolume The given volume.
+     * @return The height.
+     */
+    double heightAbove(int lastBreak, double waterVolume)
+    {
+        // Get the volume of the current cross section by subtracting the total volume at the break point
+        double crossSectionVolume = waterVolume - this.breakPointVolume(lastBreak);
+
+        // The topmost break point has no cross-section above it
+        if (crossSectionVolume == 0)
+        {
+            return this.breakPointHeight(lastBreak);
+        }
+
+        // The water height is the last break point + the cross section height (volume / area)
+        return this.breakPointHeight(lastBreak) + crossSectionVolume / this.areaAbove(lastBreak);
+    }
+
+    /**
+     * Get the index of the last break point at or below a height, searching outward from a hint.
+     *
+     * @param waterHeight A height within the range of break points.
+     * @param hint A starting index, usually the result of the previous search.
+     * @return The index of the break point.
+     */
+    int floorBreakPoint(double waterHeight, int hint)
+    {
+        return this.gallop(false, waterHeight, hint);
+    }
+
+    /**
+     * Get the index of the highest break point whose volume is at or below a volume, searching outward from a hint.
+     *
+     * @param waterVolume A volume within the range of the system.
+     * @param hint A starting index, usually the result of the previous search.
+     * @return The index of the break point.
+     */
+    int floorVolume(double waterVolume, int hint)
+    {
+        return this.gallop(true, waterVolume, hint);
+    }
+
+    /**
+     * Gets the volume at each of the given heights. Each search starts from the break point found for the previous
+     * height, so sorted or clustered input is converted in a single merge-style walk over the break points.
+     */
+    @Override
+    public void getWaterVolumes(double[] waterHeights, double[] waterVolumes)
+    {
+        throwIfInvalidWaterHeights(waterHeights, waterVolumes);
+
+        // Carry the last break point from one height to the next
+        int lastBreak = 0;
+        for (int i = 0; i < waterHeights.length; ++i)
+        {
+            double waterHeight = waterHeights[i];
+            lastBreak = this.floorBreakPoint(waterHeight, lastBreak);
+
+            waterVolumes[i] = this.volumeAbove(lastBreak, waterHeight);
+        }
+    }
+
+    /**
+     * Gets the height at each of the given volumes. Each search starts from the break point found for the previous
+     * volume, so sorted or clustered input is converted in a single merge-style walk over the break points.
+     */
+    @Override
+    public void getWaterHeights(double[] waterVolumes, double[] waterHeights)
+    {
+        throwIfInvalidWaterVolumes(waterVolumes, waterHeights);
+
+        // Carry the last break point from one volume to the next
+        int lastBreak = 0;
+        for (int i = 0; i < waterVolumes.length; ++i)
+        {
+            double waterVolume = waterVolumes[i];
+            lastBreak = this.floorVolume(waterVolume, lastBreak);
+
+            waterHeights[i] = this.heightAbove(lastBreak, waterVolume);
+        }
+    }
+
+    @Override
+    public double minHeight()
+    {
+        throwIfEmpty();
+        return this.breakPointHeight(0);
+    }
+
+    @Override
+    public double maxHeight()
+    {
+        throwIfEmpty();
+        return this.breakPointHeight(this.breakPointCount() - 1);
+    }
+
+    @Override
+    public double maxVolume()
+    {
+        throwIfEmpty();
+        return this.breakPointVolume(this.breakPointCount() - 1);
+    }
+
+    /**
+     * Get whether there are no break points.
+     *
+     * @return true if the profile is empty.
+     */
+    boolean isEmpty()
+    {
+        return this.breakPointCount() == 0;
+    }
+
+    /**
+     * Throws an exception if there are no break points.
+     */
+    private void throwIfEmpty()
+    {
+        if (this.isEmpty())
+        {
+            throw new NoSuchElementException("There are no tanks in the system.");
+        }
+    }
+
+    /**
+     * Get the height or the volume at a break point, so that one search serves both directions.
+     *
+     * @param byVolume true for the volume, false for the height.
+     * @param breakPoint The index of the break point.
+     * @return The value.
+     */
+    private double key(boolean byVolume, int breakPoint)
+    {
+        return byVolume ? this.breakPointVolume(breakPoint) : this.breakPointHeight(breakPoint);
+    }
+
+    /**
+     * Search for the last break point whose value is less than or equal to the key, starting from a hint. The search
+     * gallops outward from the hint in either direction, so a key that falls near the hint's segment is found in a few
+     * steps. The key must not be below the first value.
+     *
+     * @param byVolume true to search the volumes, false to search the heights.
+     * @param key The value to search for.
+     * @param hint A starting index, usually the result of the previous search.
+     * @return The index of the last value less than or equal to key.
+     */
+    private int gallop(boolean byVolume, double key, int hint)
+    {
+        int last = this.breakPointCount() - 1;
+        int low;
+        int high;
+
+        if (this.key(byVolume, hint) > key)
+        {
+            // Gallop backward, doubling the stride until the key is bracketed
+            high = hint;
+            int stride = 1;
+            while (high - stride >= 0 && this.key(byVolume, high - stride) > key)
+            {
+                high -= stride;
+                stride <<= 1;
+            }
+            low = Math.max(high - stride, 0);
+            high = high - 1;
+        }
+        else
+        {
+            // Gallop forward, doubling the stride until the key is bracketed
+            low = hint;
+            int stride = 1;
+            while (low + stride <= last && this.key(byVolume, low + stride) <= key)
+            {
+                low += stride;
+                stride <<= 1;
+            }
+            high = Math.min(low + stride - 1, last);
+        }
+
+        return this.floorIndex(byVolume, key, low, high);
+    }
+
+    /**
+     * Binary search within a range for the last break point whose value is less than or equal to the key. The value
+     * at low must not exceed the key, and every value above high must.
+     *
+     * @param byVolume true to search the volumes, false to search the heights.
+     * @param key The value to search for.
+     * @param low The lowest index of the range.
+     * @param high The highest index of the range.
+     * @return The index of the last value less than or equal to key.
+     */
+    private int floorIndex(boolean byVolume, double key, int low, int high)
+    {
+        // Invariant: value[low] <= key, and everything above high is greater than key
+        while (low < high)
+        {
+            // Round up so that the range always shrinks
+            int middle = (low + high + 1) >>> 1;
+
+            if (this.key(byVolume, middle) <= key)
+            {
+                low = middle;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A thread-safe WaterSystem. Each state of the system is a WaterSystem whose structures are all generated before it
+ * is published through a volatile reference, and which is never mutated afterwards. Readers take the current state
+ * and query it without locking, so they never block and always see one consistent state. Writers are serialized, and
+ * build the next state off to the side before swapping it in.
+ *
+ * Tank indices are reassigned with each state, so the index-based queries of WaterSystem are not offered here.
+ *
+ * @author ian
+ *
+ */
+public class ConcurrentWaterSystem
+{
+    /**
+     * The current state. Never mutated once published.
+     */
+    private volatile WaterSystem m_system;
+
+    /**
+     * The tanks in the current state. Only accessed while holding m_writeLock.
+     */
+    private Set<Tank> m_tankSet;
+
+    /**
+     * Serializes the writers.
+     */
+    private final Object m_writeLock = new Object();
+
+    /**
+     * Initializes the WaterSystem to the specified set of Tanks.
+     *
+     * @param initialSystem The set of Tanks to represent the WaterSystem.
+     */
+    public ConcurrentWaterSystem(Set<Tank> initialSystem)
+    {
+        this.setTankSystem(initialSystem);
+    }
+
+    /**
+     * Sets the system to the specified set of tanks. Readers see either the old system or the new one in full.
+     *
+     * @param tankSystem The set of Tanks representing the WaterSystem.
+     */
+    public void setTankSystem(Set<Tank> tankSystem)
+    {
+        synchronized (m_writeLock)
+        {
+            this.publish(new HashSet<>(tankSystem));
+        }
+    }
+
+    /**
+     * Adds a single tank to the system.
+     *
+     * @param tank The Tank to add.
+     * @return true if the system did not already contain the tank.
+     */
+    public boolean addTank(Tank tank)
+    {
+        return this.updateTanks(Collections.singleton(tank), Collections.<Tank> emptySet());
+    }
+
+    /**
+     * Removes a single tank from the system.
+     *
+     * @param tank The Tank to remove.
+     * @return true if the system contained the tank.
+     */
+    public boolean removeTank(Tank tank)
+    {
+        return this.updateTanks(Collections.<Tank> emptySet(), Collections.singleton(tank));
+    }
+
+    /**
+     * Adds and removes a batch of tanks as one change, so that the next state is only built once. Readers see either
+     * none of the change or all of it.
+     *
+     * @param toAdd The Tanks to add.
+     * @param toRemove The Tanks to remove, which are removed after toAdd is added.
+     * @return true if the system changed.
+     */
+    public boolean updateTanks(Collection<Tank> toAdd, Collection<Tank> toRemove)
+    {
+        synchronized (m_writeLock)
+        {
+            // Copy on write, so that the published state is never touched
+            Set<Tank> tankSet = new HashSet<>(m_tankSet);
+            boolean changed = tankSet.addAll(toAdd);
+            changed |= tankSet.removeAll(toRemove);
+
+            if (changed)
+            {
+                this.publish(tankSet);
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * Helper method to build a state from a set of tanks and publish it. Must be called while holding m_writeLock.
+     *
+     * @param tankSet The tanks of the new state, which this object takes ownership of.
+     */
+    private void publish(Set<Tank> tankSet)
+    {
+        // Generate the structures before the volatile write, so that readers only build the snapshots themselves
+        WaterSystem system = new WaterSystem(tankSet);
+        system.generateStructures();
+
+        m_tankSet = tankSet;
+        m_system = system;
+    }
+
+    /**
+     * Get an immutable map associating bottom edges with sets of tanks. Repeated calls return the same object until
+     * the system changes.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByBottom()
+    {
+        return m_system.tanksByBottomSnapshot();
+    }
+
+    /**
+     * Get an immutable map associating top edges with sets of tanks. Repeated calls return the same object until the
+     * system changes.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByTop()
+    {
+        return m_system.tanksByTopSnapshot();
+    }
+
+    /**
+     * Get an immutable map associating breakpoints to sets of active tanks. Repeated calls return the same object
+     * until the system changes.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> activeTanks()
+    {
+        return m_system.activeTanksSnapshot();
+    }
+
+    /**
+     * Get an immutable map associating breakpoints to total active cross-section area. Repeated calls return the same
+     * object until the system changes.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Double> activeBaseArea()
+    {
+        return m_system.activeBaseAreaSnapshot();
+    }
+
+    /**
+     * Get the set of tanks active at a height, that is, whose bottoms are at or below it and whose tops are above it.
+     *
+     * @param height The height at which to measure.
+     * @return The desired Set.
+     */
+    public Set<Tank> activeTanksAt(double height)
+    {
+        return m_system.activeTanksAt(height);
+    }
+
+    /**
+     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterHeight.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Map<Tank, Double> heightToTankLevel(Double waterHeight)
+    {
+        return m_system.heightToTankLevel(waterHeight);
+    }
+
+    /**
+     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterVolume.
+     *
+     * @param waterVolume The volume of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterVolume is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Map<Tank, Double> volumeToTankLevel(Double waterVolume)
+    {
+        return m_system.volumeToTankLevel(waterVolume);
+    }
+
+    /**
+     * Passes each tank and its filled height, if the WaterSystem is at waterHeight, to a consumer. The tank indices
+     * passed are only meaningful within this call.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @param consumer The callback to receive each tank and its filled height.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void forEachTankLevel(double waterHeight, TankLevelConsumer consumer)
+    {
+        m_system.forEachTankLevel(waterHeight, consumer);
+    }
+
+    /**
+     * Get the tanks that are partially filled if the WaterSystem is at waterHeight.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A new Collection of the partially filled tanks.
+     */
+    public Collection<Tank> partiallyFilledTanks(double waterHeight)
+    {
+        return m_system.partiallyFilledTanks(waterHeight);
+    }
+
+    /**
+     * Get the tanks that are full if the WaterSystem is at waterHeight. The view is of the state current at the time
+     * of the call, and does not reflect later changes.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A read-only view of the full tanks.
+     */
+    public Collection<Tank> fullTanks(double waterHeight)
+    {
+        return m_system.fullTanks(waterHeight);
+    }
+
+    /**
+     * Get the tanks that are empty if the WaterSystem is at waterHeight. The view is of the state current at the time
+     * of the call, and does not reflect later changes.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A read-only view of the empty tanks.
+     */
+    public Collection<Tank> emptyTanks(double waterHeight)
+    {
+        return m_system.emptyTanks(waterHeight);
+    }
+
+    /**
+     * Get the total volume of water in the system given a specified water height.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The volume of the water in all the tanks.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Double heightToVolume(Double waterHeight)
+    {
+        return m_system.heightToVolume(waterHeight);
+    }
+
+    /**
+     * Get the total volume of water in the system at each of the specified water heights. The whole batch is
+     * converted against one state.
+     *
+     * @param waterHeights The heights of the WaterSystem at which to measure.
+     * @param waterVolumes The array to fill with the volume at each height. Must be at least as long as waterHeights.
+     * @throws IllegalArgumentException if any waterHeight is outside the range of tanks, or if waterVolumes is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void heightToVolume(double[] waterHeights, double[] waterVolumes)
+    {
+        m_system.heightToVolume(waterHeights, waterVolumes);
+    }
+
+    /**
+     * Get the water height of the system at each of the specified water volumes. The whole batch is converted against
+     * one state.
+     *
+     * @param waterVolumes The volumes of the WaterSystem at which to measure.
+     * @param waterHeights The array to fill with the height at each volume. Must be at least as long as waterVolumes.
+     * @throws IllegalArgumentException if any waterVolume is outside the range of tanks, or if waterHeights is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void volumeToHeight(double[] waterVolumes, double[] waterHeights)
+    {
+        m_system.volumeToHeight(waterVolumes, waterHeights);
+    }
+}
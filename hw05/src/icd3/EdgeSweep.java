@@ -0,0 +1,122 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * A single sorted array of the tank edges in a TankStore. Each edge event is packed into one int, the tank index
+ * shifted left by one with the low bit set for a top, so the whole sweep is one array of primitives. Tops sort ahead
+ * of bottoms at equal heights, so a sweep never holds a tank active past its top.
+ *
+ * @author ian
+ *
+ */
+class EdgeSweep
+{
+    /**
+     * The store that resolves tank indices.
+     */
+    private final TankStore m_tankStore;
+
+    /**
+     * The edge events, in increasing order of height.
+     */
+    private final int[] m_events;
+
+    /**
+     * Sorts the edges of every tank in a store.
+     *
+     * @param tankStore The store of Tanks in the WaterSystem.
+     */
+    public EdgeSweep(TankStore tankStore)
+    {
+        m_tankStore = tankStore;
+
+        // Key each event by the height of its edge
+        double[] heights = new double[2 * tankStore.limit()];
+        for (int i = 0; i < tankStore.limit(); ++i)
+        {
+            heights[bottomEvent(i)] = tankStore.bottom(i);
+            heights[topEvent(i)] = tankStore.top(i);
+        }
+
+        // Lay out every top ahead of every bottom, so that the stable sort keeps tops first at equal heights
+        int[] tankIndices = tankStore.indices();
+        m_events = new int[2 * tankIndices.length];
+        for (int i = 0; i < tankIndices.length; ++i)
+        {
+            m_events[i] = topEvent(tankIndices[i]);
+            m_events[tankIndices.length + i] = bottomEvent(tankIndices[i]);
+        }
+        IndexSort.sort(m_events, heights);
+    }
+
+    /**
+     * Passes every edge, and every break point with the totals above it, to a listener in increasing order of height.
+     *
+     * @param listener The callback to receive the edges and break points.
+     */
+    public void sweep(SweepListener listener)
+    {
+        // Keep a running total of the active base area, and of the number of tanks contributing to it
+        double runningArea = 0;
+        int runningCount = 0;
+
+        for (int i = 0; i < m_events.length; ++i)
+        {
+            int tankIndex = m_events[i] >>> 1;
+            double height = this.height(m_events[i]);
+
+            if (isTop(m_events[i]))
+            {
+                runningArea -= m_tankStore.baseArea(tankIndex);
+                --runningCount;
+                listener.tankDeactivated(height, tankIndex, m_tankStore.tank(tankIndex));
+            }
+            else
+            {
+                runningArea += m_tankStore.baseArea(tankIndex);
+                ++runningCount;
+                listener.tankActivated(height, tankIndex, m_tankStore.tank(tankIndex));
+            }
+
+            // Report the break point after its last edge
+            if (i + 1 == m_events.length || this.height(m_events[i + 1]) != height)
+            {
+                // Do not let rounding leave a residue where no tanks are active
+                if (0 == runningCount)
+                {
+                    runningArea = 0;
+                }
+                listener.breakPoint(height, runningArea, runningCount);
+            }
+        }
+    }
+
+    /**
+     * Get the height of the edge of an event.
+     *
+     * @param event The packed event.
+     * @return The top or bottom of the tank.
+     */
+    private double height(int event)
+    {
+        return isTop(event) ? m_tankStore.top(event >>> 1) : m_tankStore.bottom(event >>> 1);
+    }
+
+    private static int bottomEvent(int tankIndex)
+    {
+        return tankIndex << 1;
+    }
+
+    private static int topEvent(int tankIndex)
+    {
+        return tankIndex << 1 | 1;
+    }
+
+    private static boolean isTop(int event)
+    {
+        return (event & 1) != 0;
+    }
+}
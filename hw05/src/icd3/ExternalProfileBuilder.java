@@ -0,0 +1,654 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a profile file for more tanks than the heap can hold edges for, by sorting the edges externally. Tanks are
+ * streamed to a temporary file as they are added, and their edges are collected into runs of a fixed length. Each
+ * full run is sorted in memory and spilled to its own temporary file. Building merges the sorted runs, a bounded
+ * number at a time, and sweeps the merged edges straight into the break points, volumes and areas of the profile
+ * file, which is then mapped to answer queries in place.
+ *
+ * The heap holds one run of edges, 24 bytes per edge while it is sorted, and a small buffer per run being merged, so
+ * it stays the same however many tanks are added. The disk holds the tanks and edges until the profile is built. The
+ * profile matches the one VolumeProfileBuilder would build from the same tanks, up to the rounding of the sums.
+ *
+ * Records are not deduplicated. A builder holds at most Integer.MAX_VALUE tanks, the most a profile file can count.
+ * Closing the builder deletes its temporary files.
+ *
+ * @author ian
+ *
+ */
+public class ExternalProfileBuilder implements TankSink, Closeable
+{
+    /**
+     * The number of edges sorted in memory at a time when no run length is given, about 24 MB while sorting.
+     */
+    private static final int s_defaultRunLength = 1 << 20;
+
+    /**
+     * The most runs merged at once. More runs than this are first merged into longer runs.
+     */
+    private static final int s_mergeFanIn = 64;
+
+    /**
+     * The size of a spilled edge: its height and then its change in active base area.
+     */
+    private static final int s_bytesPerEdge = 16;
+
+    /**
+     * The size of the buffer behind every temporary file read or written.
+     */
+    private static final int s_ioBufferBytes = 1 << 16;
+
+    /**
+     * The directory that holds the temporary files.
+     */
+    private final Path m_directory;
+
+    /**
+     * The heights of the edges in the current run.
+     */
+    private final double[] m_edges;
+
+    /**
+     * The change in active base area at each edge in the current run.
+     */
+    private final double[] m_areaDeltas;
+
+    private int m_edgeCount;
+
+    /**
+     * The sorted runs spilled so far.
+     */
+    private final List<Path> m_runs = new ArrayList<>();
+
+    /**
+     * The tanks added so far, packed as in TankBuffer.
+     */
+    private final Path m_tankFile;
+
+    private final DoubleWriter m_tankWriter;
+
+    private int m_tankCount;
+
+    /**
+     * Initializes an empty builder that sorts runs of the default length.
+     *
+     * @param directory The directory to hold the temporary files.
+     * @throws IOException if the temporary tank file cannot be created.
+     */
+    public ExternalProfileBuilder(Path directory) throws IOException
+    {
+        this(directory, s_defaultRunLength);
+    }
+
+    /**
+     * Initializes an empty builder.
+     *
+     * @param directory The directory to hold the temporary files.
+     * @param runLength The number of edges to sort in memory at a time, two per tank.
+     * @throws IOException if the temporary tank file cannot be created.
+     * @throws IllegalArgumentException if the runLength is not positive.
+     */
+    public ExternalProfileBuilder(Path directory, int runLength) throws IOException
+    {
+        if (runLength <= 0)
+        {
+            throw new IllegalArgumentException(String.format("The runLength of %d should be positive.", runLength));
+        }
+
+        m_directory = directory;
+        m_edges = new double[runLength];
+        m_areaDeltas = new double[runLength];
+        m_tankFile = Files.createTempFile(directory, "tanks", ".bin");
+        m_tankWriter = new DoubleWriter(m_tankFile);
+    }
+
+    @Override
+    public ExternalProfileBuilder add(double[] bottomLeft, double[] topRight)
+    {
+        // Enforce parameter validity, exactly as a Tank would
+        Tank.throwIfInvalid(bottomLeft, topRight);
+
+        if (m_tankCount == Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException(String.format("The ExternalProfileBuilder is full at %d tanks.",
+                    m_tankCount));
+        }
+
+        try
+        {
+            for (int axis = 0; axis < 3; ++axis)
+            {
+                m_tankWriter.put(bottomLeft[axis]);
+            }
+            for (int axis = 0; axis < 3; ++axis)
+            {
+                m_tankWriter.put(topRight[axis]);
+            }
+
+            // The bottom adds the base area and the top removes it
+            double baseArea = (topRight[0] - bottomLeft[0]) * (topRight[1] - bottomLeft[1]);
+            this.addEdge(bottomLeft[2], baseArea);
+            this.addEdge(topRight[2], -baseArea);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("The ExternalProfileBuilder cannot write its temporary files.", e);
+        }
+
+        ++m_tankCount;
+        return this;
+    }
+
+    /**
+     * Adds a tank.
+     *
+     * @param tank The Tank to add.
+     * @return This builder.
+     * @throws IllegalStateException if the builder is full, or cannot write its temporary files.
+     */
+    public ExternalProfileBuilder add(Tank tank)
+    {
+        double[] bottomLeft = new double[3];
+        double[] topRight = new double[3];
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            bottomLeft[axis] = tank.getMinimum(axis);
+            topRight[axis] = tank.getMaximum(axis);
+        }
+        return this.add(bottomLeft, topRight);
+    }
+
+    /**
+     * Get the number of tanks added.
+     *
+     * @return The number of tanks.
+     */
+    public int size()
+    {
+        return m_tankCount;
+    }
+
+    /**
+     * Writes the profile file of the tanks added so far, and maps it. The builder is closed afterwards.
+     *
+     * @param path The profile file to create or replace.
+     * @return A system that answers queries straight from the mapped file.
+     * @throws IOException if a file cannot be read or written.
+     */
+    public OffHeapWaterSystem build(Path path) throws IOException
+    {
+        try
+        {
+            this.spillRun();
+            m_tankWriter.close();
+
+            // Merge down to few enough runs to merge in one pass
+            while (m_runs.size() > s_mergeFanIn)
+            {
+                this.mergePass();
+            }
+
+            this.writeProfile(path);
+        }
+        finally
+        {
+            this.close();
+        }
+
+        return ProfileFile.open(path);
+    }
+
+    /**
+     * Deletes the temporary files.
+     *
+     * @throws IOException if a file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        m_tankWriter.close();
+        Files.deleteIfExists(m_tankFile);
+        for (Path run : m_runs)
+        {
+            Files.deleteIfExists(run);
+        }
+        m_runs.clear();
+    }
+
+    /**
+     * Adds an edge to the current run, spilling the run first if it is full.
+     *
+     * @param height The height of the edge.
+     * @param areaDelta The change in active base area at the edge.
+     * @throws IOException if the run cannot be spilled.
+     */
+    private void addEdge(double height, double areaDelta) throws IOException
+    {
+        if (m_edgeCount == m_edges.length)
+        {
+            this.spillRun();
+        }
+        m_edges[m_edgeCount] = height;
+        m_areaDeltas[m_edgeCount] = areaDelta;
+        ++m_edgeCount;
+    }
+
+    /**
+     * Sorts the current run and writes it to a new temporary file.
+     *
+     * @throws IOException if the run cannot be written.
+     */
+    private void spillRun() throws IOException
+    {
+        if (0 == m_edgeCount)
+        {
+            return;
+        }
+
+        // Order the edges by height
+        int[] order = new int[m_edgeCount];
+        for (int i = 0; i < m_edgeCount; ++i)
+        {
+            order[i] = i;
+        }
+        IndexSort.sort(order, m_edges);
+
+        Path run = Files.createTempFile(m_directory, "edges", ".run");
+        m_runs.add(run);
+        try (DoubleWriter writer = new DoubleWriter(run))
+        {
+            for (int edge : order)
+            {
+                writer.put(m_edges[edge]);
+                writer.put(m_areaDeltas[edge]);
+            }
+        }
+        m_edgeCount = 0;
+    }
+
+    /**
+     * Merges every group of s_mergeFanIn runs into one longer run.
+     *
+     * @throws IOException if a run cannot be read or written.
+     */
+    private void mergePass() throws IOException
+    {
+        List<Path> runs = new ArrayList<>(m_runs);
+        m_runs.clear();
+
+        for (int from = 0; from < runs.size(); from += s_mergeFanIn)
+        {
+            List<Path> group = runs.subList(from, Math.min(from + s_mergeFanIn, runs.size()));
+
+            Path merged = Files.createTempFile(m_directory, "edges", ".run");
+            m_runs.add(merged);
+            try (RunMerger merger = new RunMerger(group); DoubleWriter writer = new DoubleWriter(merged))
+            {
+                while (merger.next())
+                {
+                    writer.put(merger.height());
+                    writer.put(merger.areaDelta());
+                }
+            }
+
+            for (Path run : group)
+            {
+                Files.delete(run);
+            }
+        }
+    }
+
+    /**
+     * Sweeps the merged runs into a profile file. The tanks are copied in first, the break points are written after
+     * them as they are found, and the volumes and areas are written to temporary files and appended at the end, since
+     * their offsets depend on the number of break points.
+     *
+     * @param path The profile file to create or replace.
+     * @throws IOException if a file cannot be read or written.
+     */
+    private void writeProfile(Path path) throws IOException
+    {
+        Path volumeFile = Files.createTempFile(m_directory, "volumes", ".bin");
+        Path areaFile = Files.createTempFile(m_directory, "areas", ".bin");
+        int breakPointCount = 0;
+
+        // Write beside the target and rename over it, so that readers mapping the old profile are unaffected
+        Path temporary = ProfileFile.temporarySibling(path);
+        try (FileChannel profile = FileChannel.open(temporary, StandardOpenOption.WRITE))
+        {
+            // Tank geometry, after room for the header
+            profile.position(ProfileFile.s_headerBytes);
+            appendFile(m_tankFile, profile);
+
+            try (RunMerger merger = new RunMerger(m_runs);
+                    DoubleWriter heightWriter = new DoubleWriter(profile);
+                    DoubleWriter volumeWriter = new DoubleWriter(volumeFile);
+                    DoubleWriter areaWriter = new DoubleWriter(areaFile))
+            {
+                // Keep a running total of the active base area, and of the number of tanks contributing to it
+                double runningArea = 0;
+                int runningCount = 0;
+                double runningVolume = 0;
+                double height = 0;
+                double lastHeight = 0;
+                double lastArea = 0;
+                boolean hasEdge = merger.next();
+
+                while (hasEdge)
+                {
+                    height = merger.height();
+                    runningArea += merger.areaDelta();
+                    runningCount += merger.areaDelta() > 0 ? 1 : -1;
+
+                    // Only the last edge at each height creates the entry for its break point
+                    hasEdge = merger.next();
+                    if (hasEdge && merger.height() == height)
+                    {
+                        continue;
+                    }
+
+                    // Do not let rounding leave a residue where no tanks are active
+                    if (0 == runningCount)
+                    {
+                        runningArea = 0;
+                    }
+
+                    // The first break point has no cross-section beneath it
+                    if (breakPointCount > 0)
+                    {
+                        runningVolume += (height - lastHeight) * lastArea;
+                    }
+
+                    heightWriter.put(height);
+                    volumeWriter.put(runningVolume);
+                    areaWriter.put(runningArea);
+                    lastHeight = height;
+                    lastArea = runningArea;
+                    ++breakPointCount;
+                }
+            }
+
+            ProfileFile.throwIfTooLarge(breakPointCount);
+            appendFile(volumeFile, profile);
+            appendFile(areaFile, profile);
+
+            // Header, now that the counts are known
+            ByteBuffer header = ByteBuffer.allocate(ProfileFile.s_headerBytes).order(ProfileFile.s_byteOrder);
+            ProfileFile.writeHeader(header, m_tankCount, breakPointCount);
+            header.flip();
+            while (header.hasRemaining())
+            {
+                profile.write(header, header.position());
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        finally
+        {
+            Files.deleteIfExists(volumeFile);
+            Files.deleteIfExists(areaFile);
+        }
+        ProfileFile.replace(temporary, path);
+    }
+
+    /**
+     * Copies a whole file to the current position of a channel, and advances the position past it.
+     *
+     * @param source The file to copy.
+     * @param destination The channel to write.
+     * @throws IOException if either file cannot be read or written.
+     */
+    private static void appendFile(Path source, FileChannel destination) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            long copied = 0;
+            while (copied < length)
+            {
+                copied += channel.transferTo(copied, length - copied, destination);
+            }
+        }
+    }
+
+    /**
+     * Writes doubles to the end of a file through a small buffer.
+     *
+     */
+    private static class DoubleWriter implements Closeable
+    {
+        private final FileChannel m_channel;
+
+        /**
+         * Whether the channel belongs to this writer, and should be closed with it.
+         */
+        private final boolean m_ownsChannel;
+
+        private final ByteBuffer m_batch = ByteBuffer.allocateDirect(s_ioBufferBytes).order(ProfileFile.s_byteOrder);
+
+        private boolean m_isClosed;
+
+        /**
+         * Initializes a writer to a new or emptied file.
+         *
+         * @param path The file to write.
+         * @throws IOException if the file cannot be opened.
+         */
+        public DoubleWriter(Path path) throws IOException
+        {
+            m_channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            m_ownsChannel = true;
+        }
+
+        /**
+         * Initializes a writer to the current position of an open channel, which is left open when the writer is
+         * closed.
+         *
+         * @param channel The channel to write.
+         */
+        public DoubleWriter(FileChannel channel)
+        {
+            m_channel = channel;
+            m_ownsChannel = false;
+        }
+
+        public void put(double value) throws IOException
+        {
+            if (!m_batch.hasRemaining())
+            {
+                this.flush();
+            }
+            m_batch.putDouble(value);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (m_isClosed)
+            {
+                return;
+            }
+            m_isClosed = true;
+
+            this.flush();
+            if (m_ownsChannel)
+            {
+                m_channel.close();
+            }
+        }
+
+        /**
+         * Writes the filled part of the batch and clears it.
+         *
+         * @throws IOException if the channel cannot be written.
+         */
+        private void flush() throws IOException
+        {
+            m_batch.flip();
+            while (m_batch.hasRemaining())
+            {
+                m_channel.write(m_batch);
+            }
+            m_batch.clear();
+        }
+    }
+
+    /**
+     * Reads the edges of one sorted run in order, through a small buffer.
+     *
+     */
+    private static class RunReader implements Comparable<RunReader>, Closeable
+    {
+        private final FileChannel m_channel;
+
+        private final ByteBuffer m_batch = ByteBuffer.allocateDirect(s_ioBufferBytes).order(ProfileFile.s_byteOrder);
+
+        private double m_height;
+
+        private double m_areaDelta;
+
+        public RunReader(Path run) throws IOException
+        {
+            m_channel = FileChannel.open(run, StandardOpenOption.READ);
+            m_batch.limit(0);
+        }
+
+        /**
+         * Advances to the next edge.
+         *
+         * @return false if the run is exhausted.
+         * @throws IOException if the run cannot be read.
+         */
+        public boolean next() throws IOException
+        {
+            if (m_batch.remaining() < s_bytesPerEdge)
+            {
+                // Refill the batch, keeping any partial edge
+                m_batch.compact();
+                int bytesRead = 0;
+                while (m_batch.position() < s_bytesPerEdge && bytesRead != -1)
+                {
+                    bytesRead = m_channel.read(m_batch);
+                }
+                m_batch.flip();
+                if (m_batch.remaining() < s_bytesPerEdge)
+                {
+                    return false;
+                }
+            }
+
+            m_height = m_batch.getDouble();
+            m_areaDelta = m_batch.getDouble();
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other)
+        {
+            return Double.compare(m_height, other.m_height);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            m_channel.close();
+        }
+    }
+
+    /**
+     * Merges sorted runs into one sequence of edges in order of height.
+     *
+     */
+    private static class RunMerger implements Closeable
+    {
+        /**
+         * The runs that are not exhausted, by their current edge.
+         */
+        private final PriorityQueue<RunReader> m_queue = new PriorityQueue<>();
+
+        private final List<RunReader> m_readers = new ArrayList<>();
+
+        /**
+         * The run whose edge is current, which is out of the queue until the next call to next().
+         */
+        private RunReader m_current;
+
+        public RunMerger(List<Path> runs) throws IOException
+        {
+            try
+            {
+                for (Path run : runs)
+                {
+                    RunReader reader = new RunReader(run);
+                    m_readers.add(reader);
+                    if (reader.next())
+                    {
+                        m_queue.add(reader);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                this.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Advances to the lowest remaining edge.
+         *
+         * @return false if every run is exhausted.
+         * @throws IOException if a run cannot be read.
+         */
+        public boolean next() throws IOException
+        {
+            // Return the run of the last edge to the queue at its next edge
+            if (m_current != null && m_current.next())
+            {
+                m_queue.add(m_current);
+            }
+
+            m_current = m_queue.poll();
+            return m_current != null;
+        }
+
+        public double height()
+        {
+            return m_current.m_height;
+        }
+
+        public double areaDelta()
+        {
+            return m_current.m_areaDelta;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            for (RunReader reader : m_readers)
+            {
+                reader.close();
+            }
+        }
+    }
+}
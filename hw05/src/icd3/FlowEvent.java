@@ -0,0 +1,115 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * An immutable record of something that happened during a FlowSimulation, along with the state of the system at the
+ * time.
+ *
+ * @author ian
+ *
+ */
+public class FlowEvent
+{
+    /**
+     * The kinds of event.
+     *
+     */
+    public enum Type
+    {
+        /** The schedule moved to its next rate. */
+        RATE_CHANGED,
+        /** The water surface reached a break point. */
+        BREAK_POINT,
+        /** The water rose past the bottom of a tank, which starts filling. */
+        TANK_STARTED_FILLING,
+        /** The water rose to the top of a tank, which is now full. */
+        TANK_FULL,
+        /** The water fell below the top of a tank, which starts draining. */
+        TANK_STARTED_DRAINING,
+        /** The water fell to the bottom of a tank, which is now empty. */
+        TANK_EMPTY,
+        /** The system is full, and further inflow overflows until the rate changes. */
+        SYSTEM_FULL,
+        /** The system is empty, and further outflow is not met until the rate changes. */
+        SYSTEM_EMPTY,
+        /** The schedule ended. Always the last event. */
+        END
+    }
+
+    private final Type m_type;
+
+    private final double m_time;
+
+    private final double m_waterHeight;
+
+    private final double m_waterVolume;
+
+    private final double m_rate;
+
+    private final Tank m_tank;
+
+    /**
+     * Initializes the event.
+     *
+     * @param type The kind of event.
+     * @param time The time of the event.
+     * @param waterHeight The water height at the time.
+     * @param waterVolume The water volume at the time.
+     * @param rate The flow rate in effect from the time.
+     * @param tank The tank the event concerns, or null if it concerns the whole system.
+     */
+    FlowEvent(Type type, double time, double waterHeight, double waterVolume, double rate, Tank tank)
+    {
+        m_type = type;
+        m_time = time;
+        m_waterHeight = waterHeight;
+        m_waterVolume = waterVolume;
+        m_rate = rate;
+        m_tank = tank;
+    }
+
+    public Type getType()
+    {
+        return m_type;
+    }
+
+    public double getTime()
+    {
+        return m_time;
+    }
+
+    public double getWaterHeight()
+    {
+        return m_waterHeight;
+    }
+
+    public double getWaterVolume()
+    {
+        return m_waterVolume;
+    }
+
+    public double getRate()
+    {
+        return m_rate;
+    }
+
+    /**
+     * Get the tank the event concerns.
+     *
+     * @return The tank for the TANK_ events, otherwise null.
+     */
+    public Tank getTank()
+    {
+        return m_tank;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s at t=%f: height %f, volume %f, rate %f%s", m_type, m_time, m_waterHeight,
+                m_waterVolume, m_rate, null == m_tank ? "" : ", " + m_tank);
+    }
+}
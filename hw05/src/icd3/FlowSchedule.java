@@ -0,0 +1,123 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+
+/**
+ * An immutable piecewise-constant schedule of net flow into a WaterSystem. Each rate holds from its start time until
+ * the next start time, and the last rate holds until the end time. Positive rates fill the system and negative rates
+ * drain it.
+ *
+ * @author ian
+ *
+ */
+public class FlowSchedule
+{
+    /**
+     * The time at which each rate starts, in strictly increasing order.
+     */
+    private final double[] m_startTimes;
+
+    /**
+     * The net volume flow per unit time of each period.
+     */
+    private final double[] m_rates;
+
+    /**
+     * The time at which the schedule ends.
+     */
+    private final double m_endTime;
+
+    /**
+     * Initializes the schedule. The arrays are copied.
+     *
+     * @param startTimes The time at which each rate starts, in strictly increasing order.
+     * @param rates The net volume flow per unit time from each start time.
+     * @param endTime The time at which the schedule ends. Must not be before the last start time.
+     * @throws IllegalArgumentException if the schedule is empty, the arrays differ in length, or the times are out of
+     *             order.
+     */
+    public FlowSchedule(double[] startTimes, double[] rates, double endTime)
+    {
+        throwIfInvalid(startTimes, rates, endTime);
+
+        m_startTimes = Arrays.copyOf(startTimes, startTimes.length);
+        m_rates = Arrays.copyOf(rates, rates.length);
+        m_endTime = endTime;
+    }
+
+    /**
+     * Throws an exception if the arrays and end time do not make a valid schedule.
+     *
+     * @param startTimes The time at which each rate starts.
+     * @param rates The net volume flow per unit time from each start time.
+     * @param endTime The time at which the schedule ends.
+     */
+    private static void throwIfInvalid(double[] startTimes, double[] rates, double endTime)
+    {
+        if (startTimes.length == 0 || startTimes.length != rates.length)
+        {
+            throw new IllegalArgumentException(String.format("There are %d start times for %d rates.",
+                    startTimes.length, rates.length));
+        }
+
+        for (int i = 1; i < startTimes.length; ++i)
+        {
+            if (startTimes[i] <= startTimes[i - 1])
+            {
+                throw new IllegalArgumentException(String.format("Start time %d is not after the one before it.", i));
+            }
+        }
+
+        if (endTime < startTimes[startTimes.length - 1])
+        {
+            throw new IllegalArgumentException("The endTime should not be before the last start time.");
+        }
+    }
+
+    /**
+     * Get the number of periods in the schedule.
+     *
+     * @return The number of rates.
+     */
+    public int size()
+    {
+        return m_rates.length;
+    }
+
+    /**
+     * Get the start time of a period.
+     *
+     * @param period An index below size().
+     * @return The time at which the period's rate starts.
+     */
+    public double startTime(int period)
+    {
+        return m_startTimes[period];
+    }
+
+    /**
+     * Get the end time of a period.
+     *
+     * @param period An index below size().
+     * @return The start time of the next period, or the end time of the schedule for the last one.
+     */
+    public double endTime(int period)
+    {
+        return period + 1 < m_startTimes.length ? m_startTimes[period + 1] : m_endTime;
+    }
+
+    /**
+     * Get the rate of a period.
+     *
+     * @param period An index below size().
+     * @return The net volume flow per unit time.
+     */
+    public double rate(int period)
+    {
+        return m_rates[period];
+    }
+}
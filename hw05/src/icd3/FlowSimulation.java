@@ -0,0 +1,253 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+
+/**
+ * An event-driven simulation of a WaterSystem filling and draining under a FlowSchedule. Between events the volume
+ * changes linearly and the height stays within one cross section, so the simulation computes the time of the next
+ * break point or rate change exactly and jumps straight to it. The events are produced lazily, one break point at a
+ * time, through the Iterator interface.
+ *
+ * A simulation reads the state of the system when it was created, and does not reflect later changes.
+ *
+ * @author ian
+ *
+ */
+public class FlowSimulation implements Iterator<FlowEvent>
+{
+    /**
+     * The height to volume function being simulated.
+     */
+    private final VolumeBreakPointBijection m_volumeBijection;
+
+    /**
+     * The tanks whose bottoms are at each break point.
+     */
+    private final NavigableMap<Double, Set<Tank>> m_tanksByBottom;
+
+    /**
+     * The tanks whose tops are at each break point.
+     */
+    private final NavigableMap<Double, Set<Tank>> m_tanksByTop;
+
+    /**
+     * The flow rates to apply.
+     */
+    private final FlowSchedule m_schedule;
+
+    /**
+     * The index of the current period of the schedule.
+     */
+    private int m_period;
+
+    /**
+     * The current time.
+     */
+    private double m_time;
+
+    /**
+     * The current volume of water.
+     */
+    private double m_waterVolume;
+
+    /**
+     * The current height of water.
+     */
+    private double m_waterHeight;
+
+    /**
+     * The index of the last break point at or below the current height.
+     */
+    private int m_lastBreak;
+
+    /**
+     * Events that have happened but have not been returned yet.
+     */
+    private final Queue<FlowEvent> m_pending;
+
+    /**
+     * Whether the schedule has ended.
+     */
+    private boolean m_ended;
+
+    /**
+     * Initializes the simulation at the start of the schedule.
+     *
+     * @param volumeBijection The height to volume function of the system.
+     * @param tanksByBottom A NavigableMap of bottom edges to sets of tanks.
+     * @param tanksByTop A NavigableMap of top edges to sets of tanks.
+     * @param initialVolume The volume of water at the start of the schedule.
+     * @param schedule The flow rates to apply.
+     */
+    FlowSimulation(VolumeBreakPointBijection volumeBijection, NavigableMap<Double, Set<Tank>> tanksByBottom,
+                   NavigableMap<Double, Set<Tank>> tanksByTop, double initialVolume, FlowSchedule schedule)
+    {
+        m_volumeBijection = volumeBijection;
+        m_tanksByBottom = tanksByBottom;
+        m_tanksByTop = tanksByTop;
+        m_schedule = schedule;
+        m_pending = new ArrayDeque<>();
+
+        // Start from the initial volume, which getWaterHeight validates
+        m_period = 0;
+        m_time = schedule.startTime(0);
+        m_waterHeight = volumeBijection.getWaterHeight(initialVolume);
+        m_waterVolume = initialVolume;
+        m_lastBreak = volumeBijection.floorVolume(initialVolume, 0);
+
+        // The first rate takes effect at the start
+        this.queue(FlowEvent.Type.RATE_CHANGED, null);
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        // Advance until something happens or the schedule ends
+        while (m_pending.isEmpty() && !m_ended)
+        {
+            this.advance();
+        }
+        return !m_pending.isEmpty();
+    }
+
+    @Override
+    public FlowEvent next()
+    {
+        if (!this.hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return m_pending.remove();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Moves the simulation to the next break point or the end of the current period, whichever comes first, and queues
+     * the events that happen there.
+     */
+    private void advance()
+    {
+        double rate = m_schedule.rate(m_period);
+        double periodEnd = m_schedule.endTime(m_period);
+
+        // The next break point in the direction of flow, if there is one
+        int target = -1;
+        if (rate > 0 && m_lastBreak + 1 < m_volumeBijection.breakPointCount())
+        {
+            target = m_lastBreak + 1;
+        }
+        else if (rate < 0)
+        {
+            target = m_waterHeight > m_volumeBijection.breakPointHeight(m_lastBreak) ? m_lastBreak : m_lastBreak - 1;
+        }
+
+        // Volume is linear in time, so the crossing time follows directly from the volume at the break point
+        if (target >= 0)
+        {
+            double targetVolume = m_volumeBijection.breakPointVolume(target);
+            double crossingTime = Math.max(m_time + (targetVolume - m_waterVolume) / rate, m_time);
+
+            if (crossingTime <= periodEnd)
+            {
+                this.cross(target, crossingTime, rate);
+                return;
+            }
+
+            // Stay within the cross section being filled or drained
+            m_waterVolume += rate * (periodEnd - m_time);
+            m_lastBreak = rate > 0 ? m_lastBreak : target;
+            m_waterHeight = m_volumeBijection.heightAbove(m_lastBreak, m_waterVolume);
+        }
+
+        // Flow with nowhere to go is lost, so only the time moves
+        m_time = periodEnd;
+
+        if (m_period + 1 < m_schedule.size())
+        {
+            ++m_period;
+            this.queue(FlowEvent.Type.RATE_CHANGED, null);
+        }
+        else
+        {
+            m_ended = true;
+            this.queue(FlowEvent.Type.END, null);
+        }
+    }
+
+    /**
+     * Moves the water surface onto a break point and queues the events that happen there.
+     *
+     * @param breakPoint The index of the break point.
+     * @param time The time at which the surface reaches it.
+     * @param rate The current flow rate.
+     */
+    private void cross(int breakPoint, double time, double rate)
+    {
+        m_time = time;
+        m_lastBreak = breakPoint;
+        m_waterHeight = m_volumeBijection.breakPointHeight(breakPoint);
+        m_waterVolume = m_volumeBijection.breakPointVolume(breakPoint);
+
+        this.queue(FlowEvent.Type.BREAK_POINT, null);
+
+        // Tanks whose tops are here are filled or start draining, and tanks whose bottoms are here start filling or are
+        // drained
+        boolean rising = rate > 0;
+        this.queueTanks(m_tanksByTop.get(m_waterHeight),
+                rising ? FlowEvent.Type.TANK_FULL : FlowEvent.Type.TANK_STARTED_DRAINING);
+        this.queueTanks(m_tanksByBottom.get(m_waterHeight),
+                rising ? FlowEvent.Type.TANK_STARTED_FILLING : FlowEvent.Type.TANK_EMPTY);
+
+        // Reaching either end of the system stops the flow
+        if (rising && breakPoint + 1 == m_volumeBijection.breakPointCount())
+        {
+            this.queue(FlowEvent.Type.SYSTEM_FULL, null);
+        }
+        if (!rising && 0 == breakPoint)
+        {
+            this.queue(FlowEvent.Type.SYSTEM_EMPTY, null);
+        }
+    }
+
+    /**
+     * Queues an event for each of a set of tanks, if there is one.
+     *
+     * @param tanks The tanks, or null.
+     * @param type The kind of event.
+     */
+    private void queueTanks(Set<Tank> tanks, FlowEvent.Type type)
+    {
+        if (null != tanks)
+        {
+            for (Tank tank : tanks)
+            {
+                this.queue(type, tank);
+            }
+        }
+    }
+
+    /**
+     * Queues an event with the current state.
+     *
+     * @param type The kind of event.
+     * @param tank The tank the event concerns, or null.
+     */
+    private void queue(FlowEvent.Type type, Tank tank)
+    {
+        m_pending.add(new FlowEvent(type, m_time, m_waterHeight, m_waterVolume, m_schedule.rate(m_period), tank));
+    }
+}
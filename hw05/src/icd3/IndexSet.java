@@ -0,0 +1,240 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+
+/**
+ * A set of tank indices with constant-time insertion, removal and membership in the expected case. The members are
+ * kept densely packed, so they can be enumerated or copied in time proportional to their number.
+ *
+ * Each member's position is found through an open-addressed hash table of the positions themselves, probed linearly
+ * as in TankStore. The set therefore takes space proportional to its largest size rather than to the highest index it
+ * may hold, so that many small sets over a large store stay small.
+ *
+ * @author ian
+ *
+ */
+class IndexSet
+{
+    /**
+     * The smallest length of the members array.
+     */
+    private static final int s_minCapacity = 4;
+
+    /**
+     * The hash table is grown once more than this fraction of its slots would be in use.
+     */
+    private static final double s_maxLoad = 0.5;
+
+    /**
+     * The members, densely packed in the first m_size positions.
+     */
+    private int[] m_members;
+
+    /**
+     * The hash table from members to positions. Each slot holds one more than the position of a member in m_members,
+     * or 0 if it is empty. The length is a power of two.
+     */
+    private int[] m_slots;
+
+    /**
+     * The number of members.
+     */
+    private int m_size;
+
+    /**
+     * Initializes an empty set.
+     *
+     * @param expectedSize The number of members the set should hold before it grows.
+     */
+    public IndexSet(int expectedSize)
+    {
+        m_members = new int[Math.max(expectedSize, s_minCapacity)];
+        m_slots = new int[tableLength(expectedSize)];
+    }
+
+    /**
+     * Initializes a set with the same members as another, sized for its current members rather than its largest.
+     *
+     * @param other The set to copy.
+     */
+    public IndexSet(IndexSet other)
+    {
+        this(other.m_size);
+        for (int i = 0; i < other.m_size; ++i)
+        {
+            this.add(other.m_members[i]);
+        }
+    }
+
+    /**
+     * Check whether an index is in the set.
+     *
+     * @param index The index to check.
+     * @return true if the index is a member.
+     */
+    public boolean contains(int index)
+    {
+        return 0 != m_slots[this.findSlot(index)];
+    }
+
+    /**
+     * Adds an index to the set.
+     *
+     * @param index The index to add.
+     */
+    public void add(int index)
+    {
+        int slot = this.findSlot(index);
+        if (0 != m_slots[slot])
+        {
+            return;
+        }
+
+        // Append the member and point its slot at it
+        if (m_size == m_members.length)
+        {
+            m_members = Arrays.copyOf(m_members, 2 * m_size);
+        }
+        m_members[m_size] = index;
+        m_slots[slot] = ++m_size;
+        if (m_size > s_maxLoad * m_slots.length)
+        {
+            this.rehash(2 * m_slots.length);
+        }
+    }
+
+    /**
+     * Removes an index from the set, moving the last member into its place.
+     *
+     * @param index The index to remove.
+     */
+    public void remove(int index)
+    {
+        int slot = this.findSlot(index);
+        if (0 == m_slots[slot])
+        {
+            return;
+        }
+
+        // Empty the member's slot, then fill its position with the last member
+        int position = m_slots[slot] - 1;
+        this.removeSlot(slot);
+        int last = m_members[--m_size];
+        if (position != m_size)
+        {
+            m_members[position] = last;
+            m_slots[this.findSlot(last)] = position + 1;
+        }
+    }
+
+    /**
+     * Get the number of members.
+     *
+     * @return The size of the set.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Copy the members into a new list.
+     *
+     * @return A new IntList of the members.
+     */
+    public IntList toIntList()
+    {
+        IntList members = new IntList();
+        for (int i = 0; i < m_size; ++i)
+        {
+            members.add(m_members[i]);
+        }
+        return members;
+    }
+
+    /**
+     * Finds the slot of an index in the hash table.
+     *
+     * @param index The index to look up.
+     * @return The slot holding the index's position, or the empty slot where it would be inserted if it is not a
+     *         member.
+     */
+    private int findSlot(int index)
+    {
+        int mask = m_slots.length - 1;
+        int slot = spread(index) & mask;
+
+        // Probe linearly until the index or an empty slot is found
+        while (0 != m_slots[slot] && index != m_members[m_slots[slot] - 1])
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot of the hash table, shifting back any later entry in the same run that would otherwise no longer
+     * be found from its home slot.
+     *
+     * @param slot The slot to empty.
+     */
+    private void removeSlot(int slot)
+    {
+        int mask = m_slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (0 != m_slots[next])
+        {
+            // The entry may fill the hole unless its home slot lies cyclically after the hole and at or before it
+            int home = spread(m_members[m_slots[next] - 1]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                m_slots[hole] = m_slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        m_slots[hole] = 0;
+    }
+
+    /**
+     * Rebuilds the hash table with a new number of slots.
+     *
+     * @param length The new number of slots, a power of two.
+     */
+    private void rehash(int length)
+    {
+        m_slots = new int[length];
+        for (int i = 0; i < m_size; ++i)
+        {
+            m_slots[this.findSlot(m_members[i])] = i + 1;
+        }
+    }
+
+    /**
+     * Get the number of slots for a hash table that can hold a number of members without growing.
+     *
+     * @param size The number of members.
+     * @return A power of two.
+     */
+    private static int tableLength(int size)
+    {
+        return Integer.highestOneBit(Math.max(2 * size, s_minCapacity) * 2 - 1);
+    }
+
+    /**
+     * Scatters consecutive indices across the hash table, since stores assign them densely.
+     *
+     * @param index The index.
+     * @return The mixed hash.
+     */
+    private static int spread(int index)
+    {
+        int hash = index * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
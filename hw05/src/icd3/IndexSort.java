@@ -0,0 +1,291 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts arrays of tank indices by a primitive key per index, without boxing either.
+ *
+ * @author ian
+ *
+ */
+final class IndexSort
+{
+    /**
+     * Below this length, ranges are sorted by insertion.
+     */
+    private static final int s_insertionThreshold = 16;
+
+    /**
+     * Below this length, ranges are sorted and merged sequentially by parallelSort.
+     */
+    private static final int s_parallelThreshold = 1 << 13;
+
+    private IndexSort()
+    {
+    }
+
+    /**
+     * Stably sorts indices by increasing key.
+     *
+     * @param indices The indices to sort.
+     * @param keys The key of each index, so that indices[i] is ordered by keys[indices[i]].
+     */
+    public static void sort(int[] indices, double[] keys)
+    {
+        int[] buffer = indices.clone();
+        mergeSort(buffer, indices, 0, indices.length, keys);
+    }
+
+    /**
+     * Stably sorts indices by increasing key, splitting both the sorting and the merging across the common fork-join
+     * pool.
+     *
+     * @param indices The indices to sort.
+     * @param keys The key of each index, so that indices[i] is ordered by keys[indices[i]].
+     */
+    public static void parallelSort(int[] indices, double[] keys)
+    {
+        int[] buffer = indices.clone();
+        ForkJoinPool.commonPool().invoke(new SortTask(buffer, indices, 0, indices.length, keys));
+    }
+
+    /**
+     * Sorts source[from, to) into destination[from, to). Both ranges must hold the same values on entry.
+     *
+     * @param source The values to sort, used as scratch space.
+     * @param destination The array to receive the sorted values.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, exclusive.
+     * @param keys The key of each index.
+     */
+    private static void mergeSort(int[] source, int[] destination, int from, int to, double[] keys)
+    {
+        if (to - from < s_insertionThreshold)
+        {
+            insertionSort(destination, from, to, keys);
+            return;
+        }
+
+        // Sort each half of the destination into the source, then merge them back
+        int middle = (from + to) >>> 1;
+        mergeSort(destination, source, from, middle, keys);
+        mergeSort(destination, source, middle, to, keys);
+
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; ++i)
+        {
+            // Take from the left on ties to keep the sort stable
+            if (right >= to || (left < middle && keys[source[left]] <= keys[source[right]]))
+            {
+                destination[i] = source[left++];
+            }
+            else
+            {
+                destination[i] = source[right++];
+            }
+        }
+    }
+
+    /**
+     * Sorts a small range in place by insertion.
+     *
+     * @param indices The indices to sort.
+     * @param from The start of the range, inclusive.
+     * @param to The end of the range, exclusive.
+     * @param keys The key of each index.
+     */
+    private static void insertionSort(int[] indices, int from, int to, double[] keys)
+    {
+        for (int i = from + 1; i < to; ++i)
+        {
+            int index = indices[i];
+            double key = keys[index];
+
+            int j = i - 1;
+            while (j >= from && keys[indices[j]] > key)
+            {
+                indices[j + 1] = indices[j];
+                --j;
+            }
+            indices[j + 1] = index;
+        }
+    }
+
+    /**
+     * Merges two sorted runs of source into destination. The runs must be adjacent in source, with the left run first.
+     *
+     * @param source The array holding both runs.
+     * @param left The start of the left run, inclusive.
+     * @param leftEnd The end of the left run, exclusive.
+     * @param right The start of the right run, inclusive.
+     * @param rightEnd The end of the right run, exclusive.
+     * @param destination The array to receive the merged values.
+     * @param to The position in destination of the first merged value.
+     * @param keys The key of each index.
+     */
+    private static void merge(int[] source, int left, int leftEnd, int right, int rightEnd, int[] destination, int to,
+                              double[] keys)
+    {
+        while (left < leftEnd || right < rightEnd)
+        {
+            // Take from the left on ties to keep the sort stable
+            if (right >= rightEnd || (left < leftEnd && keys[source[left]] <= keys[source[right]]))
+            {
+                destination[to++] = source[left++];
+            }
+            else
+            {
+                destination[to++] = source[right++];
+            }
+        }
+    }
+
+    /**
+     * Search a sorted run for the first position whose key is above, or at or above, a given key.
+     *
+     * @param indices The array holding the run.
+     * @param from The start of the run, inclusive.
+     * @param to The end of the run, exclusive.
+     * @param key The key to search for.
+     * @param inclusive true to find the first key at or above key, false to find the first key above it.
+     * @param keys The key of each index.
+     * @return The position found, or to if there is none.
+     */
+    private static int search(int[] indices, int from, int to, double key, boolean inclusive, double[] keys)
+    {
+        while (from < to)
+        {
+            int middle = (from + to) >>> 1;
+            double middleKey = keys[indices[middle]];
+            if (middleKey < key || (!inclusive && middleKey == key))
+            {
+                from = middle + 1;
+            }
+            else
+            {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * A task that sorts source[from, to) into destination[from, to), in the manner of mergeSort.
+     *
+     */
+    private static class SortTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] m_source;
+
+        private final int[] m_destination;
+
+        private final int m_from;
+
+        private final int m_to;
+
+        private final double[] m_keys;
+
+        public SortTask(int[] source, int[] destination, int from, int to, double[] keys)
+        {
+            m_source = source;
+            m_destination = destination;
+            m_from = from;
+            m_to = to;
+            m_keys = keys;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (m_to - m_from < s_parallelThreshold)
+            {
+                mergeSort(m_source, m_destination, m_from, m_to, m_keys);
+                return;
+            }
+
+            // Sort each half of the destination into the source, then merge them back
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new SortTask(m_destination, m_source, m_from, middle, m_keys),
+                    new SortTask(m_destination, m_source, middle, m_to, m_keys));
+            new MergeTask(m_source, m_from, middle, middle, m_to, m_destination, m_from, m_keys).compute();
+        }
+    }
+
+    /**
+     * A task that merges two sorted runs, in the manner of merge. Large merges are split at the middle of the longer
+     * run and the matching position of the shorter one, and the two halves are merged in parallel.
+     *
+     */
+    private static class MergeTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] m_source;
+
+        private final int m_left;
+
+        private final int m_leftEnd;
+
+        private final int m_right;
+
+        private final int m_rightEnd;
+
+        private final int[] m_destination;
+
+        private final int m_to;
+
+        private final double[] m_keys;
+
+        public MergeTask(int[] source, int left, int leftEnd, int right, int rightEnd, int[] destination, int to,
+                         double[] keys)
+        {
+            m_source = source;
+            m_left = left;
+            m_leftEnd = leftEnd;
+            m_right = right;
+            m_rightEnd = rightEnd;
+            m_destination = destination;
+            m_to = to;
+            m_keys = keys;
+        }
+
+        @Override
+        protected void compute()
+        {
+            int leftLength = m_leftEnd - m_left;
+            int rightLength = m_rightEnd - m_right;
+            if (leftLength + rightLength < s_parallelThreshold)
+            {
+                merge(m_source, m_left, m_leftEnd, m_right, m_rightEnd, m_destination, m_to, m_keys);
+                return;
+            }
+
+            // Split both runs around one key. Equal keys from the left run stay ahead of those from the right.
+            int leftSplit;
+            int rightSplit;
+            if (leftLength >= rightLength)
+            {
+                leftSplit = (m_left + m_leftEnd) >>> 1;
+                rightSplit = search(m_source, m_right, m_rightEnd, m_keys[m_source[leftSplit]], true, m_keys);
+            }
+            else
+            {
+                rightSplit = (m_right + m_rightEnd) >>> 1;
+                leftSplit = search(m_source, m_left, m_leftEnd, m_keys[m_source[rightSplit]], false, m_keys);
+            }
+
+            int split = m_to + (leftSplit - m_left) + (rightSplit - m_right);
+            invokeAll(new MergeTask(m_source, m_left, leftSplit, m_right, rightSplit, m_destination, m_to, m_keys),
+                    new MergeTask(m_source, leftSplit, m_leftEnd, rightSplit, m_rightEnd, m_destination, split,
+                            m_keys));
+        }
+    }
+}
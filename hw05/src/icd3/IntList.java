@@ -0,0 +1,119 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used to hold tank indices without boxing. Order is not preserved by removal.
+ *
+ * @author ian
+ *
+ */
+class IntList
+{
+    /**
+     * The backing array. Only the first m_size elements are in the list.
+     */
+    private int[] m_values;
+
+    /**
+     * The number of values in the list.
+     */
+    private int m_size;
+
+    /**
+     * Initializes an empty list.
+     */
+    public IntList()
+    {
+        m_values = new int[4];
+    }
+
+    /**
+     * Initializes a list with the same values as another.
+     *
+     * @param other The list to copy.
+     */
+    public IntList(IntList other)
+    {
+        m_values = Arrays.copyOf(other.m_values, Math.max(other.m_size, 4));
+        m_size = other.m_size;
+    }
+
+    /**
+     * Appends a value to the list.
+     *
+     * @param value The value to add.
+     */
+    public void add(int value)
+    {
+        if (m_size == m_values.length)
+        {
+            m_values = Arrays.copyOf(m_values, 2 * m_size);
+        }
+        m_values[m_size++] = value;
+    }
+
+    /**
+     * Removes one occurrence of a value from the list, moving the last value into its place.
+     *
+     * @param value The value to remove.
+     * @return true if the value was in the list.
+     */
+    public boolean remove(int value)
+    {
+        for (int i = 0; i < m_size; ++i)
+        {
+            if (m_values[i] == value)
+            {
+                m_values[i] = m_values[--m_size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the value at a position.
+     *
+     * @param position A position below size().
+     * @return The value.
+     */
+    public int get(int position)
+    {
+        return m_values[position];
+    }
+
+    /**
+     * Get the number of values in the list.
+     *
+     * @return The size of the list.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Check whether the list is empty.
+     *
+     * @return true if there are no values in the list.
+     */
+    public boolean isEmpty()
+    {
+        return 0 == m_size;
+    }
+
+    /**
+     * Copy the values into a new array.
+     *
+     * @return A new array of the values, in list order.
+     */
+    public int[] toArray()
+    {
+        return Arrays.copyOf(m_values, m_size);
+    }
+}
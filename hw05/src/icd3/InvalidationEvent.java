@@ -0,0 +1,57 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a change to a WaterSystem that invalidates its cached structures.
+ *
+ * @author ian
+ *
+ */
+@Name("icd3.Invalidation")
+@Label("WaterSystem Invalidation")
+@Category("WaterSystem")
+@Description("A change to a WaterSystem that invalidated its cached structures")
+@StackTrace(false)
+class InvalidationEvent extends Event
+{
+    @Name("cause")
+    @Label("Cause")
+    private String m_cause;
+
+    @Name("tankCount")
+    @Label("Tank Count")
+    private int m_tankCount;
+
+    @Name("version")
+    @Label("Version")
+    private long m_version;
+
+    /**
+     * Records an invalidation, if the event is enabled.
+     *
+     * @param cause The name of the method that changed the system.
+     * @param tankCount The number of tanks after the change.
+     * @param version The version of the system after the change.
+     */
+    public static void emit(String cause, int tankCount, long version)
+    {
+        InvalidationEvent event = new InvalidationEvent();
+        if (event.shouldCommit())
+        {
+            event.m_cause = cause;
+            event.m_tankCount = tankCount;
+            event.m_version = version;
+            event.commit();
+        }
+    }
+}
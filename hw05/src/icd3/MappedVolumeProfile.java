@@ -0,0 +1,71 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * A volume profile read in place from buffers, typically views of a memory-mapped ProfileFile. Nothing is copied onto
+ * the heap, so opening a profile costs the same however many break points it has, and pages are only read as the
+ * searches touch them. The searches and interpolation are shared with VolumeBreakPointBijection.
+ *
+ * @author ian
+ *
+ */
+class MappedVolumeProfile extends BreakPointProfile
+{
+    /**
+     * The break point heights, in strictly increasing order.
+     */
+    private final DoubleBuffer m_breakPoints;
+
+    /**
+     * The total volume at each break point.
+     */
+    private final DoubleBuffer m_volumes;
+
+    /**
+     * The total active base area from each break point up to the next.
+     */
+    private final DoubleBuffer m_areas;
+
+    /**
+     * Initializes the profile over its buffers, which must all have the same number of elements.
+     *
+     * @param breakPoints The break point heights, in strictly increasing order.
+     * @param volumes The total volume at each break point.
+     * @param areas The total active base area from each break point up to the next.
+     */
+    public MappedVolumeProfile(DoubleBuffer breakPoints, DoubleBuffer volumes, DoubleBuffer areas)
+    {
+        m_breakPoints = breakPoints;
+        m_volumes = volumes;
+        m_areas = areas;
+    }
+
+    @Override
+    int breakPointCount()
+    {
+        return m_breakPoints.limit();
+    }
+
+    @Override
+    double breakPointHeight(int breakPoint)
+    {
+        return m_breakPoints.get(breakPoint);
+    }
+
+    @Override
+    double breakPointVolume(int breakPoint)
+    {
+        return m_volumes.get(breakPoint);
+    }
+
+    @Override
+    double areaAbove(int lastBreak)
+    {
+        return m_areas.get(lastBreak);
+    }
+}
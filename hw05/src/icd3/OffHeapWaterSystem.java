@@ -0,0 +1,327 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only WaterSystem whose tank geometry lives off the heap in a TankBuffer. The query methods match those of
+ * WaterSystem.
+ *
+ * The volume profile is generated by streaming the edges out of the buffer. Up to s_maxHeapTanks tanks, the edges are
+ * sorted in primitive arrays, about 100 bytes of heap per tank while the profile is built and 48 bytes per break point
+ * afterwards. Beyond that, the tanks are fed to an ExternalProfileBuilder in a temporary directory, which sorts the
+ * edges a run at a time and maps the finished profile from disk, so the heap stays the same however many tanks there
+ * are. No Tank object is held per tank.
+ *
+ * @author ian
+ *
+ */
+public class OffHeapWaterSystem
+{
+    /**
+     * The most tanks whose volume profile is built on the heap, about 50 MB while it is built.
+     */
+    private static final int s_maxHeapTanks = 1 << 19;
+
+    /**
+     * The tanks in this system.
+     */
+    private final TankBuffer m_tanks;
+
+    /**
+     * A one-to-one piecewise bidirectional function of heights and volumes.
+     */
+    private VolumeProfile m_volumeProfile;
+
+    /**
+     * Initializes the WaterSystem to the tanks in the specified buffer. The buffer is shared rather than copied, and
+     * must not be added to afterwards.
+     *
+     * @param tanks The tanks to represent the WaterSystem.
+     */
+    public OffHeapWaterSystem(TankBuffer tanks)
+    {
+        m_tanks = tanks;
+    }
+
+    /**
+     * Initializes the WaterSystem to the tanks in the specified buffer, with a volume profile that has already been
+     * computed for them.
+     *
+     * @param tanks The tanks to represent the WaterSystem.
+     * @param volumeProfile The volume profile of the tanks.
+     */
+    OffHeapWaterSystem(TankBuffer tanks, VolumeProfile volumeProfile)
+    {
+        m_tanks = tanks;
+        m_volumeProfile = volumeProfile;
+    }
+
+    /**
+     * Helper method to fetch or generate the volume to height function.
+     *
+     * @return The object that maps height to volume and vice versa.
+     */
+    private VolumeProfile fetchVolumeProfile()
+    {
+        // If the cache is invalid, then regenerate the requested object
+        if (null == m_volumeProfile)
+        {
+            m_volumeProfile = generateVolumeProfile(m_tanks, s_maxHeapTanks);
+        }
+        return m_volumeProfile;
+    }
+
+    /**
+     * Get the total volume of water in the system given a specified water height.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The volume of the water in all the tanks.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Double heightToVolume(Double waterHeight)
+    {
+        return this.fetchVolumeProfile().getWaterVolume(waterHeight);
+    }
+
+    /**
+     * Get the total volume of water in the system at each of the specified water heights.
+     *
+     * @param waterHeights The heights of the WaterSystem at which to measure.
+     * @param waterVolumes The array to fill with the volume at each height. Must be at least as long as waterHeights.
+     * @throws IllegalArgumentException if any waterHeight is outside the range of tanks, or if waterVolumes is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void heightToVolume(double[] waterHeights, double[] waterVolumes)
+    {
+        this.fetchVolumeProfile().getWaterVolumes(waterHeights, waterVolumes);
+    }
+
+    /**
+     * Get the water height of the system at each of the specified water volumes.
+     *
+     * @param waterVolumes The volumes of the WaterSystem at which to measure.
+     * @param waterHeights The array to fill with the height at each volume. Must be at least as long as waterVolumes.
+     * @throws IllegalArgumentException if any waterVolume is outside the range of tanks, or if waterHeights is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void volumeToHeight(double[] waterVolumes, double[] waterHeights)
+    {
+        this.fetchVolumeProfile().getWaterHeights(waterVolumes, waterHeights);
+    }
+
+    /**
+     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterHeight. Every tank is recreated
+     * on the heap, so for large systems forEachTankLevel or the array form is preferable.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Map<Tank, Double> heightToTankLevel(Double waterHeight)
+    {
+        final Map<Tank, Double> tankLevelMap = new HashMap<>();
+
+        this.forEachTankLevel(waterHeight, new TankLevelConsumer()
+        {
+            @Override
+            public void accept(int tankIndex, Tank tank, double level)
+            {
+                tankLevelMap.put(tank, level);
+            }
+        });
+
+        return tankLevelMap;
+    }
+
+    /**
+     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterVolume. Every tank is recreated
+     * on the heap, so for large systems the array form is preferable.
+     *
+     * @param waterVolume The volume of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterVolume is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Map<Tank, Double> volumeToTankLevel(Double waterVolume)
+    {
+        return this.heightToTankLevel(this.fetchVolumeProfile().getWaterHeight(waterVolume));
+    }
+
+    /**
+     * Passes each tank and its filled height, if the WaterSystem is at waterHeight, to a consumer. The tank index is
+     * its position in the buffer, and each Tank is recreated from the buffer for the call.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @param consumer The callback to receive each tank and its filled height.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void forEachTankLevel(double waterHeight, TankLevelConsumer consumer)
+    {
+        // Ensure validity
+        this.fetchVolumeProfile().throwIfInvalidWaterHeight(waterHeight);
+
+        for (int i = 0; i < m_tanks.size(); ++i)
+        {
+            consumer.accept(i, m_tanks.tank(i), this.filledHeight(i, waterHeight));
+        }
+    }
+
+    /**
+     * Fills an array with the filled height of each tank if the WaterSystem is at waterHeight. The array is keyed by
+     * position in the buffer, and no objects are allocated.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @param tankLevels The array to fill. Must be at least as long as the buffer.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks, or if tankLevels is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void heightToTankLevel(double waterHeight, double[] tankLevels)
+    {
+        // Ensure validity
+        this.fetchVolumeProfile().throwIfInvalidWaterHeight(waterHeight);
+
+        if (tankLevels.length < m_tanks.size())
+        {
+            throw new IllegalArgumentException(String.format("The tankLevels array has only %d elements. Expected: %d",
+                    tankLevels.length, m_tanks.size()));
+        }
+
+        for (int i = 0; i < m_tanks.size(); ++i)
+        {
+            tankLevels[i] = this.filledHeight(i, waterHeight);
+        }
+    }
+
+    /**
+     * Fills an array with the filled height of each tank if the WaterSystem is at waterVolume. The array is keyed by
+     * position in the buffer, and no objects are allocated.
+     *
+     * @param waterVolume The volume of the WaterSystem at which to measure.
+     * @param tankLevels The array to fill. Must be at least as long as the buffer.
+     * @throws IllegalArgumentException if the waterVolume is outside the range of tanks, or if tankLevels is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void volumeToTankLevel(double waterVolume, double[] tankLevels)
+    {
+        this.heightToTankLevel(this.fetchVolumeProfile().getWaterHeight(waterVolume), tankLevels);
+    }
+
+    /**
+     * Get the filled height of a buffered tank.
+     *
+     * @param tankIndex The position of the tank in the buffer.
+     * @param waterHeight The height of the water.
+     * @return The filled height.
+     */
+    private double filledHeight(int tankIndex, double waterHeight)
+    {
+        // The tank is full if its top is below waterHeight, and empty if its bottom is above it
+        return Math.max(Math.min(m_tanks.top(tankIndex), waterHeight) - m_tanks.bottom(tankIndex), 0.0);
+    }
+
+    /**
+     * Get the volume profile, generating it if needed.
+     *
+     * @return The object that maps height to volume and vice versa.
+     */
+    VolumeProfile volumeProfile()
+    {
+        return this.fetchVolumeProfile();
+    }
+
+    /**
+     * Generate the volume profile of the buffered tanks, streaming their edges out of the buffer in one pass.
+     *
+     * @param tanks The tanks in the WaterSystem.
+     * @param maxHeapTanks The most tanks whose profile is built on the heap rather than spilled to disk.
+     * @return The desired profile.
+     * @throws IllegalStateException if the temporary files of a spilled build cannot be written.
+     */
+    static VolumeProfile generateVolumeProfile(TankBuffer tanks, int maxHeapTanks)
+    {
+        if (tanks.size() > maxHeapTanks)
+        {
+            return spillVolumeProfile(tanks);
+        }
+
+        int edgeCount = 2 * tanks.size();
+
+        // Stream the edges out of the buffer
+        double[] edges = new double[edgeCount];
+        double[] areaDeltas = new double[edgeCount];
+        for (int i = 0; i < tanks.size(); ++i)
+        {
+            double baseArea = tanks.baseArea(i);
+            edges[2 * i] = tanks.bottom(i);
+            areaDeltas[2 * i] = baseArea;
+            edges[2 * i + 1] = tanks.top(i);
+            areaDeltas[2 * i + 1] = -baseArea;
+        }
+
+        return VolumeProfileBuilder.build(edges, areaDeltas);
+    }
+
+    /**
+     * Generate the volume profile of the buffered tanks through an ExternalProfileBuilder, which keeps only one run of
+     * edges on the heap, and map the profile from the file it writes.
+     *
+     * @param tanks The tanks in the WaterSystem.
+     * @return The desired profile.
+     * @throws IllegalStateException if the temporary files cannot be written.
+     */
+    private static VolumeProfile spillVolumeProfile(TankBuffer tanks)
+    {
+        try
+        {
+            Path directory = Files.createTempDirectory("profile");
+            Path file = directory.resolve("profile.bin");
+
+            OffHeapWaterSystem mapped;
+            try (ExternalProfileBuilder builder = new ExternalProfileBuilder(directory))
+            {
+                double[] bottomLeft = new double[3];
+                double[] topRight = new double[3];
+                for (int i = 0; i < tanks.size(); ++i)
+                {
+                    tanks.corners(i, bottomLeft, topRight);
+                    builder.add(bottomLeft, topRight);
+                }
+                mapped = builder.build(file);
+            }
+
+            // The mapping outlives the file where the platform allows it, and otherwise the file is left until exit
+            try
+            {
+                Files.delete(file);
+                Files.delete(directory);
+            }
+            catch (IOException e)
+            {
+                directory.toFile().deleteOnExit();
+                file.toFile().deleteOnExit();
+            }
+
+            return mapped.volumeProfile();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("The OffHeapWaterSystem cannot write its temporary files.", e);
+        }
+    }
+}
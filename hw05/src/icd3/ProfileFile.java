@@ -0,0 +1,299 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary snapshot of a computed WaterSystem: its tank geometry and its volume profile, laid out so that it can be
+ * memory-mapped and queried in place. All values are little-endian.
+ *
+ * The file starts with a 24-byte header: the magic number, the format version, the tank count, the break point count
+ * and a reserved zero, the first a long and the rest ints. The tanks follow, packed as in TankBuffer, and then three
+ * arrays of doubles, one element per break point: the heights, the cumulative volumes and the active base areas. Every
+ * section starts on an 8-byte boundary. The tanks are mapped in segments, as TankBuffer maps them, so their section is
+ * limited only by the tank count, while each profile array is mapped on its own and is limited to 2 GB.
+ *
+ * A snapshot is never overwritten in place, since other processes may have the old one mapped and would fault on the
+ * truncated pages. It is written to a temporary file beside the target and then renamed over it atomically, so a
+ * reader maps either the whole old snapshot or the whole new one.
+ *
+ * @author ian
+ *
+ */
+final class ProfileFile
+{
+    /**
+     * The first eight bytes of every profile file, "ICD3PROF" in ASCII.
+     */
+    private static final long s_magic = 0x464F525033444349L;
+
+    /**
+     * The version of the layout described above.
+     */
+    private static final int s_formatVersion = 1;
+
+    /**
+     * The length of the header, and so the offset of the tanks.
+     */
+    static final int s_headerBytes = 24;
+
+    static final ByteOrder s_byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The number of bytes written to the file at a time.
+     */
+    private static final int s_writeBatchBytes = 1 << 16;
+
+    private ProfileFile()
+    {
+    }
+
+    /**
+     * Writes a snapshot of a system to a file.
+     *
+     * @param path The file to create or replace.
+     * @param tankStore The tanks of the system.
+     * @param volumeBijection The volume profile of the system.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a profile array of the snapshot would exceed 2 GB.
+     */
+    public static void write(Path path, TankStore tankStore, VolumeBreakPointBijection volumeBijection)
+            throws IOException
+    {
+        int[] tankIndices = tankStore.indices();
+        int breakPointCount = volumeBijection.breakPointCount();
+        throwIfTooLarge(breakPointCount);
+
+        Path temporary = temporarySibling(path);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE))
+        {
+            ByteBuffer batch = ByteBuffer.allocateDirect(s_writeBatchBytes).order(s_byteOrder);
+
+            writeHeader(batch, tankIndices.length, breakPointCount);
+
+            // Tank geometry
+            for (int tankIndex : tankIndices)
+            {
+                if (batch.remaining() < TankBuffer.s_bytesPerTank)
+                {
+                    flush(channel, batch);
+                }
+                TankBuffer.pack(batch, batch.position(), tankStore.tank(tankIndex));
+                batch.position(batch.position() + TankBuffer.s_bytesPerTank);
+            }
+
+            // Volume profile, one array after another
+            for (int array = 0; array < 3; ++array)
+            {
+                for (int i = 0; i < breakPointCount; ++i)
+                {
+                    if (batch.remaining() < 8)
+                    {
+                        flush(channel, batch);
+                    }
+                    batch.putDouble(profileValue(volumeBijection, array, i));
+                }
+            }
+
+            flush(channel, batch);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        replace(temporary, path);
+    }
+
+    /**
+     * Maps a snapshot read-only into memory. The mapping is shared with any other process that maps the same file,
+     * and stays valid after this returns.
+     *
+     * @param path The file to map.
+     * @return A system that answers queries straight from the mapped pages.
+     * @throws IOException if the file cannot be mapped.
+     * @throws IllegalArgumentException if the file is not a profile file of this version, or is truncated.
+     */
+    public static OffHeapWaterSystem open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() < s_headerBytes)
+            {
+                throw new IllegalArgumentException(String.format("The file %s is not a profile file.", path));
+            }
+            ByteBuffer header = section(channel, 0, s_headerBytes);
+
+            // Check the header against the length of the file
+            if (header.getLong(0) != s_magic)
+            {
+                throw new IllegalArgumentException(String.format("The file %s is not a profile file.", path));
+            }
+            if (header.getInt(8) != s_formatVersion)
+            {
+                throw new IllegalArgumentException(String.format("The profile file %s has version %d. Expected: %d",
+                        path, header.getInt(8), s_formatVersion));
+            }
+            int tankCount = header.getInt(12);
+            int breakPointCount = header.getInt(16);
+            if (tankCount < 0 || breakPointCount < 0 || breakPointCount > Integer.MAX_VALUE / 8
+                    || fileLength(tankCount, breakPointCount) != channel.size())
+            {
+                throw new IllegalArgumentException(String.format("The profile file %s is truncated or corrupt.",
+                        path));
+            }
+
+            // Map each section in place. The mappings stay valid after the channel is closed.
+            long offset = s_headerBytes;
+            TankBuffer tanks = TankBuffer.map(channel, offset, tankCount);
+            offset += (long) tankCount * TankBuffer.s_bytesPerTank;
+            DoubleBuffer breakPoints = section(channel, offset, 8 * breakPointCount).asDoubleBuffer();
+            offset += 8L * breakPointCount;
+            DoubleBuffer volumes = section(channel, offset, 8 * breakPointCount).asDoubleBuffer();
+            offset += 8L * breakPointCount;
+            DoubleBuffer areas = section(channel, offset, 8 * breakPointCount).asDoubleBuffer();
+
+            return new OffHeapWaterSystem(tanks, new MappedVolumeProfile(breakPoints, volumes, areas));
+        }
+    }
+
+    /**
+     * Writes the header of a profile file into a batch.
+     *
+     * @param batch The batch, with at least s_headerBytes remaining.
+     * @param tankCount The number of tanks.
+     * @param breakPointCount The number of break points.
+     */
+    static void writeHeader(ByteBuffer batch, int tankCount, int breakPointCount)
+    {
+        batch.putLong(s_magic);
+        batch.putInt(s_formatVersion);
+        batch.putInt(tankCount);
+        batch.putInt(breakPointCount);
+        batch.putInt(0);
+    }
+
+    /**
+     * Creates an empty temporary file in the same directory as a file, so that it can later be renamed over it.
+     *
+     * @param path The file to be replaced.
+     * @return The temporary file.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    static Path temporarySibling(Path path) throws IOException
+    {
+        Path directory = path.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Atomically renames a finished temporary file over a file, so that a reader sees either the old file or the new
+     * one and never a partial write. The temporary file is deleted if the rename fails.
+     *
+     * @param temporary The finished temporary file, in the same directory as path.
+     * @param path The file to create or replace.
+     * @throws IOException if the file cannot be replaced.
+     */
+    static void replace(Path temporary, Path path) throws IOException
+    {
+        try
+        {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Throws an exception if a profile array of a profile file would be too large to map.
+     *
+     * @param breakPointCount The number of break points.
+     * @throws IllegalArgumentException if a profile array exceeds 2 GB.
+     */
+    static void throwIfTooLarge(int breakPointCount)
+    {
+        if (breakPointCount > Integer.MAX_VALUE / 8)
+        {
+            throw new IllegalArgumentException(String.format(
+                    "A profile file of %d break points has an array over 2 GB.", breakPointCount));
+        }
+    }
+
+    /**
+     * Get the length of a profile file.
+     *
+     * @param tankCount The number of tanks.
+     * @param breakPointCount The number of break points.
+     * @return The length in bytes.
+     */
+    private static long fileLength(int tankCount, int breakPointCount)
+    {
+        return s_headerBytes + (long) tankCount * TankBuffer.s_bytesPerTank + 3L * 8 * breakPointCount;
+    }
+
+    /**
+     * Get one element of one of the profile arrays.
+     *
+     * @param volumeBijection The volume profile.
+     * @param array 0 for the heights, 1 for the volumes and 2 for the areas.
+     * @param breakPoint The index of the break point.
+     * @return The element.
+     */
+    private static double profileValue(VolumeBreakPointBijection volumeBijection, int array, int breakPoint)
+    {
+        switch (array)
+        {
+        case 0:
+            return volumeBijection.breakPointHeight(breakPoint);
+        case 1:
+            return volumeBijection.breakPointVolume(breakPoint);
+        default:
+            return volumeBijection.areaAbove(breakPoint);
+        }
+    }
+
+    /**
+     * Maps part of a file read-only.
+     *
+     * @param channel The open file.
+     * @param offset The byte offset of the part.
+     * @param length The byte length of the part.
+     * @return A little-endian mapping of just that part.
+     * @throws IOException if the part cannot be mapped.
+     */
+    private static ByteBuffer section(FileChannel channel, long offset, int length) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(s_byteOrder);
+    }
+
+    /**
+     * Writes the filled part of a batch to a channel and clears the batch.
+     *
+     * @param channel The channel to write.
+     * @param batch The batch, with its position at the end of the filled part.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static void flush(FileChannel channel, ByteBuffer batch) throws IOException
+    {
+        batch.flip();
+        while (batch.hasRemaining())
+        {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event spanning the rebuild of one cached layer of a WaterSystem. The event also carries the start
+ * of the rebuild on the nanoTime clock, so that the same span can be counted in WaterSystemMetrics.
+ *
+ * @author ian
+ *
+ */
+@Name("icd3.Rebuild")
+@Label("WaterSystem Rebuild")
+@Category("WaterSystem")
+@Description("The rebuild of a cached layer of a WaterSystem")
+@StackTrace(false)
+class RebuildEvent extends Event
+{
+    @Name("layer")
+    @Label("Layer")
+    private String m_layer;
+
+    @Name("tankCount")
+    @Label("Tank Count")
+    private int m_tankCount;
+
+    @Name("breakPointCount")
+    @Label("Break Point Count")
+    private int m_breakPointCount;
+
+    /**
+     * The value of System.nanoTime() when the rebuild started. Transient fields are not recorded.
+     */
+    private transient long m_startNanos;
+
+    /**
+     * Starts timing a rebuild.
+     *
+     * @return The event, already begun.
+     */
+    public static RebuildEvent start()
+    {
+        RebuildEvent event = new RebuildEvent();
+        event.begin();
+        event.m_startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * Get the start of the rebuild on the nanoTime clock.
+     *
+     * @return The value of System.nanoTime() when the rebuild started.
+     */
+    public long startNanos()
+    {
+        return m_startNanos;
+    }
+
+    /**
+     * Ends the rebuild and records it, if the event is enabled.
+     *
+     * @param layer The layer rebuilt.
+     * @param tankCount The number of tanks in the system.
+     * @param breakPointCount The number of break points in the volume profile, or zero if it is not generated.
+     */
+    public void finish(WaterSystemMetrics.Layer layer, int tankCount, int breakPointCount)
+    {
+        this.end();
+        if (this.shouldCommit())
+        {
+            m_layer = layer.name();
+            m_tankCount = tankCount;
+            m_breakPointCount = breakPointCount;
+            this.commit();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The worker process behind one shard of a ShardedWaterSystem. It owns a range of heights, receives the edges of the
+ * tanks clipped to that range, builds its own volume profile from them, and answers queries within the range with
+ * volumes measured from the bottom of the range. Each worker knows nothing of the other shards.
+ *
+ * The worker speaks a binary protocol over its standard input and output: a command byte followed by its arguments,
+ * answered, for every command but s_edges, by a status byte and either the results or an error message. It exits when
+ * its input is closed or it receives s_shutdown.
+ *
+ * @author ian
+ *
+ */
+final class ShardWorker
+{
+    /**
+     * Followed by an int count and that many pairs of an edge height and its change in active base area. No reply.
+     */
+    static final byte s_edges = 1;
+
+    /**
+     * Builds the profile. Replied to with the volume of the full range.
+     */
+    static final byte s_build = 2;
+
+    /**
+     * Followed by an int count and that many heights. Replied to with the volume at each, from the bottom of the range.
+     */
+    static final byte s_heightToVolume = 3;
+
+    /**
+     * Followed by an int count and that many volumes from the bottom of the range. Replied to with the height at each.
+     */
+    static final byte s_volumeToHeight = 4;
+
+    /**
+     * Ends the worker. No reply.
+     */
+    static final byte s_shutdown = 5;
+
+    static final byte s_succeeded = 0;
+
+    /**
+     * Replied when a command fails, followed by the message as modified UTF-8.
+     */
+    static final byte s_failed = 1;
+
+    /**
+     * The height of each edge received so far.
+     */
+    private double[] m_edges = new double[1024];
+
+    /**
+     * The change in active base area at each edge.
+     */
+    private double[] m_areaDeltas = new double[1024];
+
+    private int m_edgeCount;
+
+    /**
+     * The profile of the range, once built.
+     */
+    private VolumeBreakPointBijection m_volumeBijection;
+
+    /**
+     * Serves commands from standard input until it is closed or the worker is shut down.
+     *
+     * @param args Unused.
+     * @throws IOException if the coordinator cannot be reached.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        // Standard output carries the protocol, so nothing else may be printed to it
+        DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+
+        ShardWorker worker = new ShardWorker();
+        while (worker.serve(in, out))
+        {
+            out.flush();
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads and answers one command.
+     *
+     * @param in The commands.
+     * @param out The replies.
+     * @return false once the worker should exit.
+     * @throws IOException if the coordinator cannot be reached.
+     */
+    boolean serve(DataInputStream in, DataOutputStream out) throws IOException
+    {
+        byte command;
+        try
+        {
+            command = in.readByte();
+        }
+        catch (EOFException e)
+        {
+            return false;
+        }
+
+        switch (command)
+        {
+        case s_edges:
+            this.receiveEdges(in);
+            return true;
+        case s_shutdown:
+            return false;
+        default:
+            break;
+        }
+
+        // Read the arguments in full before anything can fail, so that the stream stays in step
+        double[] values = new double[0];
+        if (command == s_heightToVolume || command == s_volumeToHeight)
+        {
+            values = new double[in.readInt()];
+            for (int i = 0; i < values.length; ++i)
+            {
+                values[i] = in.readDouble();
+            }
+        }
+
+        try
+        {
+            double[] results = this.execute(command, values);
+            out.writeByte(s_succeeded);
+            for (double result : results)
+            {
+                out.writeDouble(result);
+            }
+        }
+        catch (RuntimeException e)
+        {
+            out.writeByte(s_failed);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        }
+        return true;
+    }
+
+    /**
+     * Carries out a command that has a reply.
+     *
+     * @param command The command.
+     * @param values Its heights or volumes, if any.
+     * @return The results to reply with.
+     * @throws IllegalArgumentException if the command is unknown.
+     * @throws IllegalStateException if a query arrives before the profile is built.
+     */
+    private double[] execute(byte command, double[] values)
+    {
+        if (command == s_build)
+        {
+            m_volumeBijection = VolumeProfileBuilder.build(Arrays.copyOf(m_edges, m_edgeCount),
+                    Arrays.copyOf(m_areaDeltas, m_edgeCount));
+            m_edges = null;
+            m_areaDeltas = null;
+            return new double[] { this.maxVolume() };
+        }
+        if (command != s_heightToVolume && command != s_volumeToHeight)
+        {
+            throw new IllegalArgumentException(String.format("The command %d is unknown.", command));
+        }
+        if (null == m_volumeBijection)
+        {
+            throw new IllegalStateException("The shard has not been built.");
+        }
+
+        double[] results = new double[values.length];
+        for (int i = 0; i < values.length; ++i)
+        {
+            results[i] = command == s_heightToVolume ? this.volumeAt(values[i]) : this.heightAt(values[i]);
+        }
+        return results;
+    }
+
+    /**
+     * Appends a batch of edges.
+     *
+     * @param in The stream positioned at the count of the batch.
+     * @throws IOException if the batch cannot be read.
+     */
+    private void receiveEdges(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if (m_edgeCount + count > m_edges.length)
+        {
+            int capacity = Math.max(2 * m_edges.length, m_edgeCount + count);
+            m_edges = Arrays.copyOf(m_edges, capacity);
+            m_areaDeltas = Arrays.copyOf(m_areaDeltas, capacity);
+        }
+
+        for (int i = 0; i < count; ++i)
+        {
+            m_edges[m_edgeCount] = in.readDouble();
+            m_areaDeltas[m_edgeCount] = in.readDouble();
+            ++m_edgeCount;
+        }
+    }
+
+    /**
+     * Get the volume of the full range.
+     *
+     * @return The volume, zero if no tank reaches into the range.
+     */
+    private double maxVolume()
+    {
+        return m_volumeBijection.isEmpty() ? 0 : m_volumeBijection.maxVolume();
+    }
+
+    /**
+     * Get the volume at a height in the range. Heights below the lowest edge hold nothing, and heights above the
+     * highest hold everything.
+     *
+     * @param waterHeight The height.
+     * @return The volume from the bottom of the range.
+     */
+    private double volumeAt(double waterHeight)
+    {
+        if (m_volumeBijection.isEmpty() || waterHeight <= m_volumeBijection.minHeight())
+        {
+            return 0;
+        }
+        if (waterHeight >= m_volumeBijection.maxHeight())
+        {
+            return m_volumeBijection.maxVolume();
+        }
+        return m_volumeBijection.getWaterVolume(waterHeight);
+    }
+
+    /**
+     * Get the height at a volume in the range.
+     *
+     * @param waterVolume The volume from the bottom of the range.
+     * @return The height, the highest of any that share the volume.
+     * @throws NoSuchElementException if no tank reaches into the range.
+     */
+    private double heightAt(double waterVolume)
+    {
+        // Absorb any rounding in the offset the coordinator subtracted
+        double clamped = Math.min(Math.max(waterVolume, 0), m_volumeBijection.maxVolume());
+        return m_volumeBijection.getWaterHeight(clamped);
+    }
+}
@@ -0,0 +1,598 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only WaterSystem whose volume profile is split by height across worker processes, so that no one JVM holds
+ * more than its own range of the profile. The height axis is divided into equal ranges, one per shard. Each tank is
+ * clipped to every range it reaches into, and the clipped edges are streamed to the ShardWorker that owns the range,
+ * which builds its own profile of volumes from the bottom of its range.
+ *
+ * The coordinator keeps only the range boundaries and the volume below each range. A height is answered by the one
+ * shard whose range holds it, plus the volume below that range; a volume is answered by the one shard whose volumes
+ * hold it, after subtracting the volume below. Batches are split by shard and sent to every shard involved before any
+ * reply is read, so the shards work on them at the same time.
+ *
+ * The workers run on this machine and are reached through their standard input and output. Queries are serialized.
+ * Closing the system shuts the workers down.
+ *
+ * @author ian
+ *
+ */
+public class ShardedWaterSystem implements Closeable
+{
+    /**
+     * The number of edges sent to a worker at a time.
+     */
+    private static final int s_edgeBatchLength = 4096;
+
+    /**
+     * The heights dividing the shards: shard i owns from element i up to element i + 1.
+     */
+    private final double[] m_boundaries;
+
+    /**
+     * The volume below each shard, with the total volume as the last element.
+     */
+    private final double[] m_volumeOffsets;
+
+    private final Shard[] m_shards;
+
+    /**
+     * Initializes the system once the workers are built.
+     *
+     * @param boundaries The heights dividing the shards.
+     * @param shards The built workers.
+     */
+    private ShardedWaterSystem(double[] boundaries, Shard[] shards)
+    {
+        m_boundaries = boundaries;
+        m_shards = shards;
+
+        // Stack the shards' volumes
+        m_volumeOffsets = new double[shards.length + 1];
+        for (int shard = 0; shard < shards.length; ++shard)
+        {
+            m_volumeOffsets[shard + 1] = m_volumeOffsets[shard] + shards[shard].m_maxVolume;
+        }
+    }
+
+    /**
+     * Starts the workers and builds their profiles. The tanks are iterated twice, once to find their range of heights
+     * and once to stream them to the workers, and are never held together.
+     *
+     * @param tanks The tanks to represent the WaterSystem. Must iterate the same tanks both times.
+     * @param shardCount The number of worker processes.
+     * @param jvmOptions Options for each worker's JVM, such as a heap limit.
+     * @return The running system.
+     * @throws IOException if a worker cannot be started or reached.
+     * @throws IllegalArgumentException if the shardCount is not positive.
+     * @throws IllegalStateException if a worker fails to build its profile.
+     */
+    public static ShardedWaterSystem start(Iterable<Tank> tanks, int shardCount, String... jvmOptions)
+            throws IOException
+    {
+        if (shardCount <= 0)
+        {
+            throw new IllegalArgumentException(String.format("The shardCount of %d should be positive.",
+                    shardCount));
+        }
+
+        // Find the range of heights and divide it evenly
+        double minHeight = Double.POSITIVE_INFINITY;
+        double maxHeight = Double.NEGATIVE_INFINITY;
+        for (Tank tank : tanks)
+        {
+            minHeight = Math.min(minHeight, tank.getMinimum(2));
+            maxHeight = Math.max(maxHeight, tank.getMaximum(2));
+        }
+        double[] boundaries = new double[shardCount + 1];
+        for (int i = 0; i <= shardCount; ++i)
+        {
+            boundaries[i] = minHeight + (maxHeight - minHeight) * i / shardCount;
+        }
+        boundaries[shardCount] = maxHeight;
+
+        Shard[] shards = new Shard[shardCount];
+        try
+        {
+            for (int shard = 0; shard < shardCount; ++shard)
+            {
+                shards[shard] = new Shard(shard, jvmOptions);
+            }
+
+            // Clip each tank to each range it reaches into. A tank that only touches a range adds nothing to it.
+            for (Tank tank : tanks)
+            {
+                double bottom = tank.getMinimum(2);
+                double top = tank.getMaximum(2);
+                double baseArea = (tank.getMaximum(0) - tank.getMinimum(0)) * (tank.getMaximum(1) - tank.getMinimum(1));
+                for (int shard = shardOfHeight(boundaries, bottom); shard < shardCount; ++shard)
+                {
+                    double clippedBottom = Math.max(bottom, boundaries[shard]);
+                    double clippedTop = Math.min(top, boundaries[shard + 1]);
+                    if (clippedTop <= clippedBottom)
+                    {
+                        break;
+                    }
+                    shards[shard].addEdge(clippedBottom, baseArea);
+                    shards[shard].addEdge(clippedTop, -baseArea);
+                }
+            }
+
+            // Let every worker build at once, then collect their volumes
+            for (Shard shard : shards)
+            {
+                shard.flushEdges();
+                shard.send(ShardWorker.s_build);
+            }
+            for (Shard shard : shards)
+            {
+                shard.m_maxVolume = shard.receive(1)[0];
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            closeAll(shards);
+            throw e;
+        }
+
+        return new ShardedWaterSystem(boundaries, shards);
+    }
+
+    /**
+     * Get the number of shards.
+     *
+     * @return The number of worker processes.
+     */
+    public int shardCount()
+    {
+        return m_shards.length;
+    }
+
+    /**
+     * Get the total volume of water in the system given a specified water height.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The volume of the water in all the tanks.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     * @throws IllegalStateException if a worker cannot be reached or fails.
+     */
+    public Double heightToVolume(Double waterHeight)
+    {
+        double[] waterVolumes = new double[1];
+        this.heightToVolume(new double[] { waterHeight }, waterVolumes);
+        return waterVolumes[0];
+    }
+
+    /**
+     * Get the total volume of water in the system at each of the specified water heights.
+     *
+     * @param waterHeights The heights of the WaterSystem at which to measure.
+     * @param waterVolumes The array to fill with the volume at each height. Must be at least as long as waterHeights.
+     * @throws IllegalArgumentException if any waterHeight is outside the range of tanks, or if waterVolumes is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     * @throws IllegalStateException if a worker cannot be reached or fails.
+     */
+    public synchronized void heightToVolume(double[] waterHeights, double[] waterVolumes)
+    {
+        this.throwIfTooShort(waterHeights, waterVolumes);
+        for (double waterHeight : waterHeights)
+        {
+            this.throwIfInvalidWaterHeight(waterHeight);
+        }
+
+        int[] shardOf = new int[waterHeights.length];
+        for (int i = 0; i < waterHeights.length; ++i)
+        {
+            shardOf[i] = shardOfHeight(m_boundaries, waterHeights[i]);
+        }
+
+        this.route(ShardWorker.s_heightToVolume, waterHeights, shardOf, waterVolumes);
+
+        // Add the volume below each shard
+        for (int i = 0; i < waterHeights.length; ++i)
+        {
+            waterVolumes[i] += m_volumeOffsets[shardOf[i]];
+        }
+    }
+
+    /**
+     * Get the water height of the system at each of the specified water volumes.
+     *
+     * @param waterVolumes The volumes of the WaterSystem at which to measure.
+     * @param waterHeights The array to fill with the height at each volume. Must be at least as long as waterVolumes.
+     * @throws IllegalArgumentException if any waterVolume is outside the range of tanks, or if waterHeights is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     * @throws IllegalStateException if a worker cannot be reached or fails.
+     */
+    public synchronized void volumeToHeight(double[] waterVolumes, double[] waterHeights)
+    {
+        this.throwIfTooShort(waterVolumes, waterHeights);
+        for (double waterVolume : waterVolumes)
+        {
+            this.throwIfInvalidWaterVolume(waterVolume);
+        }
+
+        // Measure each volume from the bottom of its shard
+        int[] shardOf = new int[waterVolumes.length];
+        double[] shardVolumes = new double[waterVolumes.length];
+        for (int i = 0; i < waterVolumes.length; ++i)
+        {
+            shardOf[i] = this.shardOfVolume(waterVolumes[i]);
+            shardVolumes[i] = waterVolumes[i] - m_volumeOffsets[shardOf[i]];
+        }
+
+        this.route(ShardWorker.s_volumeToHeight, shardVolumes, shardOf, waterHeights);
+    }
+
+    /**
+     * Shuts the workers down and waits for them to exit.
+     */
+    @Override
+    public void close()
+    {
+        closeAll(m_shards);
+    }
+
+    /**
+     * Sends each value to its shard, and fills in the results as the shards reply.
+     *
+     * @param command The query command.
+     * @param values The heights or volumes to convert.
+     * @param shardOf The shard of each value.
+     * @param results The array to fill with the converted values, as the shards measure them.
+     * @throws IllegalStateException if a worker cannot be reached, or if any fails once every reply has been read.
+     */
+    private void route(byte command, double[] values, int[] shardOf, double[] results)
+    {
+        // Group the values by shard
+        int[] counts = new int[m_shards.length];
+        for (int shard : shardOf)
+        {
+            ++counts[shard];
+        }
+
+        try
+        {
+            // Send every shard its part of the batch before reading any reply
+            for (int shard = 0; shard < m_shards.length; ++shard)
+            {
+                if (0 == counts[shard])
+                {
+                    continue;
+                }
+
+                DataOutputStream out = m_shards[shard].m_out;
+                out.writeByte(command);
+                out.writeInt(counts[shard]);
+                for (int i = 0; i < values.length; ++i)
+                {
+                    if (shardOf[i] == shard)
+                    {
+                        out.writeDouble(values[i]);
+                    }
+                }
+                out.flush();
+            }
+
+            // Read every reply, even after a shard fails, so that no stale reply is left to answer the next batch
+            IllegalStateException failure = null;
+            for (int shard = 0; shard < m_shards.length; ++shard)
+            {
+                if (0 == counts[shard])
+                {
+                    continue;
+                }
+
+                double[] shardResults;
+                try
+                {
+                    shardResults = m_shards[shard].receive(counts[shard]);
+                }
+                catch (IllegalStateException e)
+                {
+                    failure = null == failure ? e : failure;
+                    continue;
+                }
+
+                int next = 0;
+                for (int i = 0; i < values.length; ++i)
+                {
+                    if (shardOf[i] == shard)
+                    {
+                        results[i] = shardResults[next++];
+                    }
+                }
+            }
+
+            if (null != failure)
+            {
+                throw failure;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("A shard worker cannot be reached.", e);
+        }
+    }
+
+    /**
+     * Get the shard whose range holds a height. The top boundary belongs to the last shard.
+     *
+     * @param boundaries The heights dividing the shards.
+     * @param height A height within the boundaries.
+     * @return The index of the shard.
+     */
+    private static int shardOfHeight(double[] boundaries, double height)
+    {
+        int shard = Arrays.binarySearch(boundaries, height);
+        if (shard < 0)
+        {
+            // The insertion point is the first boundary above the height
+            shard = -shard - 2;
+        }
+        return Math.max(Math.min(shard, boundaries.length - 2), 0);
+    }
+
+    /**
+     * Get the shard that answers a volume: the highest shard with tanks whose range starts at or below the volume, so
+     * that a volume shared by several heights gets the highest of them, as in an unsharded system.
+     *
+     * @param waterVolume A volume within the range of the system.
+     * @return The index of the shard.
+     */
+    private int shardOfVolume(double waterVolume)
+    {
+        for (int shard = m_shards.length - 1; shard > 0; --shard)
+        {
+            if (m_volumeOffsets[shard] <= waterVolume && m_shards[shard].m_maxVolume > 0)
+            {
+                return shard;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Throws an exception if waterHeight is outside the range of tanks.
+     *
+     * @param waterHeight The height to validate.
+     */
+    private void throwIfInvalidWaterHeight(double waterHeight)
+    {
+        this.throwIfEmpty();
+        if (waterHeight > m_boundaries[m_shards.length])
+        {
+            throw new IllegalArgumentException(String.format("The waterHeight of %f exceeds the maximum of %f.",
+                    waterHeight, m_boundaries[m_shards.length]));
+        }
+        if (waterHeight < m_boundaries[0])
+        {
+            throw new IllegalArgumentException(String.format("The waterHeight of %f is below the minimum of %f.",
+                    waterHeight, m_boundaries[0]));
+        }
+    }
+
+    /**
+     * Throws an exception if waterVolume is negative or exceeds the maximum volume.
+     *
+     * @param waterVolume The volume to validate.
+     */
+    private void throwIfInvalidWaterVolume(double waterVolume)
+    {
+        this.throwIfEmpty();
+        if (waterVolume < 0)
+        {
+            throw new IllegalArgumentException("The waterVolume should not be negative.");
+        }
+        if (waterVolume > m_volumeOffsets[m_shards.length])
+        {
+            throw new IllegalArgumentException("The waterVolume should not exceed the maximum volume.");
+        }
+    }
+
+    /**
+     * Throws an exception if the output array of a batch conversion cannot hold the results.
+     *
+     * @param input The values to convert.
+     * @param output The array to hold the converted values.
+     */
+    private void throwIfTooShort(double[] input, double[] output)
+    {
+        if (output.length < input.length)
+        {
+            throw new IllegalArgumentException(String.format("The output array of length %d cannot hold %d values.",
+                    output.length, input.length));
+        }
+    }
+
+    /**
+     * Throws an exception if there are no tanks in the system.
+     */
+    private void throwIfEmpty()
+    {
+        if (m_volumeOffsets[m_shards.length] == 0)
+        {
+            throw new NoSuchElementException("There are no tanks in the system.");
+        }
+    }
+
+    /**
+     * Shuts down every worker that was started.
+     *
+     * @param shards The workers, some of which may be null.
+     */
+    private static void closeAll(Shard[] shards)
+    {
+        for (Shard shard : shards)
+        {
+            if (shard != null)
+            {
+                shard.close();
+            }
+        }
+    }
+
+    /**
+     * The coordinator's end of one worker process.
+     *
+     */
+    private static class Shard
+    {
+        private final int m_index;
+
+        private final Process m_process;
+
+        private final DataInputStream m_in;
+
+        private final DataOutputStream m_out;
+
+        /**
+         * Edges waiting to be sent, as pairs of a height and a change in area.
+         */
+        private final double[] m_pendingEdges = new double[2 * s_edgeBatchLength];
+
+        private int m_pendingEdgeCount;
+
+        /**
+         * The volume of the shard's full range, once built.
+         */
+        private double m_maxVolume;
+
+        /**
+         * Starts a worker process with the classpath of this one.
+         *
+         * @param index The index of the shard.
+         * @param jvmOptions Options for the worker's JVM.
+         * @throws IOException if the process cannot be started.
+         */
+        public Shard(int index, String[] jvmOptions) throws IOException
+        {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(Arrays.asList(jvmOptions));
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ShardWorker.class.getName());
+
+            m_index = index;
+            m_process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            m_in = new DataInputStream(new BufferedInputStream(m_process.getInputStream()));
+            m_out = new DataOutputStream(new BufferedOutputStream(m_process.getOutputStream()));
+        }
+
+        /**
+         * Queues an edge, sending the queue once it is full.
+         *
+         * @param height The height of the edge.
+         * @param areaDelta The change in active base area at the edge.
+         * @throws IOException if the worker cannot be reached.
+         */
+        public void addEdge(double height, double areaDelta) throws IOException
+        {
+            if (m_pendingEdgeCount == s_edgeBatchLength)
+            {
+                this.flushEdges();
+            }
+            m_pendingEdges[2 * m_pendingEdgeCount] = height;
+            m_pendingEdges[2 * m_pendingEdgeCount + 1] = areaDelta;
+            ++m_pendingEdgeCount;
+        }
+
+        /**
+         * Sends the queued edges.
+         *
+         * @throws IOException if the worker cannot be reached.
+         */
+        public void flushEdges() throws IOException
+        {
+            if (0 == m_pendingEdgeCount)
+            {
+                return;
+            }
+
+            m_out.writeByte(ShardWorker.s_edges);
+            m_out.writeInt(m_pendingEdgeCount);
+            for (int i = 0; i < 2 * m_pendingEdgeCount; ++i)
+            {
+                m_out.writeDouble(m_pendingEdges[i]);
+            }
+            m_pendingEdgeCount = 0;
+        }
+
+        /**
+         * Sends a command without arguments.
+         *
+         * @param command The command.
+         * @throws IOException if the worker cannot be reached.
+         */
+        public void send(byte command) throws IOException
+        {
+            m_out.writeByte(command);
+            m_out.flush();
+        }
+
+        /**
+         * Reads the reply to a command.
+         *
+         * @param resultCount The number of results expected.
+         * @return The results.
+         * @throws IOException if the worker cannot be reached.
+         * @throws IllegalStateException if the command failed.
+         */
+        public double[] receive(int resultCount) throws IOException
+        {
+            if (m_in.readByte() == ShardWorker.s_failed)
+            {
+                throw new IllegalStateException(String.format("Shard %d failed: %s", m_index, m_in.readUTF()));
+            }
+
+            double[] results = new double[resultCount];
+            for (int i = 0; i < resultCount; ++i)
+            {
+                results[i] = m_in.readDouble();
+            }
+            return results;
+        }
+
+        /**
+         * Asks the worker to exit and waits for it, killing it if it cannot be asked.
+         */
+        public void close()
+        {
+            try
+            {
+                this.send(ShardWorker.s_shutdown);
+                m_out.close();
+                m_process.waitFor();
+            }
+            catch (IOException e)
+            {
+                m_process.destroy();
+            }
+            catch (InterruptedException e)
+            {
+                m_process.destroy();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
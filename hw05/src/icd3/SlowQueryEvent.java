@@ -0,0 +1,43 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * A flight recorder event spanning a query of a WaterSystem. Only queries that take at least the threshold are
+ * recorded; the threshold defaults to 10 ms and can be changed in the recording settings, for example with
+ * "icd3.SlowQuery#threshold=1 ms".
+ *
+ * @author ian
+ *
+ */
+@Name("icd3.SlowQuery")
+@Label("WaterSystem Slow Query")
+@Category("WaterSystem")
+@Description("A WaterSystem query that took at least the threshold")
+@Threshold("10 ms")
+class SlowQueryEvent extends Event
+{
+    @Name("query")
+    @Label("Query")
+    private String m_query;
+
+    /**
+     * Starts timing a query.
+     *
+     * @param query The name of the query method.
+     */
+    public SlowQueryEvent(String query)
+    {
+        m_query = query;
+        this.begin();
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * A callback that receives the tank edges of a WaterSystem in increasing order of height. At each break point, every
+ * tank whose top is there is deactivated, then every tank whose bottom is there is activated, and then the break point
+ * itself is reported with the totals above it.
+ *
+ * @author ian
+ *
+ */
+public interface SweepListener
+{
+    /**
+     * Receives a tank whose bottom is at the current break point.
+     *
+     * @param height The height of the break point.
+     * @param tankIndex The stable index of the tank within its WaterSystem.
+     * @param tank The tank.
+     */
+    void tankActivated(double height, int tankIndex, Tank tank);
+
+    /**
+     * Receives a tank whose top is at the current break point.
+     *
+     * @param height The height of the break point.
+     * @param tankIndex The stable index of the tank within its WaterSystem.
+     * @param tank The tank.
+     */
+    void tankDeactivated(double height, int tankIndex, Tank tank);
+
+    /**
+     * Receives a break point once all of its edges have been passed.
+     *
+     * @param height The height of the break point.
+     * @param activeBaseArea The total base area of the tanks active from this break point up to the next.
+     * @param activeCount The number of tanks active from this break point up to the next.
+     */
+    void breakPoint(double height, double activeBaseArea, int activeCount);
+}
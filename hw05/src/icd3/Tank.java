@@ -108,12 +108,16 @@ public class Tank
     }
 
     /**
-     * Throws an exception if bottomLeft and topRight do not represent valid coordinates.
+     * Throws an exception if bottomLeft and topRight do not represent valid coordinates. Loaders call this to validate
+     * records without constructing a Tank.
      * 
      * @param bottomLeft A point in space that will represent the minimum x,y,z of the tank.
      * @param topRight A point in space that will represent the maximum x,y,z of the tank.
+     * @throws IllegalArgumentException If there are not enough coordinates in either parameter.
+     * @throws IllegalArgumentException If any of bottomLeft's components are greater than or equal to topRight's
+     *             corresponding component.
      */
-    private static void throwIfInvalid(double[] bottomLeft, double[] topRight)
+    static void throwIfInvalid(double[] bottomLeft, double[] topRight)
     {
         // Check for too few elements
         if (bottomLeft.length < 3 || topRight.length < 3)
@@ -156,6 +160,28 @@ public class Tank
         return m_topRight[2];
     }
 
+    /**
+     * Get one component of the minimum point of the Tank.
+     * 
+     * @param axis 0, 1 or 2 for the x, y or z component.
+     * @return The minimum value along the axis.
+     */
+    double getMinimum(int axis)
+    {
+        return m_bottomLeft[axis];
+    }
+
+    /**
+     * Get one component of the maximum point of the Tank.
+     * 
+     * @param axis 0, 1 or 2 for the x, y or z component.
+     * @return The maximum value along the axis.
+     */
+    double getMaximum(int axis)
+    {
+        return m_topRight[axis];
+    }
+
     /**
      * Get the area of the base of the tank.
      * 
@@ -0,0 +1,465 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An off-heap sequence of tanks. Each tank is packed as six doubles, the x,y,z of its minimum point followed by the
+ * x,y,z of its maximum point, in direct ByteBuffers or a memory-mapped file. No Tank objects are kept; a Tank is
+ * recreated on demand, while the bottom, top and base area are read straight from the buffer.
+ *
+ * The tanks are split into segments of a fixed power-of-two number of tanks, each in its own buffer, so that no one
+ * buffer reaches the 2 GB limit of a ByteBuffer and a sequence may hold up to Integer.MAX_VALUE tanks. A direct
+ * sequence allocates its segments as it fills, so growing it never copies the tanks already added.
+ *
+ * Tanks are not deduplicated, so a tank added twice is counted twice.
+ *
+ * @author ian
+ *
+ */
+public class TankBuffer
+{
+    /**
+     * The number of bytes used to pack one tank.
+     */
+    static final int s_bytesPerTank = 6 * 8;
+
+    /**
+     * The byte order of the packed doubles, fixed so that files can be moved between machines.
+     */
+    private static final ByteOrder s_byteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The number of tanks written to a file at a time by write().
+     */
+    private static final int s_writeBatch = 4096;
+
+    /**
+     * The log of the number of tanks in each segment of a direct sequence, 3 MB of tanks per segment.
+     */
+    private static final int s_directSegmentShift = 16;
+
+    /**
+     * The log of the number of tanks in each segment of a mapped file, 768 MB of tanks per mapping.
+     */
+    private static final int s_mappedSegmentShift = 24;
+
+    /**
+     * The segments allocated or mapped so far. Segment i holds the tanks from i << m_segmentShift.
+     */
+    private ByteBuffer[] m_segments;
+
+    /**
+     * The log of the number of tanks in each segment.
+     */
+    private final int m_segmentShift;
+
+    /**
+     * The maximum number of tanks.
+     */
+    private final int m_capacity;
+
+    /**
+     * The number of tanks in the sequence.
+     */
+    private int m_size;
+
+    /**
+     * Whether tanks may be added.
+     */
+    private final boolean m_isReadOnly;
+
+    /**
+     * Initializes the sequence over segments that already hold the given number of tanks.
+     *
+     * @param segments The segments.
+     * @param segmentShift The log of the number of tanks in each segment.
+     * @param capacity The maximum number of tanks.
+     * @param size The number of tanks already in the segments.
+     * @param isReadOnly Whether tanks may be added.
+     */
+    private TankBuffer(ByteBuffer[] segments, int segmentShift, int capacity, int size, boolean isReadOnly)
+    {
+        m_segments = segments;
+        m_segmentShift = segmentShift;
+        m_capacity = capacity;
+        m_size = size;
+        m_isReadOnly = isReadOnly;
+    }
+
+    /**
+     * Creates an empty sequence that allocates direct buffers as it fills.
+     *
+     * @param capacity The maximum number of tanks.
+     * @return The new sequence.
+     * @throws IllegalArgumentException if the capacity is negative.
+     */
+    public static TankBuffer allocateDirect(int capacity)
+    {
+        if (capacity < 0)
+        {
+            throw new IllegalArgumentException(String.format("A TankBuffer cannot hold %d tanks.", capacity));
+        }
+
+        return new TankBuffer(new ByteBuffer[0], s_directSegmentShift, capacity, 0, false);
+    }
+
+    /**
+     * Creates an empty sequence that allocates direct buffers as it fills, up to Integer.MAX_VALUE tanks.
+     *
+     * @return The new sequence.
+     */
+    public static TankBuffer allocateDirect()
+    {
+        return allocateDirect(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Maps a file of packed tanks, as written by write(), read-only into memory. The tanks are paged in by the
+     * operating system as they are read, so the file may be larger than the heap.
+     *
+     * @param path The file to map.
+     * @return The mapped sequence.
+     * @throws IOException if the file cannot be mapped.
+     * @throws IllegalArgumentException if the file is not a whole number of tanks, or holds more than
+     *             Integer.MAX_VALUE.
+     */
+    public static TankBuffer map(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            if (length % s_bytesPerTank != 0 || length / s_bytesPerTank > Integer.MAX_VALUE)
+            {
+                throw new IllegalArgumentException(String.format("The file %s does not hold a whole number of tanks.",
+                        path));
+            }
+
+            // The mappings stay valid after the channel is closed
+            return map(channel, 0, (int) (length / s_bytesPerTank));
+        }
+    }
+
+    /**
+     * Maps tanks packed in part of a file, such as a section of a larger file, read-only into memory.
+     *
+     * @param channel The open file.
+     * @param offset The byte offset of the first tank.
+     * @param size The number of tanks.
+     * @return The mapped sequence, which stays valid after the channel is closed.
+     * @throws IOException if the file cannot be mapped.
+     */
+    static TankBuffer map(FileChannel channel, long offset, int size) throws IOException
+    {
+        return map(channel, offset, size, s_mappedSegmentShift);
+    }
+
+    /**
+     * Maps tanks packed in part of a file read-only into memory, one mapping per segment.
+     *
+     * @param channel The open file.
+     * @param offset The byte offset of the first tank.
+     * @param size The number of tanks.
+     * @param segmentShift The log of the number of tanks in each mapping.
+     * @return The mapped sequence, which stays valid after the channel is closed.
+     * @throws IOException if the file cannot be mapped.
+     */
+    static TankBuffer map(FileChannel channel, long offset, int size, int segmentShift) throws IOException
+    {
+        int segmentLength = 1 << segmentShift;
+        ByteBuffer[] segments = new ByteBuffer[(int) (((long) size + segmentLength - 1) >>> segmentShift)];
+        for (int segment = 0; segment < segments.length; ++segment)
+        {
+            long first = (long) segment << segmentShift;
+            int count = (int) Math.min(segmentLength, size - first);
+            segments[segment] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * s_bytesPerTank,
+                    (long) count * s_bytesPerTank).order(s_byteOrder);
+        }
+        return new TankBuffer(segments, segmentShift, size, size, true);
+    }
+
+    /**
+     * Writes tanks to a file in the packed form read by map(). The tanks are streamed through a small buffer, so they
+     * need not all be in memory at once.
+     *
+     * @param path The file to create or overwrite.
+     * @param tanks The tanks to write.
+     * @throws IOException if the file cannot be written.
+     */
+    public static void write(Path path, Iterable<Tank> tanks) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer batch = ByteBuffer.allocateDirect(s_writeBatch * s_bytesPerTank).order(s_byteOrder);
+
+            for (Tank tank : tanks)
+            {
+                // Flush the batch once it is full
+                if (!batch.hasRemaining())
+                {
+                    flush(channel, batch);
+                }
+                pack(batch, batch.position(), tank);
+                batch.position(batch.position() + s_bytesPerTank);
+            }
+
+            flush(channel, batch);
+        }
+    }
+
+    /**
+     * Appends a tank to the sequence.
+     *
+     * @param tank The Tank to add.
+     * @return The index of the tank.
+     * @throws IllegalStateException if the buffer is read-only or full.
+     */
+    public int add(Tank tank)
+    {
+        int index = this.reserve();
+        pack(this.segment(index), offset(index, m_segmentShift), tank);
+        return m_size++;
+    }
+
+    /**
+     * Appends a tank to the sequence from its coordinates, without creating a Tank. The coordinates must already be
+     * valid.
+     *
+     * @param bottomLeft The minimum x,y,z of the tank.
+     * @param topRight The maximum x,y,z of the tank.
+     * @return The index of the tank.
+     * @throws IllegalStateException if the buffer is read-only or full.
+     */
+    int add(double[] bottomLeft, double[] topRight)
+    {
+        int index = this.reserve();
+        ByteBuffer segment = this.segment(index);
+        int offset = offset(index, m_segmentShift);
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            segment.putDouble(offset + axis * 8, bottomLeft[axis]);
+            segment.putDouble(offset + (3 + axis) * 8, topRight[axis]);
+        }
+        return m_size++;
+    }
+
+    /**
+     * Get a read-only view of the tanks added so far, without copying them. The view shares the segments, but ends
+     * at the current size, so tanks added to this sequence later are past its end and never appear in it.
+     *
+     * @return The view.
+     */
+    TankBuffer readOnlyView()
+    {
+        int segmentCount = (int) (((long) m_size + (1 << m_segmentShift) - 1) >>> m_segmentShift);
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int segment = 0; segment < segmentCount; ++segment)
+        {
+            // Trim the last segment to the tanks it holds
+            long first = (long) segment << m_segmentShift;
+            int count = (int) Math.min(1 << m_segmentShift, m_size - first);
+            ByteBuffer view = m_segments[segment].asReadOnlyBuffer();
+            view.position(0);
+            view.limit(count * s_bytesPerTank);
+            segments[segment] = view.slice().order(s_byteOrder);
+        }
+        return new TankBuffer(segments, m_segmentShift, m_size, m_size, true);
+    }
+
+    /**
+     * Recreates the tank at an index.
+     *
+     * @param index An index below size().
+     * @return A new Tank equal to the one that was added.
+     */
+    public Tank tank(int index)
+    {
+        double[] bottomLeft = new double[3];
+        double[] topRight = new double[3];
+        this.corners(index, bottomLeft, topRight);
+
+        return new Tank(bottomLeft, topRight);
+    }
+
+    /**
+     * Reads the corners of the tank at an index into arrays, without creating a Tank.
+     *
+     * @param index An index below size().
+     * @param bottomLeft The array to fill with the minimum x,y,z of the tank.
+     * @param topRight The array to fill with the maximum x,y,z of the tank.
+     */
+    void corners(int index, double[] bottomLeft, double[] topRight)
+    {
+        ByteBuffer segment = this.segment(index);
+        int offset = offset(index, m_segmentShift);
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            bottomLeft[axis] = segment.getDouble(offset + axis * 8);
+            topRight[axis] = segment.getDouble(offset + (3 + axis) * 8);
+        }
+    }
+
+    /**
+     * Get the bottom of the tank at an index.
+     *
+     * @param index An index below size().
+     * @return The minimum z-value.
+     */
+    public double bottom(int index)
+    {
+        return this.coordinate(index, 2);
+    }
+
+    /**
+     * Get the top of the tank at an index.
+     *
+     * @param index An index below size().
+     * @return The maximum z-value.
+     */
+    public double top(int index)
+    {
+        return this.coordinate(index, 5);
+    }
+
+    /**
+     * Get the base area of the tank at an index.
+     *
+     * @param index An index below size().
+     * @return The area of the cross-section in the xy plane.
+     */
+    public double baseArea(int index)
+    {
+        return (this.coordinate(index, 3) - this.coordinate(index, 0))
+                * (this.coordinate(index, 4) - this.coordinate(index, 1));
+    }
+
+    /**
+     * Get the number of tanks in the sequence.
+     *
+     * @return The number of tanks.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Get the maximum number of tanks the sequence can hold.
+     *
+     * @return The capacity in tanks.
+     */
+    public int capacity()
+    {
+        return m_capacity;
+    }
+
+    /**
+     * Reads one of the six packed coordinates of a tank.
+     *
+     * @param index The index of the tank.
+     * @param coordinate 0-2 for the minimum x,y,z and 3-5 for the maximum x,y,z.
+     * @return The coordinate.
+     */
+    private double coordinate(int index, int coordinate)
+    {
+        return this.segment(index).getDouble(offset(index, m_segmentShift) + coordinate * 8);
+    }
+
+    /**
+     * Makes room for one more tank, allocating its segment if it is the first in it.
+     *
+     * @return The index of the new tank.
+     * @throws IllegalStateException if the buffer is read-only or full.
+     */
+    private int reserve()
+    {
+        if (m_isReadOnly)
+        {
+            throw new IllegalStateException("The TankBuffer is read-only.");
+        }
+        if (m_size == m_capacity)
+        {
+            throw new IllegalStateException(String.format("The TankBuffer is full at %d tanks.", m_size));
+        }
+
+        // Only the array of segments is copied as it grows, never the tanks themselves
+        int segment = m_size >>> m_segmentShift;
+        if (segment == m_segments.length)
+        {
+            m_segments = Arrays.copyOf(m_segments, Math.max(2 * m_segments.length, 1));
+        }
+        if (null == m_segments[segment])
+        {
+            long first = (long) segment << m_segmentShift;
+            int count = (int) Math.min(1 << m_segmentShift, m_capacity - first);
+            m_segments[segment] = ByteBuffer.allocateDirect(count * s_bytesPerTank).order(s_byteOrder);
+        }
+        return m_size;
+    }
+
+    /**
+     * Get the segment that holds a tank.
+     *
+     * @param index The index of the tank.
+     * @return The segment.
+     */
+    private ByteBuffer segment(int index)
+    {
+        return m_segments[index >>> m_segmentShift];
+    }
+
+    /**
+     * Get the byte offset of a tank within its segment.
+     *
+     * @param index The index of the tank.
+     * @param segmentShift The log of the number of tanks in each segment.
+     * @return The offset.
+     */
+    private static int offset(int index, int segmentShift)
+    {
+        return (index & ((1 << segmentShift) - 1)) * s_bytesPerTank;
+    }
+
+    /**
+     * Packs a tank into a buffer at an absolute offset.
+     *
+     * @param buffer The buffer to write.
+     * @param offset The byte offset of the tank.
+     * @param tank The Tank to pack.
+     */
+    static void pack(ByteBuffer buffer, int offset, Tank tank)
+    {
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            buffer.putDouble(offset + axis * 8, tank.getMinimum(axis));
+            buffer.putDouble(offset + (3 + axis) * 8, tank.getMaximum(axis));
+        }
+    }
+
+    /**
+     * Writes the filled part of a batch to a channel and clears the batch.
+     *
+     * @param channel The channel to write.
+     * @param batch The batch, with its position at the end of the filled part.
+     * @throws IOException if the channel cannot be written.
+     */
+    private static void flush(FileChannel channel, ByteBuffer batch) throws IOException
+    {
+        batch.flip();
+        while (batch.hasRemaining())
+        {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+}
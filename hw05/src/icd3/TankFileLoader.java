@@ -0,0 +1,281 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams tank records from a file into a TankSink, such as a WaterSystemBuilder, through a small reusable buffer, so
+ * that a file of any size is read in one pass without holding more than a chunk of it. Each record is validated as it
+ * is added, and an invalid record stops the load with its line or position in the message.
+ *
+ * Two formats are read. A CSV file has one tank per line as six numbers, the x,y,z of the minimum point and then the
+ * x,y,z of the maximum point; blank lines and lines starting with # are skipped. A binary file holds tanks packed as
+ * written by TankBuffer.write.
+ *
+ * @author ian
+ *
+ */
+public final class TankFileLoader
+{
+    /**
+     * The number of bytes read from the file at a time, a whole number of packed tanks.
+     */
+    private static final int s_chunkBytes = 1365 * TankBuffer.s_bytesPerTank;
+
+    private TankFileLoader()
+    {
+    }
+
+    /**
+     * Loads the tanks in a CSV file.
+     *
+     * @param path The file to read.
+     * @param sink The sink to add the tanks to.
+     * @return The number of tanks loaded.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if a line is not six numbers, or is not a valid tank.
+     * @throws IllegalStateException if the sink is full.
+     */
+    public static int loadCsv(Path path, TankSink sink) throws IOException
+    {
+        CsvParser parser = new CsvParser(path, sink);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer chunk = ByteBuffer.allocateDirect(s_chunkBytes);
+            while (channel.read(chunk) != -1)
+            {
+                chunk.flip();
+                while (chunk.hasRemaining())
+                {
+                    parser.accept(chunk.get());
+                }
+                chunk.clear();
+            }
+        }
+
+        // The last line need not end with a newline
+        parser.endLine();
+        return parser.m_tankCount;
+    }
+
+    /**
+     * Loads the tanks in a binary file of packed tanks.
+     *
+     * @param path The file to read.
+     * @param sink The sink to add the tanks to.
+     * @return The number of tanks loaded.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not a whole number of tanks, or holds an invalid tank.
+     * @throws IllegalStateException if the sink is full.
+     */
+    public static int loadBinary(Path path, TankSink sink) throws IOException
+    {
+        double[] bottomLeft = new double[3];
+        double[] topRight = new double[3];
+        int tankCount = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            if (channel.size() % TankBuffer.s_bytesPerTank != 0)
+            {
+                throw new IllegalArgumentException(String.format("The file %s does not hold a whole number of tanks.",
+                        path));
+            }
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(s_chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (channel.read(chunk) != -1)
+            {
+                // Only decode whole tanks, and keep any partial one for the next read
+                chunk.flip();
+                while (chunk.remaining() >= TankBuffer.s_bytesPerTank)
+                {
+                    for (int axis = 0; axis < 3; ++axis)
+                    {
+                        bottomLeft[axis] = chunk.getDouble();
+                    }
+                    for (int axis = 0; axis < 3; ++axis)
+                    {
+                        topRight[axis] = chunk.getDouble();
+                    }
+
+                    try
+                    {
+                        sink.add(bottomLeft, topRight);
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        throw new IllegalArgumentException(String.format("Tank %d of %s: %s", tankCount, path,
+                                e.getMessage()), e);
+                    }
+                    ++tankCount;
+                }
+                chunk.compact();
+            }
+        }
+
+        return tankCount;
+    }
+
+    /**
+     * A byte-at-a-time parser of CSV tank records, which carries partial lines across chunks.
+     *
+     */
+    private static class CsvParser
+    {
+        private final Path m_path;
+
+        private final TankSink m_sink;
+
+        /**
+         * The characters of the current field.
+         */
+        private final StringBuilder m_field = new StringBuilder();
+
+        /**
+         * The fields of the current line parsed so far.
+         */
+        private final double[] m_fields = new double[6];
+
+        private final double[] m_bottomLeft = new double[3];
+
+        private final double[] m_topRight = new double[3];
+
+        private int m_fieldCount;
+
+        /**
+         * Whether the current line is a comment.
+         */
+        private boolean m_isComment;
+
+        /**
+         * The number of the current line, starting from one.
+         */
+        private long m_lineNumber = 1;
+
+        private int m_tankCount;
+
+        public CsvParser(Path path, TankSink sink)
+        {
+            m_path = path;
+            m_sink = sink;
+        }
+
+        /**
+         * Parses the next byte of the file.
+         *
+         * @param b The byte.
+         */
+        public void accept(byte b)
+        {
+            if ('\n' == b)
+            {
+                this.endLine();
+                ++m_lineNumber;
+            }
+            else if (m_isComment || '\r' == b)
+            {
+                return;
+            }
+            else if ('#' == b && 0 == m_fieldCount && this.isBlank())
+            {
+                m_isComment = true;
+            }
+            else if (',' == b)
+            {
+                this.endField();
+            }
+            else
+            {
+                m_field.append((char) b);
+            }
+        }
+
+        /**
+         * Finishes the current line, adding its tank if it has one.
+         */
+        public void endLine()
+        {
+            // Skip comments and blank lines
+            if (m_isComment || (0 == m_fieldCount && this.isBlank()))
+            {
+                m_isComment = false;
+                m_field.setLength(0);
+                return;
+            }
+
+            this.endField();
+            if (m_fieldCount != 6)
+            {
+                throw this.error(String.format("Found %d fields. Expected: 6", m_fieldCount), null);
+            }
+
+            System.arraycopy(m_fields, 0, m_bottomLeft, 0, 3);
+            System.arraycopy(m_fields, 3, m_topRight, 0, 3);
+            try
+            {
+                m_sink.add(m_bottomLeft, m_topRight);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw this.error(e.getMessage(), e);
+            }
+
+            ++m_tankCount;
+            m_fieldCount = 0;
+        }
+
+        /**
+         * Finishes the current field, parsing it as a number.
+         */
+        private void endField()
+        {
+            if (m_fieldCount == m_fields.length)
+            {
+                throw this.error("Found more than 6 fields.", null);
+            }
+
+            String field = m_field.toString().trim();
+            m_field.setLength(0);
+            try
+            {
+                m_fields[m_fieldCount++] = Double.parseDouble(field);
+            }
+            catch (NumberFormatException e)
+            {
+                throw this.error(String.format("'%s' is not a number.", field), e);
+            }
+        }
+
+        /**
+         * Get whether the current field is only whitespace so far.
+         *
+         * @return true if the field is blank.
+         */
+        private boolean isBlank()
+        {
+            return m_field.toString().trim().isEmpty();
+        }
+
+        /**
+         * Creates an exception for a problem on the current line.
+         *
+         * @param message What is wrong with the line.
+         * @param cause The underlying exception, or null.
+         * @return The exception to throw.
+         */
+        private IllegalArgumentException error(String message, Exception cause)
+        {
+            return new IllegalArgumentException(String.format("Line %d of %s: %s", m_lineNumber, m_path, message),
+                    cause);
+        }
+    }
+}
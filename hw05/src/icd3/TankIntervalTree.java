@@ -0,0 +1,360 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A centered interval tree over the vertical extents of a set of tanks, answering which tanks are partially filled at
+ * a given water height in O(log n + k) time.
+ *
+ * Each node holds a center height and the tanks whose extents contain it, sorted once by bottom and once by top.
+ * Tanks entirely below the center go to the left subtree and tanks entirely above it go to the right. A query only
+ * descends one side at each level, and scans the sorted lists only as far as they produce results.
+ *
+ * Tanks are held as their indices in a TankStore, and their edges are read from the store's arrays.
+ *
+ * Tanks added to or removed from the store after the tree is built can be patched in, by inserting into or removing
+ * from the one node whose center the tank contains, or a new leaf centered on its bottom. Patches do not rebalance the
+ * tree, so after as many patches as there were tanks it reports that it should be rebuilt.
+ *
+ * @author ian
+ *
+ */
+class TankIntervalTree
+{
+    /**
+     * The store that resolves tank indices.
+     */
+    private final TankStore m_tankStore;
+
+    /**
+     * The number of patches the tree takes before it should be rebuilt, however few tanks it was built over.
+     */
+    private static final int s_minPatches = 64;
+
+    /**
+     * The root of the tree, or null if there are no tanks.
+     */
+    private Node m_root;
+
+    /**
+     * The number of patches the tree takes before it should be rebuilt.
+     */
+    private final int m_patchLimit;
+
+    /**
+     * The number of tanks added or removed since the tree was built.
+     */
+    private int m_patchCount;
+
+    /**
+     * Builds the tree over every tank in a store.
+     *
+     * @param tankStore The store of the tanks to index.
+     */
+    public TankIntervalTree(TankStore tankStore)
+    {
+        m_tankStore = tankStore;
+
+        // Sort once by bottom. Every subtree is built from an ordered slice, so no further sorting by bottom is needed.
+        int[] byBottom = tankStore.indices();
+        IndexSort.sort(byBottom, tankStore.bottoms());
+
+        m_root = this.build(byBottom);
+        m_patchLimit = Math.max(byBottom.length, s_minPatches);
+    }
+
+    /**
+     * Patches a tank that was just added to the store into the tree.
+     *
+     * @param tankIndex The index of the tank in the store.
+     */
+    public void add(int tankIndex)
+    {
+        double bottom = m_tankStore.bottom(tankIndex);
+        double top = m_tankStore.top(tankIndex);
+        ++m_patchCount;
+
+        // Descend to the node whose center the tank contains
+        Node parent = null;
+        Node node = m_root;
+        while (null != node)
+        {
+            if (top <= node.m_center)
+            {
+                parent = node;
+                node = node.m_left;
+            }
+            else if (bottom > node.m_center)
+            {
+                parent = node;
+                node = node.m_right;
+            }
+            else
+            {
+                node.m_byBottom = this.insert(node.m_byBottom, tankIndex, true);
+                node.m_byTop = this.insert(node.m_byTop, tankIndex, false);
+                return;
+            }
+        }
+
+        // No node contains the tank, so it becomes a leaf centered on its own bottom
+        Node leaf = new Node(bottom);
+        leaf.m_byBottom = new int[] { tankIndex };
+        leaf.m_byTop = new int[] { tankIndex };
+        if (null == parent)
+        {
+            m_root = leaf;
+        }
+        else if (top <= parent.m_center)
+        {
+            parent.m_left = leaf;
+        }
+        else
+        {
+            parent.m_right = leaf;
+        }
+    }
+
+    /**
+     * Patches a tank that is about to be removed from the store out of the tree. The tank must still be in the store.
+     *
+     * @param tankIndex The index of the tank in the store.
+     */
+    public void remove(int tankIndex)
+    {
+        double bottom = m_tankStore.bottom(tankIndex);
+        double top = m_tankStore.top(tankIndex);
+        ++m_patchCount;
+
+        // Descend to the node whose center the tank contains. An emptied node is left in place to keep its subtrees.
+        Node node = m_root;
+        while (null != node)
+        {
+            if (top <= node.m_center)
+            {
+                node = node.m_left;
+            }
+            else if (bottom > node.m_center)
+            {
+                node = node.m_right;
+            }
+            else
+            {
+                node.m_byBottom = erase(node.m_byBottom, tankIndex);
+                node.m_byTop = erase(node.m_byTop, tankIndex);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get whether the tree has taken so many patches that it may be far from balanced, and should be rebuilt.
+     *
+     * @return true if the tree should be rebuilt.
+     */
+    public boolean needsRebuild()
+    {
+        return m_patchCount > m_patchLimit;
+    }
+
+    /**
+     * Get the tanks that are partially filled at a water height, that is, whose bottoms are below it and whose tops
+     * are above it.
+     *
+     * @param waterHeight The height of the water.
+     * @return A new List of the partially filled tanks.
+     */
+    public List<Tank> partiallyFilled(double waterHeight)
+    {
+        List<Tank> tanks = new ArrayList<>();
+
+        Node node = m_root;
+        while (null != node)
+        {
+            if (waterHeight >= node.m_center)
+            {
+                // Every tank here has its bottom at or below the center, so only the tops need checking
+                for (int tankIndex : node.m_byTop)
+                {
+                    if (m_tankStore.top(tankIndex) <= waterHeight)
+                    {
+                        break;
+                    }
+                    if (m_tankStore.bottom(tankIndex) < waterHeight)
+                    {
+                        tanks.add(m_tankStore.tank(tankIndex));
+                    }
+                }
+                node = node.m_right;
+            }
+            else
+            {
+                // Every tank here has its top above the center, so only the bottoms need checking
+                for (int tankIndex : node.m_byBottom)
+                {
+                    if (m_tankStore.bottom(tankIndex) >= waterHeight)
+                    {
+                        break;
+                    }
+                    tanks.add(m_tankStore.tank(tankIndex));
+                }
+                node = node.m_left;
+            }
+        }
+
+        return tanks;
+    }
+
+    /**
+     * Recursively builds a subtree.
+     *
+     * @param byBottom The indices of the tanks to place in the subtree, by increasing bottom.
+     * @return The root of the subtree, or null if there are no tanks.
+     */
+    private Node build(int[] byBottom)
+    {
+        if (0 == byBottom.length)
+        {
+            return null;
+        }
+
+        // Center on the median bottom, so that at least one tank contains the center
+        double center = m_tankStore.bottom(byBottom[byBottom.length / 2]);
+
+        // Split the tanks into those below the center, those above it and those containing it, preserving order
+        IntList below = new IntList();
+        IntList above = new IntList();
+        IntList containing = new IntList();
+        for (int tankIndex : byBottom)
+        {
+            if (m_tankStore.top(tankIndex) <= center)
+            {
+                below.add(tankIndex);
+            }
+            else if (m_tankStore.bottom(tankIndex) > center)
+            {
+                above.add(tankIndex);
+            }
+            else
+            {
+                containing.add(tankIndex);
+            }
+        }
+
+        Node node = new Node(center);
+        node.m_byBottom = containing.toArray();
+
+        // Sort by increasing top, then reverse
+        node.m_byTop = containing.toArray();
+        IndexSort.sort(node.m_byTop, m_tankStore.tops());
+        for (int i = 0, j = node.m_byTop.length - 1; i < j; ++i, --j)
+        {
+            int swap = node.m_byTop[i];
+            node.m_byTop[i] = node.m_byTop[j];
+            node.m_byTop[j] = swap;
+        }
+
+        node.m_left = this.build(below.toArray());
+        node.m_right = this.build(above.toArray());
+
+        return node;
+    }
+
+    /**
+     * Helper method to insert a tank into one of the sorted lists of a node.
+     *
+     * @param sorted The list, by increasing bottom or by decreasing top.
+     * @param tankIndex The index of the tank to insert.
+     * @param byBottom true if the list is by increasing bottom, false if it is by decreasing top.
+     * @return A new list holding the tank in order.
+     */
+    private int[] insert(int[] sorted, int tankIndex, boolean byBottom)
+    {
+        // Find the first position that should follow the tank
+        int low = 0;
+        int high = sorted.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            boolean follows = (byBottom ? m_tankStore.bottom(sorted[middle]) > m_tankStore.bottom(tankIndex)
+                    : m_tankStore.top(sorted[middle]) < m_tankStore.top(tankIndex));
+            if (follows)
+            {
+                high = middle;
+            }
+            else
+            {
+                low = middle + 1;
+            }
+        }
+
+        int[] inserted = new int[sorted.length + 1];
+        System.arraycopy(sorted, 0, inserted, 0, low);
+        inserted[low] = tankIndex;
+        System.arraycopy(sorted, low, inserted, low + 1, sorted.length - low);
+        return inserted;
+    }
+
+    /**
+     * Helper method to remove a tank from one of the sorted lists of a node, preserving the order of the rest.
+     *
+     * @param sorted The list.
+     * @param tankIndex The index of the tank to remove, which must be in the list.
+     * @return A new list without the tank.
+     */
+    private static int[] erase(int[] sorted, int tankIndex)
+    {
+        int position = 0;
+        while (sorted[position] != tankIndex)
+        {
+            ++position;
+        }
+
+        int[] erased = new int[sorted.length - 1];
+        System.arraycopy(sorted, 0, erased, 0, position);
+        System.arraycopy(sorted, position + 1, erased, position, erased.length - position);
+        return erased;
+    }
+
+    /**
+     * A node of the tree.
+     *
+     */
+    private static class Node
+    {
+        /**
+         * The height at which this node splits its tanks.
+         */
+        private final double m_center;
+
+        /**
+         * The tanks whose bottoms are at or below the center and whose tops are above it, by increasing bottom.
+         */
+        private int[] m_byBottom;
+
+        /**
+         * The same tanks by decreasing top.
+         */
+        private int[] m_byTop;
+
+        /**
+         * The subtree of tanks whose tops are at or below the center.
+         */
+        private Node m_left;
+
+        /**
+         * The subtree of tanks whose bottoms are above the center.
+         */
+        private Node m_right;
+
+        public Node(double center)
+        {
+            m_center = center;
+        }
+    }
+}
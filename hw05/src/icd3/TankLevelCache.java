@@ -0,0 +1,241 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of tank level maps, evicting the least recently used map once it is full. Each entry is keyed by
+ * the kind of query, the version of the system it was computed against, and the queried height or volume rounded to a
+ * multiple of a quantum. A quantum of zero keys by the exact value.
+ *
+ * Entries computed against an older version are unreachable, and are dropped the first time the cache sees a newer
+ * version. Like WaterSystem, the cache is not thread-safe.
+ *
+ * @author ian
+ *
+ */
+public class TankLevelCache
+{
+    /**
+     * The maximum number of entries.
+     */
+    private final int m_capacity;
+
+    /**
+     * The step that queried values are rounded to, or zero for exact values.
+     */
+    private final double m_quantum;
+
+    /**
+     * The entries, in order from least to most recently used.
+     */
+    private final LinkedHashMap<Key, Map<Tank, Double>> m_entries;
+
+    /**
+     * The version of the system that the entries were computed against.
+     */
+    private long m_version;
+
+    private long m_hitCount;
+
+    private long m_missCount;
+
+    private long m_evictionCount;
+
+    /**
+     * Initializes an empty cache.
+     *
+     * @param capacity The maximum number of entries.
+     * @param quantum The step that queried values are rounded to, or zero for exact values.
+     * @throws IllegalArgumentException if the capacity is not positive, or the quantum is negative or not finite.
+     */
+    public TankLevelCache(int capacity, double quantum)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException(String.format("The capacity of %d should be positive.", capacity));
+        }
+        if (!(quantum >= 0) || Double.isInfinite(quantum))
+        {
+            throw new IllegalArgumentException(String.format("The quantum of %f should be finite and not negative.",
+                    quantum));
+        }
+
+        m_capacity = capacity;
+        m_quantum = quantum;
+
+        // Access order makes the eldest entry the least recently used
+        m_entries = new LinkedHashMap<Key, Map<Tank, Double>>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Map<Tank, Double>> eldest)
+            {
+                if (this.size() > m_capacity)
+                {
+                    ++m_evictionCount;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Rounds a queried value to the nearest multiple of the quantum.
+     *
+     * @param value The queried height or volume.
+     * @return The value the query should be answered at.
+     */
+    double quantize(double value)
+    {
+        return 0 == m_quantum ? value : Math.rint(value / m_quantum) * m_quantum;
+    }
+
+    /**
+     * Looks up a cached map, counting a hit or a miss.
+     *
+     * @param byVolume Whether the query is by volume rather than by height.
+     * @param version The current version of the system.
+     * @param value The quantized height or volume.
+     * @return The cached map, or null if there is none.
+     */
+    Map<Tank, Double> get(boolean byVolume, long version, double value)
+    {
+        this.discardIfStale(version);
+
+        Map<Tank, Double> tankLevels = m_entries.get(new Key(byVolume, version, value));
+        if (null == tankLevels)
+        {
+            ++m_missCount;
+        }
+        else
+        {
+            ++m_hitCount;
+        }
+        return tankLevels;
+    }
+
+    /**
+     * Caches a map, evicting the least recently used entry if the cache is full.
+     *
+     * @param byVolume Whether the query is by volume rather than by height.
+     * @param version The current version of the system.
+     * @param value The quantized height or volume.
+     * @param tankLevels The unmodifiable map to cache.
+     */
+    void put(boolean byVolume, long version, double value, Map<Tank, Double> tankLevels)
+    {
+        this.discardIfStale(version);
+        m_entries.put(new Key(byVolume, version, value), tankLevels);
+    }
+
+    /**
+     * Helper method to drop every entry once the system has moved on to a newer version.
+     *
+     * @param version The current version of the system.
+     */
+    private void discardIfStale(long version)
+    {
+        if (version != m_version)
+        {
+            m_entries.clear();
+            m_version = version;
+        }
+    }
+
+    /**
+     * Get the number of lookups that found a cached map.
+     *
+     * @return The hit count.
+     */
+    public long hitCount()
+    {
+        return m_hitCount;
+    }
+
+    /**
+     * Get the number of lookups that did not find a cached map.
+     *
+     * @return The miss count.
+     */
+    public long missCount()
+    {
+        return m_missCount;
+    }
+
+    /**
+     * Get the number of entries evicted to make room for newer ones. Entries dropped because the system changed are not
+     * counted.
+     *
+     * @return The eviction count.
+     */
+    public long evictionCount()
+    {
+        return m_evictionCount;
+    }
+
+    /**
+     * Get the number of cached maps.
+     *
+     * @return The number of entries.
+     */
+    public int size()
+    {
+        return m_entries.size();
+    }
+
+    /**
+     * Get the maximum number of cached maps.
+     *
+     * @return The capacity.
+     */
+    public int capacity()
+    {
+        return m_capacity;
+    }
+
+    /**
+     * The key of a cache entry.
+     *
+     */
+    private static class Key
+    {
+        private final boolean m_byVolume;
+
+        private final long m_version;
+
+        private final long m_valueBits;
+
+        public Key(boolean byVolume, long version, double value)
+        {
+            m_byVolume = byVolume;
+            m_version = version;
+            // Fold -0.0 into 0.0 so that both find the same entry
+            m_valueBits = Double.doubleToLongBits(value + 0.0);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof Key))
+            {
+                return false;
+            }
+            Key key = (Key) other;
+            return m_byVolume == key.m_byVolume && m_version == key.m_version && m_valueBits == key.m_valueBits;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            long hash = m_valueBits * 31 + m_version;
+            return (int) (hash ^ (hash >>> 32)) * 2 + (m_byVolume ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * A callback that receives the filled height of each tank in a WaterSystem, without boxing the height.
+ *
+ * @author ian
+ *
+ */
+public interface TankLevelConsumer
+{
+    /**
+     * Receives the filled height of one tank.
+     *
+     * @param tankIndex The stable index of the tank within its WaterSystem.
+     * @param tank The tank.
+     * @param level The filled height of the tank, from 0 if empty to its full height.
+     */
+    void accept(int tankIndex, Tank tank, double level);
+}
@@ -0,0 +1,267 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * A deterministic source of synthetic tanks for load and correctness testing. Each tank is derived from the seed and
+ * its own index alone, so the tanks are streamed one at a time, never held together, and any tank can be regenerated
+ * by index. Iterating twice yields the same tanks in the same order.
+ *
+ * The tanks are spread over a vertical span sized so that, on average, overlapDepth tanks are active at any height.
+ * With probability duplication, each edge of a tank is snapped to a coarse grid, so that many tanks share break
+ * points. Every tank is offset along x by its index, so no two tanks are equal.
+ *
+ * @author ian
+ *
+ */
+public class TankNetworkGenerator implements Iterable<Tank>
+{
+    /**
+     * The distribution of the heights of the tanks, each with a mean of one.
+     */
+    public enum HeightDistribution
+    {
+        /**
+         * Every tank has height one.
+         */
+        CONSTANT
+        {
+            @Override
+            double sample(SplittableRandom random)
+            {
+                return 1.0;
+            }
+        },
+
+        /**
+         * Heights are uniform between zero and two.
+         */
+        UNIFORM
+        {
+            @Override
+            double sample(SplittableRandom random)
+            {
+                return 2.0 * random.nextDouble();
+            }
+        },
+
+        /**
+         * Heights are exponentially distributed, so a few tanks are much taller than the rest.
+         */
+        EXPONENTIAL
+        {
+            @Override
+            double sample(SplittableRandom random)
+            {
+                return -Math.log(1.0 - random.nextDouble());
+            }
+        };
+
+        /**
+         * Draws a height.
+         *
+         * @param random The source of randomness.
+         * @return A height, which may be zero.
+         */
+        abstract double sample(SplittableRandom random);
+    }
+
+    /**
+     * The spacing of the grid that duplicated edges are snapped to.
+     */
+    private static final double s_gridSpacing = 0.5;
+
+    /**
+     * The smallest height of a generated tank, so that no tank is flat.
+     */
+    private static final double s_minHeight = 1.0 / 64;
+
+    /**
+     * The odd constant that separates the seeds of consecutive tanks before they are mixed. It is the same gamma that
+     * SplittableRandom adds on every draw, so the seeds must be mixed, or each tank's stream would be the previous
+     * tank's shifted by one draw.
+     */
+    private static final long s_streamStride = 0x9E3779B97F4A7C15L;
+
+    private final long m_seed;
+
+    private final long m_tankCount;
+
+    private final double m_duplication;
+
+    private final HeightDistribution m_heightDistribution;
+
+    /**
+     * The height below which every tank bottom lies.
+     */
+    private final double m_span;
+
+    /**
+     * Initializes the generator.
+     *
+     * @param seed The seed from which every tank is derived.
+     * @param tankCount The number of tanks.
+     * @param overlapDepth The average number of tanks active at a height within the span.
+     * @param duplication The probability that each edge is snapped to the shared grid, from 0 to 1.
+     * @param heightDistribution The distribution of the tank heights.
+     * @throws IllegalArgumentException if the tankCount is negative, the overlapDepth is not positive, or the
+     *             duplication is outside 0 to 1.
+     */
+    public TankNetworkGenerator(long seed, long tankCount, double overlapDepth, double duplication,
+                                HeightDistribution heightDistribution)
+    {
+        if (tankCount < 0)
+        {
+            throw new IllegalArgumentException(String.format("The tankCount of %d should not be negative.",
+                    tankCount));
+        }
+        if (!(overlapDepth > 0) || Double.isInfinite(overlapDepth))
+        {
+            throw new IllegalArgumentException(String.format("The overlapDepth of %f should be positive.",
+                    overlapDepth));
+        }
+        if (!(duplication >= 0 && duplication <= 1))
+        {
+            throw new IllegalArgumentException(String.format("The duplication of %f should be from 0 to 1.",
+                    duplication));
+        }
+
+        m_seed = seed;
+        m_tankCount = tankCount;
+        m_duplication = duplication;
+        m_heightDistribution = heightDistribution;
+
+        // Tanks have a mean height of one, so this many tanks over this span overlap to the requested depth
+        m_span = Math.max(tankCount / overlapDepth, 1.0);
+    }
+
+    /**
+     * Get the number of tanks generated.
+     *
+     * @return The number of tanks.
+     */
+    public long tankCount()
+    {
+        return m_tankCount;
+    }
+
+    /**
+     * Get the height below which every tank bottom lies. Tops may extend above it.
+     *
+     * @return The span of the bottoms.
+     */
+    public double span()
+    {
+        return m_span;
+    }
+
+    /**
+     * Generates the tank at an index. The same index always yields an equal tank.
+     *
+     * @param index An index below tankCount().
+     * @return A new Tank.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public Tank tank(long index)
+    {
+        if (index < 0 || index >= m_tankCount)
+        {
+            throw new IndexOutOfBoundsException(String.format("The index %d is outside the %d generated tanks.",
+                    index, m_tankCount));
+        }
+
+        // Give each tank its own stream, so that it does not depend on the tanks before it
+        SplittableRandom random = new SplittableRandom(mix64(m_seed + index * s_streamStride));
+
+        double bottom = random.nextDouble() * m_span;
+        double top = bottom + Math.max(m_heightDistribution.sample(random), s_minHeight);
+
+        // Snap either edge to the grid, keeping the tank from collapsing
+        if (random.nextDouble() < m_duplication)
+        {
+            bottom = Math.floor(bottom / s_gridSpacing) * s_gridSpacing;
+        }
+        if (random.nextDouble() < m_duplication)
+        {
+            top = Math.max(Math.ceil(top / s_gridSpacing) * s_gridSpacing, bottom + s_gridSpacing);
+        }
+
+        double width = 0.5 + random.nextDouble();
+        double depth = 0.5 + random.nextDouble();
+        return new Tank(new double[] { index, 0, bottom }, new double[] { index + width, depth, top });
+    }
+
+    /**
+     * Get an iterator over the tanks in index order. Each tank is generated as it is returned.
+     *
+     * @return A new iterator.
+     */
+    @Override
+    public Iterator<Tank> iterator()
+    {
+        return new Iterator<Tank>()
+        {
+            private long m_next;
+
+            @Override
+            public boolean hasNext()
+            {
+                return m_next < m_tankCount;
+            }
+
+            @Override
+            public Tank next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return tank(m_next++);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Generates every tank into a new set, the form a WaterSystem is built from. The whole network is held on the heap,
+     * so this is only for networks small enough to build a WaterSystem from.
+     *
+     * @return A new Set of the tanks.
+     */
+    public Set<Tank> toSet()
+    {
+        Set<Tank> tanks = new HashSet<>();
+        for (Tank tank : this)
+        {
+            tanks.add(tank);
+        }
+        return tanks;
+    }
+
+    /**
+     * Scrambles a seed so that nearby seeds give unrelated streams. This is the finalizer of SplittableRandom, from
+     * Stafford's variant 13 of the MurmurHash3 mixer.
+     *
+     * @param seed The seed to scramble.
+     * @return The scrambled seed.
+     */
+    private static long mix64(long seed)
+    {
+        long z = (seed ^ (seed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A read-only view of the tanks in a range of an edge map. The tanks are enumerated lazily from the map's lists of
+ * tank indices, so creating the view costs nothing regardless of how many tanks it covers. The view is backed by the
+ * map and the store, and is only valid until either changes: removal rearranges the lists in place, and a freed index
+ * may be reassigned to another tank.
+ *
+ * @author ian
+ *
+ */
+class TankRangeView extends AbstractCollection<Tank>
+{
+    /**
+     * The store that resolves tank indices.
+     */
+    private final TankStore m_tankStore;
+
+    /**
+     * The lists of tank indices in the range, usually the values of a sub-map.
+     */
+    private final Collection<IntList> m_tankLists;
+
+    /**
+     * Initializes the view over the given lists.
+     *
+     * @param tankStore The store that resolves tank indices.
+     * @param tankLists The lists of tank indices in the range.
+     */
+    public TankRangeView(TankStore tankStore, Collection<IntList> tankLists)
+    {
+        m_tankStore = tankStore;
+        m_tankLists = tankLists;
+    }
+
+    @Override
+    public Iterator<Tank> iterator()
+    {
+        final Iterator<IntList> lists = m_tankLists.iterator();
+
+        return new Iterator<Tank>()
+        {
+            /**
+             * The current list.
+             */
+            private IntList m_tanks = new IntList();
+
+            /**
+             * The position of the next tank in the current list.
+             */
+            private int m_position;
+
+            @Override
+            public boolean hasNext()
+            {
+                // Skip ahead to the next list with tanks remaining
+                while (m_position == m_tanks.size() && lists.hasNext())
+                {
+                    m_tanks = lists.next();
+                    m_position = 0;
+                }
+                return m_position < m_tanks.size();
+            }
+
+            @Override
+            public Tank next()
+            {
+                if (!this.hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return m_tankStore.tank(m_tanks.get(m_position++));
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException("The view is read-only.");
+            }
+        };
+    }
+
+    @Override
+    public int size()
+    {
+        int size = 0;
+        for (IntList tanks : m_tankLists)
+        {
+            size += tanks.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * A destination for tank records, such as the builders that TankFileLoader streams a file into.
+ *
+ * @author ian
+ *
+ */
+public interface TankSink
+{
+    /**
+     * Adds a tank from its coordinates. The arrays are copied, so the caller may reuse them for the next record.
+     *
+     * @param bottomLeft A point in space that will represent the minimum x,y,z of the tank.
+     * @param topRight A point in space that will represent the maximum x,y,z of the tank.
+     * @return This sink.
+     * @throws IllegalArgumentException If there are not enough coordinates in either parameter, or if any of
+     *             bottomLeft's components are greater than or equal to topRight's corresponding component.
+     * @throws IllegalStateException if the sink is full.
+     */
+    TankSink add(double[] bottomLeft, double[] topRight);
+}
@@ -0,0 +1,376 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+
+/**
+ * A store that assigns each tank a dense integer index and keeps the tank's bottom, top and base area in contiguous
+ * primitive arrays. An index stays assigned to its tank until the tank is removed, after which it may be reused by a
+ * later tank.
+ *
+ * Tanks are resolved to their indices through an open-addressed hash table of the indices themselves, probed linearly
+ * and compared against the stored tanks, so looking a tank up costs one int per slot rather than a map entry and a
+ * boxed Integer per tank.
+ *
+ * @author ian
+ *
+ */
+class TankStore
+{
+    /**
+     * The initial length of the arrays.
+     */
+    private static final int s_initialCapacity = 16;
+
+    /**
+     * The hash table is grown once more than this fraction of its slots would be in use.
+     */
+    private static final double s_maxLoad = 0.5;
+
+    /**
+     * The tank at each index, or null if the index is free.
+     */
+    private Tank[] m_tanks;
+
+    /**
+     * The bottom of the tank at each index.
+     */
+    private double[] m_bottoms;
+
+    /**
+     * The top of the tank at each index.
+     */
+    private double[] m_tops;
+
+    /**
+     * The base area of the tank at each index.
+     */
+    private double[] m_baseAreas;
+
+    /**
+     * One more than the highest index ever assigned.
+     */
+    private int m_limit;
+
+    /**
+     * A stack of the free indices below the limit.
+     */
+    private int[] m_freeIndices;
+
+    /**
+     * The number of free indices on the stack.
+     */
+    private int m_freeCount;
+
+    /**
+     * The hash table from tanks to indices. Each slot holds one more than the index of a tank, or 0 if it is empty.
+     * The length is a power of two.
+     */
+    private int[] m_slots;
+
+    /**
+     * The number of tanks in the store.
+     */
+    private int m_size;
+
+    /**
+     * Initializes the store with the specified tanks, indexed in iteration order.
+     *
+     * @param tanks The tanks to store.
+     */
+    public TankStore(Iterable<Tank> tanks)
+    {
+        m_tanks = new Tank[s_initialCapacity];
+        m_bottoms = new double[s_initialCapacity];
+        m_tops = new double[s_initialCapacity];
+        m_baseAreas = new double[s_initialCapacity];
+        m_freeIndices = new int[s_initialCapacity];
+        m_slots = new int[2 * s_initialCapacity];
+
+        for (Tank tank : tanks)
+        {
+            this.add(tank);
+        }
+    }
+
+    /**
+     * Adds a tank to the store, reusing a free index if there is one.
+     *
+     * @param tank The Tank to add.
+     * @return The index of the tank, which is its existing index if it was already stored.
+     */
+    public int add(Tank tank)
+    {
+        int slot = this.findSlot(tank);
+        if (0 != m_slots[slot])
+        {
+            return m_slots[slot] - 1;
+        }
+
+        // Reuse the most recently freed index, or extend the limit
+        int index;
+        if (m_freeCount > 0)
+        {
+            index = m_freeIndices[--m_freeCount];
+        }
+        else
+        {
+            index = m_limit++;
+            this.ensureCapacity(m_limit);
+        }
+
+        m_tanks[index] = tank;
+        m_bottoms[index] = tank.getBottom();
+        m_tops[index] = tank.getTop();
+        m_baseAreas[index] = tank.baseArea();
+
+        // Record the index, growing the table before it gets crowded
+        m_slots[slot] = index + 1;
+        if (++m_size > s_maxLoad * m_slots.length)
+        {
+            this.rehash(2 * m_slots.length);
+        }
+
+        return index;
+    }
+
+    /**
+     * Removes a tank from the store, freeing its index.
+     *
+     * @param tank The Tank to remove.
+     * @return The former index of the tank, or -1 if it was not stored.
+     */
+    public int remove(Tank tank)
+    {
+        int slot = this.findSlot(tank);
+        if (0 == m_slots[slot])
+        {
+            return -1;
+        }
+        int index = m_slots[slot] - 1;
+        this.removeSlot(slot);
+        --m_size;
+
+        // Clear the index so that it reads as empty
+        m_tanks[index] = null;
+        m_bottoms[index] = m_tops[index] = Double.NaN;
+        m_baseAreas[index] = 0.0;
+
+        if (m_freeCount == m_freeIndices.length)
+        {
+            m_freeIndices = Arrays.copyOf(m_freeIndices, 2 * m_freeCount);
+        }
+        m_freeIndices[m_freeCount++] = index;
+
+        return index;
+    }
+
+    /**
+     * Get the index of a tank.
+     *
+     * @param tank The Tank to look up.
+     * @return The index of the tank, or -1 if it is not stored.
+     */
+    public int indexOf(Tank tank)
+    {
+        return m_slots[this.findSlot(tank)] - 1;
+    }
+
+    /**
+     * Get the tank at an index.
+     *
+     * @param index An index below the limit.
+     * @return The tank, or null if the index is free.
+     */
+    public Tank tank(int index)
+    {
+        return m_tanks[index];
+    }
+
+    /**
+     * Get the bottom of the tank at an index.
+     *
+     * @param index An index below the limit.
+     * @return The bottom height, or NaN if the index is free.
+     */
+    public double bottom(int index)
+    {
+        return m_bottoms[index];
+    }
+
+    /**
+     * Get the top of the tank at an index.
+     *
+     * @param index An index below the limit.
+     * @return The top height, or NaN if the index is free.
+     */
+    public double top(int index)
+    {
+        return m_tops[index];
+    }
+
+    /**
+     * Get the base area of the tank at an index.
+     *
+     * @param index An index below the limit.
+     * @return The base area, or 0 if the index is free.
+     */
+    public double baseArea(int index)
+    {
+        return m_baseAreas[index];
+    }
+
+    /**
+     * Get the bottoms of the tanks, keyed by index. The array is shared and must not be modified, and may be longer than
+     * the limit.
+     *
+     * @return The bottom of the tank at each index.
+     */
+    double[] bottoms()
+    {
+        return m_bottoms;
+    }
+
+    /**
+     * Get the tops of the tanks, keyed by index. The array is shared and must not be modified, and may be longer than
+     * the limit.
+     *
+     * @return The top of the tank at each index.
+     */
+    double[] tops()
+    {
+        return m_tops;
+    }
+
+    /**
+     * Get the indices of all the tanks in the store.
+     *
+     * @return A new array of the indices in use, in increasing order.
+     */
+    public int[] indices()
+    {
+        int[] indices = new int[this.size()];
+        int count = 0;
+        for (int i = 0; i < m_limit; ++i)
+        {
+            if (null != m_tanks[i])
+            {
+                indices[count++] = i;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Get the number of tanks in the store.
+     *
+     * @return The number of tanks.
+     */
+    public int size()
+    {
+        return m_size;
+    }
+
+    /**
+     * Get the upper bound on indices. Every stored tank has an index below the limit.
+     *
+     * @return One more than the highest index ever assigned.
+     */
+    public int limit()
+    {
+        return m_limit;
+    }
+
+    /**
+     * Grows the arrays, if necessary, to hold the given number of indices.
+     *
+     * @param capacity The number of indices required.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > m_tanks.length)
+        {
+            int length = Math.max(capacity, 2 * m_tanks.length);
+            m_tanks = Arrays.copyOf(m_tanks, length);
+            m_bottoms = Arrays.copyOf(m_bottoms, length);
+            m_tops = Arrays.copyOf(m_tops, length);
+            m_baseAreas = Arrays.copyOf(m_baseAreas, length);
+        }
+    }
+
+    /**
+     * Finds the slot of a tank in the hash table.
+     *
+     * @param tank The Tank to look up.
+     * @return The slot holding the tank's index, or the empty slot where it would be inserted if it is not stored.
+     */
+    private int findSlot(Tank tank)
+    {
+        int mask = m_slots.length - 1;
+        int slot = spread(tank.hashCode()) & mask;
+
+        // Probe linearly until the tank or an empty slot is found
+        while (0 != m_slots[slot] && !tank.equals(m_tanks[m_slots[slot] - 1]))
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Empties a slot of the hash table, shifting back any later entry in the same run that would otherwise no longer
+     * be found from its home slot.
+     *
+     * @param slot The slot to empty.
+     */
+    private void removeSlot(int slot)
+    {
+        int mask = m_slots.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (0 != m_slots[next])
+        {
+            // The entry may fill the hole unless its home slot lies cyclically after the hole and at or before it
+            int home = spread(m_tanks[m_slots[next] - 1].hashCode()) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask))
+            {
+                m_slots[hole] = m_slots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        m_slots[hole] = 0;
+    }
+
+    /**
+     * Rebuilds the hash table with a new number of slots.
+     *
+     * @param length The new number of slots, a power of two.
+     */
+    private void rehash(int length)
+    {
+        int[] oldSlots = m_slots;
+        m_slots = new int[length];
+        for (int entry : oldSlots)
+        {
+            if (0 != entry)
+            {
+                m_slots[this.findSlot(m_tanks[entry - 1])] = entry;
+            }
+        }
+    }
+
+    /**
+     * Mixes the high bits of a hash code into the low bits, which alone select the slot.
+     *
+     * @param hashCode The hash code.
+     * @return The mixed hash.
+     */
+    private static int spread(int hashCode)
+    {
+        return hashCode ^ (hashCode >>> 16);
+    }
+}
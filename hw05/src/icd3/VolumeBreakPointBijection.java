@@ -0,0 +1,134 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+
+/**
+ * Encapsulates the one-to-one mapping of system volume to break point heights. The mapping is stored as three parallel
+ * primitive arrays indexed by break point, so that queries in either direction are searched and interpolated without
+ * any boxing.
+ *
+ * @author ian
+ *
+ */
+class VolumeBreakPointBijection extends BreakPointProfile
+{
+    /**
+     * The break point heights, in strictly increasing order.
+     */
+    private final double[] m_breakPoints;
+
+    /**
+     * The total volume of the system at each break point, in non-decreasing order.
+     */
+    private final double[] m_volumes;
+
+    /**
+     * The total active base area from each break point up to the next.
+     */
+    private final double[] m_areas;
+
+    /**
+     * Initializes the bijection from a map of break points to active base areas.
+     *
+     * @param activeBaseArea A NavigableMap associating break points to total active cross-section area.
+     */
+    public VolumeBreakPointBijection(NavigableMap<Double, Double> activeBaseArea)
+    {
+        int breakPointCount = activeBaseArea.size();
+
+        m_breakPoints = new double[breakPointCount];
+        m_volumes = new double[breakPointCount];
+        m_areas = new double[breakPointCount];
+
+        // Unbox the break points and areas once, up front
+        int index = 0;
+        for (Entry<Double, Double> breakPointBaseArea : activeBaseArea.entrySet())
+        {
+            m_breakPoints[index] = breakPointBaseArea.getKey();
+            m_areas[index] = breakPointBaseArea.getValue();
+            ++index;
+        }
+
+        // Calculate bijection
+        this.initialize();
+    }
+
+    /**
+     * Initializes the bijection from parallel arrays of break points and active base areas. The arrays are used
+     * directly rather than copied.
+     *
+     * @param breakPoints The break point heights, in strictly increasing order.
+     * @param areas The total active base area from each break point up to the next.
+     */
+    VolumeBreakPointBijection(double[] breakPoints, double[] areas)
+    {
+        m_breakPoints = breakPoints;
+        m_volumes = new double[breakPoints.length];
+        m_areas = areas;
+
+        // Calculate bijection
+        this.initialize();
+    }
+
+    /**
+     * Initializes the bijection from parallel arrays that have already been computed. The arrays are used directly
+     * rather than copied.
+     *
+     * @param breakPoints The break point heights, in strictly increasing order.
+     * @param volumes The total volume of the system at each break point.
+     * @param areas The total active base area from each break point up to the next.
+     */
+    VolumeBreakPointBijection(double[] breakPoints, double[] volumes, double[] areas)
+    {
+        m_breakPoints = breakPoints;
+        m_volumes = volumes;
+        m_areas = areas;
+    }
+
+    private void initialize()
+    {
+        // Keep track of the total volume from the bottom of the system
+        double runningTotalVolume = 0.0;
+
+        for (int i = 0; i < m_breakPoints.length; ++i)
+        {
+            // The first break point has no cross-section beneath it
+            if (i > 0)
+            {
+                // Use the current height difference and the base area of the last cross-section to determine volume
+                runningTotalVolume += (m_breakPoints[i] - m_breakPoints[i - 1]) * m_areas[i - 1];
+            }
+
+            m_volumes[i] = runningTotalVolume;
+        }
+    }
+
+    @Override
+    int breakPointCount()
+    {
+        return m_breakPoints.length;
+    }
+
+    @Override
+    double breakPointHeight(int breakPoint)
+    {
+        return m_breakPoints[breakPoint];
+    }
+
+    @Override
+    double breakPointVolume(int breakPoint)
+    {
+        return m_volumes[breakPoint];
+    }
+
+    @Override
+    double areaAbove(int lastBreak)
+    {
+        return m_areas[lastBreak];
+    }
+}
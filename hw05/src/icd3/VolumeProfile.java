@@ -0,0 +1,242 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A one-to-one piecewise linear function of water heights and system volumes. Subclasses provide the storage and
+ * search; this class provides the validation shared by every direction and batch form of the conversion.
+ *
+ * @author ian
+ *
+ */
+abstract class VolumeProfile
+{
+    /**
+     * Gets the volume at the given height.
+     *
+     * @param waterHeight The given height.
+     * @return The volume.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of break points.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public double getWaterVolume(double waterHeight)
+    {
+        throwIfInvalidWaterHeight(waterHeight);
+        return this.volumeAt(waterHeight);
+    }
+
+    /**
+     * Gets the height at the given volume.
+     *
+     * @param waterVolume The given volume.
+     * @return The height.
+     * @throws IllegalArgumentException if the waterVolume is negative or exceeds the maximum volume.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public double getWaterHeight(double waterVolume)
+    {
+        throwIfInvalidWaterVolume(waterVolume);
+        return this.heightAt(waterVolume);
+    }
+
+    /**
+     * Gets the volume at each of the given heights. The range of the heights is validated once up front.
+     *
+     * @param waterHeights The given heights.
+     * @param waterVolumes The array to fill with the volumes. Must be at least as long as waterHeights.
+     * @throws IllegalArgumentException if any height is outside the range of break points.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public void getWaterVolumes(double[] waterHeights, double[] waterVolumes)
+    {
+        throwIfInvalidWaterHeights(waterHeights, waterVolumes);
+
+        for (int i = 0; i < waterHeights.length; ++i)
+        {
+            waterVolumes[i] = this.volumeAt(waterHeights[i]);
+        }
+    }
+
+    /**
+     * Gets the height at each of the given volumes. The range of the volumes is validated once up front.
+     *
+     * @param waterVolumes The given volumes.
+     * @param waterHeights The array to fill with the heights. Must be at least as long as waterVolumes.
+     * @throws IllegalArgumentException if any volume is negative or exceeds the maximum volume.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public void getWaterHeights(double[] waterVolumes, double[] waterHeights)
+    {
+        throwIfInvalidWaterVolumes(waterVolumes, waterHeights);
+
+        for (int i = 0; i < waterVolumes.length; ++i)
+        {
+            waterHeights[i] = this.heightAt(waterVolumes[i]);
+        }
+    }
+
+    /**
+     * Gets the volume at a height already known to be within range.
+     *
+     * @param waterHeight The given height.
+     * @return The volume.
+     */
+    protected abstract double volumeAt(double waterHeight);
+
+    /**
+     * Gets the height at a volume already known to be within range.
+     *
+     * @param waterVolume The given volume.
+     * @return The height.
+     */
+    protected abstract double heightAt(double waterVolume);
+
+    /**
+     * Get the lowest break point.
+     *
+     * @return The minimum height.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public abstract double minHeight();
+
+    /**
+     * Get the highest break point.
+     *
+     * @return The maximum height.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public abstract double maxHeight();
+
+    /**
+     * Get the total volume of the system when full.
+     *
+     * @return The maximum volume.
+     * @throws NoSuchElementException if there are no break points.
+     */
+    public abstract double maxVolume();
+
+    /**
+     * Throws an exception if waterHeight is outside the range of break points.
+     *
+     * @param waterHeight The height to validate.
+     */
+    void throwIfInvalidWaterHeight(double waterHeight)
+    {
+        // Make sure waterHeight is legal
+        if (waterHeight > this.maxHeight())
+        {
+            throw new IllegalArgumentException(String.format("The waterHeight of %f exceeds the maximum of %f.",
+                    waterHeight, this.maxHeight()));
+        }
+        if (waterHeight < this.minHeight())
+        {
+            throw new IllegalArgumentException(String.format("The waterHeight of %f is below the minimum of %f.",
+                    waterHeight, this.minHeight()));
+        }
+    }
+
+    /**
+     * Throws an exception if waterVolume is negative or exceeds the maximum volume.
+     *
+     * @param waterVolume The volume to validate.
+     */
+    void throwIfInvalidWaterVolume(double waterVolume)
+    {
+        if (waterVolume < 0)
+        {
+            throw new IllegalArgumentException("The waterVolume should not be negative.");
+        }
+
+        if (waterVolume > this.maxVolume())
+        {
+            throw new IllegalArgumentException("The waterVolume should not exceed the maximum volume.");
+        }
+    }
+
+    /**
+     * Throws an exception if a batch of heights cannot be converted into the given output array.
+     *
+     * @param waterHeights The heights to validate.
+     * @param waterVolumes The array to hold the converted volumes.
+     */
+    void throwIfInvalidWaterHeights(double[] waterHeights, double[] waterVolumes)
+    {
+        throwIfTooShort(waterHeights, waterVolumes);
+
+        // Validate the whole batch against its extremes
+        if (waterHeights.length > 0)
+        {
+            throwIfInvalidWaterHeight(min(waterHeights));
+            throwIfInvalidWaterHeight(max(waterHeights));
+        }
+    }
+
+    /**
+     * Throws an exception if a batch of volumes cannot be converted into the given output array.
+     *
+     * @param waterVolumes The volumes to validate.
+     * @param waterHeights The array to hold the converted heights.
+     */
+    void throwIfInvalidWaterVolumes(double[] waterVolumes, double[] waterHeights)
+    {
+        throwIfTooShort(waterVolumes, waterHeights);
+
+        // Validate the whole batch against its extremes
+        if (waterVolumes.length > 0)
+        {
+            throwIfInvalidWaterVolume(min(waterVolumes));
+            throwIfInvalidWaterVolume(max(waterVolumes));
+        }
+    }
+
+    /**
+     * Throws an exception if the output array of a batch conversion cannot hold the results.
+     *
+     * @param input The values to convert.
+     * @param output The array to hold the converted values.
+     */
+    private static void throwIfTooShort(double[] input, double[] output)
+    {
+        if (output.length < input.length)
+        {
+            throw new IllegalArgumentException(String.format("The output array has only %d elements. Expected: %d",
+                    output.length, input.length));
+        }
+    }
+
+    /**
+     * Get the smallest value of a non-empty array.
+     *
+     * @param values The array to scan.
+     * @return The minimum value.
+     */
+    private static double min(double[] values)
+    {
+        double min = values[0];
+        for (double value : values)
+        {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    /**
+     * Get the largest value of a non-empty array.
+     *
+     * @param values The array to scan.
+     * @return The maximum value.
+     */
+    private static double max(double[] values)
+    {
+        double max = values[0];
+        for (double value : values)
+        {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,382 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds a VolumeBreakPointBijection straight from tank edges, either sequentially or in parallel. Each tank
+ * contributes two edges, its bottom adding its base area and its top removing it. The edges are sorted, and edges at
+ * equal heights are combined into one break point.
+ *
+ * The parallel build sorts with IndexSort.parallelSort, then splits the sorted edges into chunks. Each chunk reduces
+ * its edges to a few totals, the totals are scanned sequentially into a starting state for each chunk, and then every
+ * chunk writes its own break points, areas and volumes. The result is the same as the sequential build up to the
+ * rounding of the sums.
+ *
+ * @author ian
+ *
+ */
+final class VolumeProfileBuilder
+{
+    /**
+     * The smallest number of edges worth giving a chunk of its own.
+     */
+    private static final int s_minChunkLength = 1 << 12;
+
+    private VolumeProfileBuilder()
+    {
+    }
+
+    /**
+     * Builds the bijection in one sequential pass.
+     *
+     * @param edges The height of each edge.
+     * @param areaDeltas The change in active base area at each edge: positive for bottoms and negative for tops.
+     * @return The desired bijection.
+     */
+    public static VolumeBreakPointBijection build(double[] edges, double[] areaDeltas)
+    {
+        int edgeCount = edges.length;
+
+        // Order the edges by height
+        int[] order = identity(edgeCount);
+        IndexSort.sort(order, edges);
+
+        // Keep a running total of the active base area, and of the number of tanks contributing to it
+        double[] breakPoints = new double[edgeCount];
+        double[] areas = new double[edgeCount];
+        int breakPointCount = 0;
+        double runningArea = 0;
+        int runningCount = 0;
+
+        for (int i = 0; i < edgeCount; ++i)
+        {
+            int edge = order[i];
+
+            runningArea += areaDeltas[edge];
+            runningCount += sign(areaDeltas[edge]);
+
+            // Only the last edge at each height creates the entry for its break point
+            if (!isLastAtHeight(order, i, edges))
+            {
+                continue;
+            }
+
+            // Do not let rounding leave a residue where no tanks are active
+            if (0 == runningCount)
+            {
+                runningArea = 0;
+            }
+
+            breakPoints[breakPointCount] = edges[edge];
+            areas[breakPointCount] = runningArea;
+            ++breakPointCount;
+        }
+
+        return new VolumeBreakPointBijection(Arrays.copyOf(breakPoints, breakPointCount),
+                Arrays.copyOf(areas, breakPointCount));
+    }
+
+    /**
+     * Builds the bijection on the common fork-join pool.
+     *
+     * @param edges The height of each edge.
+     * @param areaDeltas The change in active base area at each edge: positive for bottoms and negative for tops.
+     * @return The desired bijection.
+     */
+    public static VolumeBreakPointBijection parallelBuild(final double[] edges, final double[] areaDeltas)
+    {
+        int edgeCount = edges.length;
+
+        // Order the edges by height
+        final int[] order = identity(edgeCount);
+        IndexSort.parallelSort(order, edges);
+
+        final Chunks edgeChunks = new Chunks(edgeCount);
+        final int chunkCount = edgeChunks.count();
+
+        // First reduction: the change in tank count and the number of break points in each chunk
+        final int[] countDeltas = new int[chunkCount];
+        final int[] breakPointCounts = new int[chunkCount];
+        forEachChunk(chunkCount, new ChunkBody()
+        {
+            @Override
+            public void compute(int chunk)
+            {
+                for (int i = edgeChunks.from(chunk); i < edgeChunks.to(chunk); ++i)
+                {
+                    countDeltas[chunk] += sign(areaDeltas[order[i]]);
+                    if (isLastAtHeight(order, i, edges))
+                    {
+                        ++breakPointCounts[chunk];
+                    }
+                }
+            }
+        });
+
+        // Scan the reductions into the tank count and first break point of each chunk
+        final int[] startCounts = new int[chunkCount];
+        final int[] startBreakPoints = new int[chunkCount + 1];
+        for (int chunk = 1; chunk <= chunkCount; ++chunk)
+        {
+            if (chunk < chunkCount)
+            {
+                startCounts[chunk] = startCounts[chunk - 1] + countDeltas[chunk - 1];
+            }
+            startBreakPoints[chunk] = startBreakPoints[chunk - 1] + breakPointCounts[chunk - 1];
+        }
+
+        // Second reduction: the change in area over each chunk, restarting wherever no tanks are active
+        final double[] areaDeltaSums = new double[chunkCount];
+        final boolean[] areaResets = new boolean[chunkCount];
+        forEachChunk(chunkCount, new ChunkBody()
+        {
+            @Override
+            public void compute(int chunk)
+            {
+                int runningCount = startCounts[chunk];
+                for (int i = edgeChunks.from(chunk); i < edgeChunks.to(chunk); ++i)
+                {
+                    areaDeltaSums[chunk] += areaDeltas[order[i]];
+                    runningCount += sign(areaDeltas[order[i]]);
+                    if (0 == runningCount && isLastAtHeight(order, i, edges))
+                    {
+                        areaDeltaSums[chunk] = 0;
+                        areaResets[chunk] = true;
+                    }
+                }
+            }
+        });
+
+        // Scan the area reductions into the area at the start of each chunk
+        final double[] startAreas = new double[chunkCount];
+        for (int chunk = 1; chunk < chunkCount; ++chunk)
+        {
+            startAreas[chunk] = areaDeltaSums[chunk - 1] + (areaResets[chunk - 1] ? 0 : startAreas[chunk - 1]);
+        }
+
+        // Write the break points and areas of every chunk from its starting state
+        int breakPointCount = startBreakPoints[chunkCount];
+        final double[] breakPoints = new double[breakPointCount];
+        final double[] areas = new double[breakPointCount];
+        forEachChunk(chunkCount, new ChunkBody()
+        {
+            @Override
+            public void compute(int chunk)
+            {
+                double runningArea = startAreas[chunk];
+                int runningCount = startCounts[chunk];
+                int breakPoint = startBreakPoints[chunk];
+                for (int i = edgeChunks.from(chunk); i < edgeChunks.to(chunk); ++i)
+                {
+                    int edge = order[i];
+                    runningArea += areaDeltas[edge];
+                    runningCount += sign(areaDeltas[edge]);
+                    if (isLastAtHeight(order, i, edges))
+                    {
+                        // Do not let rounding leave a residue where no tanks are active
+                        if (0 == runningCount)
+                        {
+                            runningArea = 0;
+                        }
+                        breakPoints[breakPoint] = edges[edge];
+                        areas[breakPoint] = runningArea;
+                        ++breakPoint;
+                    }
+                }
+            }
+        });
+
+        return new VolumeBreakPointBijection(breakPoints, prefixVolumes(breakPoints, areas), areas);
+    }
+
+    /**
+     * Computes the total volume at each break point with a parallel scan over the cross sections.
+     *
+     * @param breakPoints The break point heights, in strictly increasing order.
+     * @param areas The total active base area from each break point up to the next.
+     * @return The total volume at each break point.
+     */
+    private static double[] prefixVolumes(final double[] breakPoints, final double[] areas)
+    {
+        final double[] volumes = new double[breakPoints.length];
+        final Chunks chunks = new Chunks(breakPoints.length);
+        int chunkCount = chunks.count();
+
+        // The volume of the cross section below each break point, summed over each chunk
+        final double[] volumeSums = new double[chunkCount];
+        forEachChunk(chunkCount, new ChunkBody()
+        {
+            @Override
+            public void compute(int chunk)
+            {
+                for (int i = Math.max(chunks.from(chunk), 1); i < chunks.to(chunk); ++i)
+                {
+                    volumeSums[chunk] += (breakPoints[i] - breakPoints[i - 1]) * areas[i - 1];
+                }
+            }
+        });
+
+        final double[] startVolumes = new double[chunkCount];
+        for (int chunk = 1; chunk < chunkCount; ++chunk)
+        {
+            startVolumes[chunk] = startVolumes[chunk - 1] + volumeSums[chunk - 1];
+        }
+
+        forEachChunk(chunkCount, new ChunkBody()
+        {
+            @Override
+            public void compute(int chunk)
+            {
+                double runningVolume = startVolumes[chunk];
+                for (int i = chunks.from(chunk); i < chunks.to(chunk); ++i)
+                {
+                    // The first break point has no cross-section beneath it
+                    if (i > 0)
+                    {
+                        runningVolume += (breakPoints[i] - breakPoints[i - 1]) * areas[i - 1];
+                    }
+                    volumes[i] = runningVolume;
+                }
+            }
+        });
+
+        return volumes;
+    }
+
+    /**
+     * Get whether a sorted edge is the last one at its height.
+     *
+     * @param order The edges in sorted order.
+     * @param position A position in order.
+     * @param edges The height of each edge.
+     * @return true if the next edge in order is higher, or there is none.
+     */
+    private static boolean isLastAtHeight(int[] order, int position, double[] edges)
+    {
+        return position + 1 == order.length || edges[order[position + 1]] != edges[order[position]];
+    }
+
+    /**
+     * Get the change in tank count at an edge.
+     *
+     * @param areaDelta The change in active base area at the edge.
+     * @return 1 for a bottom and -1 for a top.
+     */
+    private static int sign(double areaDelta)
+    {
+        return areaDelta > 0 ? 1 : -1;
+    }
+
+    /**
+     * Creates the identity ordering.
+     *
+     * @param length The number of values.
+     * @return A new array holding 0 through length - 1.
+     */
+    private static int[] identity(int length)
+    {
+        int[] order = new int[length];
+        for (int i = 0; i < length; ++i)
+        {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Runs a body once for each chunk on the common fork-join pool, and waits for every chunk to finish.
+     *
+     * @param chunkCount The number of chunks.
+     * @param body The work to do for each chunk.
+     */
+    private static void forEachChunk(int chunkCount, ChunkBody body)
+    {
+        if (chunkCount > 0)
+        {
+            ForkJoinPool.commonPool().invoke(new ChunkTask(body, 0, chunkCount));
+        }
+    }
+
+    /**
+     * The work to do for a single chunk.
+     *
+     */
+    private interface ChunkBody
+    {
+        void compute(int chunk);
+    }
+
+    /**
+     * A task that runs a body for a range of chunks, splitting the range in half until one chunk is left.
+     *
+     */
+    private static class ChunkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final ChunkBody m_body;
+
+        private final int m_from;
+
+        private final int m_to;
+
+        public ChunkTask(ChunkBody body, int from, int to)
+        {
+            m_body = body;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (m_to - m_from == 1)
+            {
+                m_body.compute(m_from);
+                return;
+            }
+
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new ChunkTask(m_body, m_from, middle), new ChunkTask(m_body, middle, m_to));
+        }
+    }
+
+    /**
+     * A division of a range of positions into nearly equal chunks, a few per core.
+     *
+     */
+    private static class Chunks
+    {
+        private final int m_length;
+
+        private final int m_count;
+
+        public Chunks(int length)
+        {
+            m_length = length;
+            m_count = (int) Math.min(4L * ForkJoinPool.getCommonPoolParallelism(), (length + s_minChunkLength - 1)
+                    / s_minChunkLength);
+        }
+
+        public int count()
+        {
+            return m_count;
+        }
+
+        public int from(int chunk)
+        {
+            return (int) ((long) chunk * m_length / m_count);
+        }
+
+        public int to(int chunk)
+        {
+            return (int) ((long) (chunk + 1) * m_length / m_count);
+        }
+    }
+}
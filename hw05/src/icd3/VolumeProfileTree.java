@@ -0,0 +1,510 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A dynamic volume profile that supports inserting and removing tanks in logarithmic time.
+ *
+ * Each break point stores the change in active base area at that height: a tank adds its base area at its bottom and
+ * removes it at its top. The volume below a height h is then the sum over lower break points b of delta(b) * (h - b),
+ * which is h * sum(delta) - sum(delta * b). The break points are kept in a treap in which every node carries both
+ * sums over its subtree, so a tank update, a volume lookup and a height descent each touch one root-to-leaf path.
+ *
+ * Heights are measured from a fixed origin, the first break point inserted, so that the two sums stay small when the
+ * tanks are far from zero. Every node also counts the tanks its edges start and end, and wherever no tank is active
+ * the area is taken to be exactly zero, so the rounding residue that removals leave in the area sum never stretches
+ * across an empty gap. The sums still round differently from a profile built fresh from the same tanks, so a volume
+ * within a small relative tolerance above the maximum is taken to be the maximum rather than rejected.
+ *
+ * @author ian
+ *
+ */
+class VolumeProfileTree extends VolumeProfile
+{
+    /**
+     * The root of the treap, or null if there are no break points.
+     */
+    private Node m_root;
+
+    /**
+     * The relative amount by which a volume may exceed the maximum and still be accepted as the maximum.
+     */
+    private static final double s_volumeTolerance = 1e-9;
+
+    /**
+     * The seed of the priorities, fixed so that the same updates always give the same shape.
+     */
+    private static final long s_seed = 293;
+
+    /**
+     * Source of the random priorities that keep the treap balanced.
+     */
+    private final Random m_random = new Random(s_seed);
+
+    /**
+     * The height from which every moment is measured.
+     */
+    private double m_origin = Double.NaN;
+
+    /**
+     * Initializes the profile to the tanks in the specified store.
+     *
+     * @param tankStore The store of Tanks in the WaterSystem.
+     */
+    public VolumeProfileTree(TankStore tankStore)
+    {
+        for (int tankIndex : tankStore.indices())
+        {
+            double baseArea = tankStore.baseArea(tankIndex);
+            m_root = this.addEdge(m_root, tankStore.bottom(tankIndex), baseArea, 1);
+            m_root = this.addEdge(m_root, tankStore.top(tankIndex), -baseArea, -1);
+        }
+    }
+
+    /**
+     * Adds a tank to the profile.
+     *
+     * @param tank The Tank to add.
+     */
+    public void addTank(Tank tank)
+    {
+        m_root = this.addEdge(m_root, tank.getBottom(), tank.baseArea(), 1);
+        m_root = this.addEdge(m_root, tank.getTop(), -tank.baseArea(), -1);
+    }
+
+    /**
+     * Removes a tank from the profile. The tank must have been added before.
+     *
+     * @param tank The Tank to remove.
+     */
+    public void removeTank(Tank tank)
+    {
+        m_root = removeEdge(m_root, tank.getBottom(), tank.baseArea(), 1);
+        m_root = removeEdge(m_root, tank.getTop(), -tank.baseArea(), -1);
+    }
+
+    /**
+     * Checks whether any tank edge lies at a height.
+     *
+     * @param height The height to check.
+     * @return true if the height is a break point of the profile.
+     */
+    public boolean hasBreakPoint(double height)
+    {
+        Node node = m_root;
+        while (null != node && height != node.m_height)
+        {
+            node = height < node.m_height ? node.m_left : node.m_right;
+        }
+        return null != node;
+    }
+
+    @Override
+    protected double volumeAt(double waterHeight)
+    {
+        // Accumulate the sums over every break point at or below waterHeight
+        double areaSum = 0.0;
+        double momentSum = 0.0;
+        int countSum = 0;
+
+        Node node = m_root;
+        while (null != node)
+        {
+            if (node.m_height <= waterHeight)
+            {
+                // The left subtree and this node are all below waterHeight
+                areaSum += areaSum(node.m_left) + node.m_areaDelta;
+                momentSum += momentSum(node.m_left) + node.m_areaDelta * node.m_offset;
+                countSum += countSum(node.m_left) + node.m_countDelta;
+                node = node.m_right;
+            }
+            else
+            {
+                node = node.m_left;
+            }
+        }
+
+        return this.volume(waterHeight, areaSum, momentSum, countSum);
+    }
+
+    @Override
+    protected double heightAt(double waterVolume)
+    {
+        // Sums over every break point left of the current subtree
+        double areaSum = 0.0;
+        double momentSum = 0.0;
+        int countSum = 0;
+
+        // The highest break point found so far whose volume does not exceed waterVolume, with the sums through it
+        Node lastBreak = null;
+        double lastAreaSum = 0.0;
+        double lastMomentSum = 0.0;
+        int lastCountSum = 0;
+
+        // The lowest break point found so far whose volume exceeds waterVolume
+        Node nextBreak = null;
+
+        Node node = m_root;
+        while (null != node)
+        {
+            // The sums through this node. Its own edges add nothing to the volume at its height.
+            double throughAreaSum = areaSum + areaSum(node.m_left) + node.m_areaDelta;
+            double throughMomentSum = momentSum + momentSum(node.m_left) + node.m_areaDelta * node.m_offset;
+            int throughCountSum = countSum + countSum(node.m_left) + node.m_countDelta;
+
+            // Volume is monotone in height, so descend right whenever this break point is still low enough
+            if (this.volume(node.m_height, throughAreaSum, throughMomentSum, throughCountSum) <= waterVolume)
+            {
+                areaSum = throughAreaSum;
+                momentSum = throughMomentSum;
+                countSum = throughCountSum;
+
+                lastBreak = node;
+                lastAreaSum = areaSum;
+                lastMomentSum = momentSum;
+                lastCountSum = countSum;
+
+                node = node.m_right;
+            }
+            else
+            {
+                nextBreak = node;
+                node = node.m_left;
+            }
+        }
+
+        // Above the topmost break point there is no cross-section, and above an empty one there is only the gap up to
+        // the next break point, which is the highest height that shares the volume
+        if (null == nextBreak)
+        {
+            return lastBreak.m_height;
+        }
+        if (0 == lastCountSum)
+        {
+            return nextBreak.m_height;
+        }
+
+        // Get the volume of the current cross section by subtracting the total volume at the break point
+        double crossSectionVolume = waterVolume - this.volume(lastBreak.m_height, lastAreaSum, lastMomentSum,
+                lastCountSum);
+        if (crossSectionVolume <= 0)
+        {
+            return lastBreak.m_height;
+        }
+
+        // The water height is the last break point + the cross section height (volume / area), kept below the next
+        return Math.min(lastBreak.m_height + crossSectionVolume / lastAreaSum, nextBreak.m_height);
+    }
+
+    @Override
+    public double minHeight()
+    {
+        Node node = throwIfEmpty();
+        while (null != node.m_left)
+        {
+            node = node.m_left;
+        }
+        return node.m_height;
+    }
+
+    @Override
+    public double maxHeight()
+    {
+        Node node = throwIfEmpty();
+        while (null != node.m_right)
+        {
+            node = node.m_right;
+        }
+        return node.m_height;
+    }
+
+    @Override
+    public double maxVolume()
+    {
+        // Above the highest break point every tank is full, so both sums are complete and no tank is active
+        Node root = throwIfEmpty();
+        return this.volume(this.maxHeight(), root.m_areaSum, root.m_momentSum, root.m_countSum);
+    }
+
+    @Override
+    void throwIfInvalidWaterVolume(double waterVolume)
+    {
+        // Forgive rounding at the top. heightAt already returns the maximum height for any volume above the maximum.
+        double maxVolume = this.maxVolume();
+        if (waterVolume > maxVolume && waterVolume <= maxVolume + s_volumeTolerance * Math.abs(maxVolume))
+        {
+            waterVolume = maxVolume;
+        }
+        super.throwIfInvalidWaterVolume(waterVolume);
+    }
+
+    /**
+     * Get the volume at a height from the sums over every break point at or below it.
+     *
+     * @param waterHeight The height.
+     * @param areaSum The sum of the area changes, which is the active base area.
+     * @param momentSum The sum of the area changes times their heights above the origin.
+     * @param countSum The sum of the tank count changes, which is the number of active tanks.
+     * @return The volume.
+     */
+    private double volume(double waterHeight, double areaSum, double momentSum, int countSum)
+    {
+        // Where no tank is active the area is exactly zero, whatever residue the sum has gathered
+        double area = 0 == countSum ? 0.0 : areaSum;
+        return (waterHeight - m_origin) * area - momentSum;
+    }
+
+    /**
+     * Throws an exception if there are no break points.
+     *
+     * @return The root of the treap.
+     */
+    private Node throwIfEmpty()
+    {
+        if (null == m_root)
+        {
+            throw new NoSuchElementException("There are no tanks in the system.");
+        }
+        return m_root;
+    }
+
+    /**
+     * Adds a tank edge to the subtree, creating its break point if it is new.
+     *
+     * @param node The root of the subtree.
+     * @param height The height of the edge.
+     * @param areaDelta The change in active base area at the edge.
+     * @param countDelta The change in the number of active tanks at the edge: 1 for a bottom and -1 for a top.
+     * @return The new root of the subtree.
+     */
+    private Node addEdge(Node node, double height, double areaDelta, int countDelta)
+    {
+        if (null == node)
+        {
+            // The first break point fixes the origin for good
+            if (Double.isNaN(m_origin))
+            {
+                m_origin = height;
+            }
+            return new Node(height - m_origin, height, areaDelta, countDelta, m_random.nextInt());
+        }
+
+        if (height < node.m_height)
+        {
+            node.m_left = this.addEdge(node.m_left, height, areaDelta, countDelta);
+
+            // Restore the heap order on priorities
+            if (node.m_left.m_priority > node.m_priority)
+            {
+                node = rotateRight(node);
+            }
+        }
+        else if (height > node.m_height)
+        {
+            node.m_right = this.addEdge(node.m_right, height, areaDelta, countDelta);
+
+            // Restore the heap order on priorities
+            if (node.m_right.m_priority > node.m_priority)
+            {
+                node = rotateLeft(node);
+            }
+        }
+        else
+        {
+            // The break point already exists
+            node.m_areaDelta += areaDelta;
+            node.m_countDelta += countDelta;
+            ++node.m_edgeCount;
+        }
+
+        node.update();
+        return node;
+    }
+
+    /**
+     * Removes a tank edge from the subtree, removing its break point once no edge lies on it.
+     *
+     * @param node The root of the subtree.
+     * @param height The height of the edge.
+     * @param areaDelta The change in active base area that was added for the edge.
+     * @param countDelta The change in the number of active tanks that was added for the edge.
+     * @return The new root of the subtree.
+     */
+    private static Node removeEdge(Node node, double height, double areaDelta, int countDelta)
+    {
+        if (null == node)
+        {
+            throw new NoSuchElementException(String.format("There is no break point at %f.", height));
+        }
+
+        if (height < node.m_height)
+        {
+            node.m_left = removeEdge(node.m_left, height, areaDelta, countDelta);
+        }
+        else if (height > node.m_height)
+        {
+            node.m_right = removeEdge(node.m_right, height, areaDelta, countDelta);
+        }
+        else if (--node.m_edgeCount > 0)
+        {
+            node.m_areaDelta -= areaDelta;
+            node.m_countDelta -= countDelta;
+        }
+        else
+        {
+            // The break point is no longer needed
+            return merge(node.m_left, node.m_right);
+        }
+
+        node.update();
+        return node;
+    }
+
+    /**
+     * Merges two subtrees, where every height in the left is below every height in the right.
+     *
+     * @param left The lower subtree.
+     * @param right The upper subtree.
+     * @return The root of the merged subtree.
+     */
+    private static Node merge(Node left, Node right)
+    {
+        if (null == left)
+        {
+            return right;
+        }
+        if (null == right)
+        {
+            return left;
+        }
+
+        // The root with the higher priority stays on top
+        if (left.m_priority > right.m_priority)
+        {
+            left.m_right = merge(left.m_right, right);
+            left.update();
+            return left;
+        }
+        else
+        {
+            right.m_left = merge(left, right.m_left);
+            right.update();
+            return right;
+        }
+    }
+
+    private static Node rotateRight(Node node)
+    {
+        Node left = node.m_left;
+        node.m_left = left.m_right;
+        left.m_right = node;
+        node.update();
+        return left;
+    }
+
+    private static Node rotateLeft(Node node)
+    {
+        Node right = node.m_right;
+        node.m_right = right.m_left;
+        right.m_left = node;
+        node.update();
+        return right;
+    }
+
+    private static double areaSum(Node node)
+    {
+        return null == node ? 0.0 : node.m_areaSum;
+    }
+
+    private static double momentSum(Node node)
+    {
+        return null == node ? 0.0 : node.m_momentSum;
+    }
+
+    private static int countSum(Node node)
+    {
+        return null == node ? 0 : node.m_countSum;
+    }
+
+    /**
+     * A break point in the treap, augmented with sums over its subtree.
+     *
+     */
+    private static class Node
+    {
+        /**
+         * The height of the break point.
+         */
+        private final double m_height;
+
+        /**
+         * Random priority. Every node's priority is at least that of its children.
+         */
+        private final int m_priority;
+
+        /**
+         * The change in active base area at the break point.
+         */
+        private double m_areaDelta;
+
+        /**
+         * The height of the break point above the origin.
+         */
+        private final double m_offset;
+
+        /**
+         * The change in the number of active tanks at the break point.
+         */
+        private int m_countDelta;
+
+        /**
+         * The number of tank edges lying on the break point.
+         */
+        private int m_edgeCount;
+
+        /**
+         * The sum of areaDelta over the subtree.
+         */
+        private double m_areaSum;
+
+        /**
+         * The sum of areaDelta * offset over the subtree.
+         */
+        private double m_momentSum;
+
+        /**
+         * The sum of countDelta over the subtree.
+         */
+        private int m_countSum;
+
+        private Node m_left;
+
+        private Node m_right;
+
+        public Node(double offset, double height, double areaDelta, int countDelta, int priority)
+        {
+            m_offset = offset;
+            m_height = height;
+            m_priority = priority;
+            m_areaDelta = areaDelta;
+            m_countDelta = countDelta;
+            m_edgeCount = 1;
+            this.update();
+        }
+
+        /**
+         * Recomputes the subtree sums from the children.
+         */
+        public void update()
+        {
+            m_areaSum = areaSum(m_left) + m_areaDelta + areaSum(m_right);
+            m_momentSum = momentSum(m_left) + m_areaDelta * m_offset + momentSum(m_right);
+            m_countSum = countSum(m_left) + m_countDelta + countSum(m_right);
+        }
+    }
+}
@@ -4,7 +4,10 @@
  */
 package icd3;
 
-import java.util.AbstractMap.SimpleEntry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -25,217 +28,1017 @@ public class WaterSystem
 {
 
     /**
-     * The raw set of tanks in this system.
+     * A store assigning each tank in this system a stable index, with the tank geometry in primitive arrays. The other
+     * structures refer to tanks by these indices.
      */
-    private Set<Tank> m_tankSet;
+    private TankStore m_tankStore;
 
     /**
-     * A map that associates to each break point the set of tanks whose bottoms are exactly at the break point.
+     * A map that associates to each break point the indices of the tanks whose bottoms are exactly at the break point.
      */
-    private NavigableMap<Double, Set<Tank>> m_tanksByBottom;
+    private NavigableMap<Double, IntList> m_tanksByBottom;
 
     /**
-     * A map that associates to each break point the set of tanks whose tops are exactly at the break point.
+     * A map that associates to each break point the indices of the tanks whose tops are exactly at the break point.
      */
-    private NavigableMap<Double, Set<Tank>> m_tanksByTop;
+    private NavigableMap<Double, IntList> m_tanksByTop;
 
     /**
-     * A map that associates to each break point the set of tanks active at the break point.
+     * An index that can produce the set of tanks active at each break point.
      */
-    private NavigableMap<Double, Set<Tank>> m_activeTanks;
+    private ActiveTankIndex m_activeTanks;
 
     /**
      * A map that associates to each break point the total active base area at the break point.
      */
     private NavigableMap<Double, Double> m_activeBaseArea;
 
+    /**
+     * A map that associates to each break point of the active base area the number of active tanks, so that the area
+     * of a range whose tanks have all been removed can be set to exactly zero.
+     */
+    private NavigableMap<Double, Integer> m_activeCounts;
+
     /**
      * A one-to-one piecewise bidirectional function of heights and volumes.
      */
     private VolumeBreakPointBijection m_volumeBijection;
 
     /**
-     * Initializes the WaterSystem to the specified set of Tanks.
+     * A dynamic volume profile, maintained across addTank and removeTank so that a mutated system can answer volume
+     * queries without regenerating the bijection. Null until the system is first mutated.
+     */
+    private VolumeProfileTree m_volumeTree;
+
+    /**
+     * An interval index over the vertical extents of the tanks, patched in place by addTank and removeTank.
+     */
+    private TankIntervalTree m_intervalTree;
+
+    /**
+     * The tank edges in a single sorted array, from which the active base area is swept.
+     */
+    private EdgeSweep m_edgeSweep;
+
+    /**
+     * Immutable snapshots handed out by the snapshot accessors, each null until first requested. A snapshot is never
+     * patched; any change to the system discards it so that the next request builds a new one. They are volatile so
+     * that readers of a system whose structures are already generated may build them concurrently: every reader
+     * builds an equal snapshot from the same structures, and whichever is written last is published safely.
+     */
+    private volatile NavigableMap<Double, Set<Tank>> m_tanksByBottomSnapshot;
+
+    private volatile NavigableMap<Double, Set<Tank>> m_tanksByTopSnapshot;
+
+    private volatile NavigableMap<Double, Set<Tank>> m_activeTanksSnapshot;
+
+    private volatile NavigableMap<Double, Double> m_activeBaseAreaSnapshot;
+
+    /**
+     * The version of the system, advanced whenever the snapshots are discarded.
+     */
+    private long m_version;
+
+    /**
+     * An optional cache of tank level maps, or null if caching is disabled.
+     */
+    private TankLevelCache m_tankLevelCache;
+
+    /**
+     * Hit, rebuild and size counters for the cached structures.
+     */
+    private final WaterSystemMetrics m_metrics = new WaterSystemMetrics();
+
+    /**
+     * Initializes the WaterSystem to the specified set of Tanks.
+     *
+     * @param initialSystem The set of Tanks to represent the WaterSystem.
+     */
+    public WaterSystem(Set<Tank> initialSystem)
+    {
+        // Store the raw set
+        this.setTankSystem(initialSystem);
+    }
+
+    /**
+     * Initializes the WaterSystem to a store that has already been filled, such as by WaterSystemBuilder.
+     *
+     * @param tankStore The tanks, which this object takes ownership of.
+     * @param volumeBijection The volume profile of exactly those tanks, or null to generate it when first needed.
+     */
+    WaterSystem(TankStore tankStore, VolumeBreakPointBijection volumeBijection)
+    {
+        m_tankStore = tankStore;
+        m_volumeBijection = volumeBijection;
+        this.recordSizes();
+    }
+
+    /**
+     * Sets the system to the specified set of tanks.
+     *
+     * @param tankSystem The set of Tanks representing the WaterSystem.
+     */
+    public void setTankSystem(Set<Tank> tankSystem)
+    {
+        m_tankStore = new TankStore(tankSystem);
+
+        // Invalidate the cache
+        m_tanksByBottom = m_tanksByTop = null;
+        m_activeTanks = null;
+        m_activeBaseArea = null;
+        m_activeCounts = null;
+        m_volumeBijection = null;
+        m_volumeTree = null;
+        m_intervalTree = null;
+        m_edgeSweep = null;
+        this.invalidateSnapshots();
+        this.recordSizes();
+        InvalidationEvent.emit("setTankSystem", m_tankStore.size(), m_version);
+    }
+
+    /**
+     * Adds a single tank to the system. Any cached structures that have already been generated are patched in place
+     * over the height range of the tank, rather than being regenerated.
+     *
+     * @param tank The Tank to add.
+     * @return true if the system did not already contain the tank.
+     */
+    public boolean addTank(Tank tank)
+    {
+        if (m_tankStore.indexOf(tank) >= 0)
+        {
+            return false;
+        }
+
+        // Give the tank an index
+        int tankIndex = m_tankStore.add(tank);
+
+        // Patch the edge maps
+        if (null != m_tanksByBottom)
+        {
+            addToEdgeMap(m_tanksByBottom, tank.getBottom(), tankIndex);
+        }
+        if (null != m_tanksByTop)
+        {
+            addToEdgeMap(m_tanksByTop, tank.getTop(), tankIndex);
+        }
+
+        // Patch the active tanks and active base area over the range of the tank, splitting the area at any new break
+        // points
+        if (null != m_activeTanks)
+        {
+            m_activeTanks.addTank(tankIndex, tank.getBottom(), tank.getTop());
+        }
+        if (null != m_activeBaseArea)
+        {
+            splitActiveBaseArea(m_activeBaseArea, m_activeCounts, tank.getBottom());
+            splitActiveBaseArea(m_activeBaseArea, m_activeCounts, tank.getTop());
+            addToBaseArea(m_activeBaseArea, m_activeCounts, tank, tank.baseArea(), 1);
+        }
+
+        // Keep the dynamic profile current, and let it answer volume queries in place of the bijection
+        this.updateVolumeTree(tank, true);
+        m_volumeBijection = null;
+
+        // Patch the interval index
+        if (null != m_intervalTree)
+        {
+            m_intervalTree.add(tankIndex);
+            this.discardIntervalTreeIfUnbalanced();
+        }
+
+        // The edge sweep and the snapshots are static, so they are regenerated lazily
+        m_edgeSweep = null;
+        this.invalidateSnapshots();
+        this.recordSizes();
+        InvalidationEvent.emit("addTank", m_tankStore.size(), m_version);
+
+        return true;
+    }
+
+    /**
+     * Removes a single tank from the system. Any cached structures that have already been generated are patched in
+     * place over the height range of the tank, rather than being regenerated.
+     *
+     * @param tank The Tank to remove.
+     * @return true if the system contained the tank.
+     */
+    public boolean removeTank(Tank tank)
+    {
+        int tankIndex = m_tankStore.indexOf(tank);
+        if (tankIndex < 0)
+        {
+            return false;
+        }
+
+        // Patch the interval index while the store still holds the tank's edges, then free the tank's index
+        if (null != m_intervalTree)
+        {
+            m_intervalTree.remove(tankIndex);
+            this.discardIntervalTreeIfUnbalanced();
+        }
+        m_tankStore.remove(tank);
+
+        // Patch the edge maps
+        if (null != m_tanksByBottom)
+        {
+            removeFromEdgeMap(m_tanksByBottom, tank.getBottom(), tankIndex);
+        }
+        if (null != m_tanksByTop)
+        {
+            removeFromEdgeMap(m_tanksByTop, tank.getTop(), tankIndex);
+        }
+
+        // Patch the active tanks and active base area over the range of the tank
+        if (null != m_activeTanks)
+        {
+            m_activeTanks.removeTank(tankIndex, tank.getBottom(), tank.getTop());
+        }
+        if (null != m_activeBaseArea)
+        {
+            addToBaseArea(m_activeBaseArea, m_activeCounts, tank, -tank.baseArea(), -1);
+        }
+
+        // Keep the dynamic profile current, and let it answer volume queries in place of the bijection
+        this.updateVolumeTree(tank, false);
+        m_volumeBijection = null;
+
+        // Merge away the tank's break points if no other tank shares them
+        removeBreakPointIfUnused(tank.getBottom());
+        removeBreakPointIfUnused(tank.getTop());
+
+        // The edge sweep and the snapshots are static, so they are regenerated lazily
+        m_edgeSweep = null;
+        this.invalidateSnapshots();
+        this.recordSizes();
+        InvalidationEvent.emit("removeTank", m_tankStore.size(), m_version);
+
+        return true;
+    }
+
+    /**
+     * Generates every cached structure up front. Once this returns, queries only read the structures, so a system
+     * that is not mutated afterwards can be shared between threads once it has been safely published. The snapshots
+     * are left to be built on first request, which is safe from any thread and spares writers a full copy of the
+     * active tank sets.
+     */
+    void generateStructures()
+    {
+        this.fetchTanksByBottom();
+        this.fetchTanksByTop();
+        this.fetchActiveTanks();
+        this.fetchActiveBaseArea();
+        this.fetchVolumeProfile();
+        this.fetchIntervalTree();
+    }
+
+    /**
+     * Helper method to discard the immutable snapshots and advance the version of the system. Snapshots already handed
+     * out are unaffected.
+     */
+    private void invalidateSnapshots()
+    {
+        ++m_version;
+        m_tanksByBottomSnapshot = m_tanksByTopSnapshot = null;
+        m_activeTanksSnapshot = null;
+        m_activeBaseAreaSnapshot = null;
+    }
+
+    /**
+     * Get the hit, rebuild and size counters for the cached structures of this system.
+     *
+     * @return The metrics, which may be read from any thread.
+     */
+    public WaterSystemMetrics metrics()
+    {
+        return m_metrics;
+    }
+
+    /**
+     * Helper method to count a finished rebuild in the metrics and the flight recorder.
+     *
+     * @param rebuild The event begun when the rebuild started.
+     * @param layer The layer rebuilt.
+     */
+    private void rebuilt(RebuildEvent rebuild, WaterSystemMetrics.Layer layer)
+    {
+        m_metrics.rebuilt(layer, rebuild.startNanos());
+        this.recordSizes();
+        rebuild.finish(layer, m_tankStore.size(), m_metrics.getBreakPointCount());
+    }
+
+    /**
+     * Helper method to record the current sizes of the cached structures in the metrics.
+     */
+    private void recordSizes()
+    {
+        int breakPointCount = 0;
+        if (null != m_activeBaseArea)
+        {
+            breakPointCount = m_activeBaseArea.size();
+        }
+        else if (null != m_volumeBijection)
+        {
+            breakPointCount = m_volumeBijection.breakPointCount();
+        }
+
+        m_metrics.recordSizes(m_tankStore.size(), null == m_tanksByBottom ? 0 : m_tanksByBottom.size(),
+                null == m_tanksByTop ? 0 : m_tanksByTop.size(),
+                null == m_activeTanks ? 0 : m_activeTanks.checkpointCount(), breakPointCount);
+    }
+
+    /**
+     * Helper method to apply a tank change to the dynamic volume profile, or to generate the profile from the store on
+     * the first change.
+     *
+     * @param tank The Tank that was added or removed.
+     * @param added true if the tank was added, false if it was removed.
+     */
+    private void updateVolumeTree(Tank tank, boolean added)
+    {
+        // The store already reflects the change
+        if (null == m_volumeTree)
+        {
+            m_volumeTree = new VolumeProfileTree(m_tankStore);
+        }
+        else if (added)
+        {
+            m_volumeTree.addTank(tank);
+        }
+        else
+        {
+            m_volumeTree.removeTank(tank);
+        }
+    }
+
+    /**
+     * Helper method to remove a break point from the active base area once no tank edge lies on it. Must be called
+     * after the dynamic profile has been updated, since its edge counts decide whether the break point is still used.
+     *
+     * @param breakPoint The break point that may no longer be needed.
+     */
+    private void removeBreakPointIfUnused(double breakPoint)
+    {
+        // Nothing to merge if the active base area has not been generated
+        if (null == m_activeBaseArea)
+        {
+            return;
+        }
+
+        // The dynamic profile always exists after a change and counts the edges at each break point, so the edge maps
+        // need not be generated just to answer this
+        if (!m_volumeTree.hasBreakPoint(breakPoint))
+        {
+            m_activeBaseArea.remove(breakPoint);
+            m_activeCounts.remove(breakPoint);
+        }
+    }
+
+    /**
+     * Get a NavigableMap associating bottom edges with sets of tanks.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByBottom()
+    {
+        return this.materializeMap(this.fetchTanksByBottom());
+    }
+
+    /**
+     * Helper method to fetch or generate map.
+     *
+     * @return The desired Map.
+     */
+    private NavigableMap<Double, IntList> fetchTanksByBottom()
+    {
+        // If the cache is invalid, then regenerate the requested map
+        if (null == m_tanksByBottom)
+        {
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_tanksByBottom = generateTanksByEdge(m_tankStore, false);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.TANKS_BY_BOTTOM);
+        }
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.TANKS_BY_BOTTOM);
+        }
+        return m_tanksByBottom;
+    }
+
+    /**
+     * Get a NavigableMap associating top edges with sets of tanks.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByTop()
+    {
+        return this.materializeMap(this.fetchTanksByTop());
+    }
+
+    /**
+     * Helper method to fetch or generate map.
+     *
+     * @return The desired Map.
+     */
+    private NavigableMap<Double, IntList> fetchTanksByTop()
+    {
+        // If the cache is invalid, then regenerate the requested map
+        if (null == m_tanksByTop)
+        {
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_tanksByTop = generateTanksByEdge(m_tankStore, true);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.TANKS_BY_TOP);
+        }
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.TANKS_BY_TOP);
+        }
+        return m_tanksByTop;
+    }
+
+    /**
+     * Get a NavigableMap associating breakpoints to sets of active tanks.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Set<Tank>> activeTanks()
+    {
+        // Materializing produces new Sets, so no cloning is necessary
+        return this.fetchActiveTanks().materialize();
+    }
+
+    /**
+     * Get the set of tanks active at a height, that is, whose bottoms are at or below it and whose tops are above it.
+     *
+     * @param height The height at which to measure.
+     * @return The desired Set.
+     */
+    public Set<Tank> activeTanksAt(double height)
+    {
+        return this.fetchActiveTanks().activeAt(height);
+    }
+
+    /**
+     * Helper method to fetch or generate the index.
+     *
+     * @return The desired index.
+     */
+    private ActiveTankIndex fetchActiveTanks()
+    {
+        // If the cache is invalid, then regenerate the requested index
+        if (null == m_activeTanks)
+        {
+            // Call dependencies which can either return cached structures or regenerate them in turn
+            NavigableMap<Double, IntList> tanksByBottom = this.fetchTanksByBottom();
+            NavigableMap<Double, IntList> tanksByTop = this.fetchTanksByTop();
+
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_activeTanks = new ActiveTankIndex(m_tankStore, tanksByBottom, tanksByTop);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.ACTIVE_TANKS);
+        }
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.ACTIVE_TANKS);
+        }
+        return m_activeTanks;
+    }
+
+    /**
+     * Get a NavigableMap associating breakpoints to total active cross-section area.
+     *
+     * @return The desired Map.
+     */
+    public NavigableMap<Double, Double> activeBaseArea()
+    {
+        // Deep Cloning not necessary because Doubles are immutable
+        return new TreeMap<>(this.fetchActiveBaseArea());
+    }
+
+    /**
+     * Get an immutable snapshot of the map associating bottom edges with sets of tanks. The snapshot is cached until
+     * the system changes, so repeated calls return the same object without copying.
+     *
+     * @return The desired Map, which throws UnsupportedOperationException on any attempt to modify it or its Sets.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByBottomSnapshot()
+    {
+        // If the cache is invalid, then regenerate the requested snapshot. Read the field once, since it is volatile.
+        NavigableMap<Double, Set<Tank>> snapshot = m_tanksByBottomSnapshot;
+        if (null == snapshot)
+        {
+            snapshot = freeze(this.tanksByBottom());
+            m_tanksByBottomSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get an immutable snapshot of the map associating top edges with sets of tanks. The snapshot is cached until the
+     * system changes, so repeated calls return the same object without copying.
+     *
+     * @return The desired Map, which throws UnsupportedOperationException on any attempt to modify it or its Sets.
+     */
+    public NavigableMap<Double, Set<Tank>> tanksByTopSnapshot()
+    {
+        // If the cache is invalid, then regenerate the requested snapshot. Read the field once, since it is volatile.
+        NavigableMap<Double, Set<Tank>> snapshot = m_tanksByTopSnapshot;
+        if (null == snapshot)
+        {
+            snapshot = freeze(this.tanksByTop());
+            m_tanksByTopSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get an immutable snapshot of the map associating breakpoints to sets of active tanks. The snapshot is cached
+     * until the system changes, so repeated calls return the same object without copying.
+     *
+     * @return The desired Map, which throws UnsupportedOperationException on any attempt to modify it or its Sets.
+     */
+    public NavigableMap<Double, Set<Tank>> activeTanksSnapshot()
+    {
+        // If the cache is invalid, then regenerate the requested snapshot. Read the field once, since it is volatile.
+        NavigableMap<Double, Set<Tank>> snapshot = m_activeTanksSnapshot;
+        if (null == snapshot)
+        {
+            snapshot = freeze(this.activeTanks());
+            m_activeTanksSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get an immutable snapshot of the map associating breakpoints to total active cross-section area. The snapshot
+     * is cached until the system changes, so repeated calls return the same object without copying.
+     *
+     * @return The desired Map, which throws UnsupportedOperationException on any attempt to modify it.
+     */
+    public NavigableMap<Double, Double> activeBaseAreaSnapshot()
+    {
+        // If the cache is invalid, then regenerate the requested snapshot. Read the field once, since it is volatile.
+        NavigableMap<Double, Double> snapshot = m_activeBaseAreaSnapshot;
+        if (null == snapshot)
+        {
+            snapshot = Collections.unmodifiableNavigableMap(this.activeBaseArea());
+            m_activeBaseAreaSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Helper method to fetch or generate map.
+     *
+     * @return The desired Map.
+     */
+    private NavigableMap<Double, Double> fetchActiveBaseArea()
+    {
+        // If the cache is invalid, then regenerate the requested map
+        if (null == m_activeBaseArea)
+        {
+            // Call dependencies which can either return cached structures or regenerate them in turn
+            EdgeSweep edgeSweep = this.fetchEdgeSweep();
+
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_activeCounts = new TreeMap<>();
+            m_activeBaseArea = generateActiveBaseArea(edgeSweep, m_activeCounts);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.ACTIVE_BASE_AREA);
+        }
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.ACTIVE_BASE_AREA);
+        }
+        return m_activeBaseArea;
+    }
+
+    /**
+     * Helper method to fetch or generate the volume to height function. Once the system has been mutated by addTank or
+     * removeTank, the dynamic profile is used instead of regenerating the bijection.
+     *
+     * @return The object that maps height to volume and vice versa.
+     */
+    private VolumeProfile fetchVolumeProfile()
+    {
+        // The dynamic profile is always current once it exists
+        if (null == m_volumeBijection && null != m_volumeTree)
+        {
+            return m_volumeTree;
+        }
+
+        return this.fetchVolumeBijection();
+    }
+
+    /**
+     * Get a cursor over the height to volume function, for streams of queries that move slowly up or down. The cursor
+     * reads the current state of the system and does not reflect later changes.
+     *
+     * @return A new cursor at the bottom of the system.
+     */
+    public BijectionCursor cursor()
+    {
+        return new BijectionCursor(this.fetchVolumeBijection());
+    }
+
+    /**
+     * Get a simulation of the system filling and draining under a schedule of flow rates. The simulation reads the
+     * current state of the system and does not reflect later changes.
+     *
+     * @param initialVolume The volume of water at the start of the schedule.
+     * @param schedule The flow rates to apply.
+     * @return A new simulation, at the start of the schedule.
+     * @throws IllegalArgumentException if the initialVolume is negative or exceeds the maximum volume.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public FlowSimulation simulate(double initialVolume, FlowSchedule schedule)
+    {
+        return new FlowSimulation(this.fetchVolumeBijection(), this.tanksByBottomSnapshot(),
+                this.tanksByTopSnapshot(), initialVolume, schedule);
+    }
+
+    /**
+     * Writes a snapshot of the tank geometry and the volume profile to a file, which openSnapshot can map back in
+     * without recomputing anything.
+     *
+     * @param path The file to create or replace.
+     * @throws IOException if the file cannot be written.
+     * @throws IllegalArgumentException if a profile array of the snapshot would exceed 2 GB.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void writeSnapshot(Path path) throws IOException
+    {
+        VolumeBreakPointBijection volumeBijection = this.fetchVolumeBijection();
+        if (volumeBijection.isEmpty())
+        {
+            throw new NoSuchElementException("There are no tanks in the system.");
+        }
+
+        ProfileFile.write(path, m_tankStore, volumeBijection);
+    }
+
+    /**
+     * Maps a snapshot written by writeSnapshot read-only into memory. Queries are answered straight from the mapped
+     * pages, so opening is nearly instant whatever the size of the system, and processes that open the same file share
+     * its pages.
+     *
+     * @param path The file to map.
+     * @return A read-only system over the mapped snapshot.
+     * @throws IOException if the file cannot be mapped.
+     * @throws IllegalArgumentException if the file is not a snapshot of the current format, or is truncated.
+     */
+    public static OffHeapWaterSystem openSnapshot(Path path) throws IOException
+    {
+        return ProfileFile.open(path);
+    }
+
+    /**
+     * Helper method to fetch or generate the bijection, even once the dynamic profile has taken over.
+     *
+     * @return The object that maps height to volume and vice versa.
+     */
+    private VolumeBreakPointBijection fetchVolumeBijection()
+    {
+        // If the cache is invalid, then regenerate the requested object
+        if (null == m_volumeBijection)
+        {
+            // Call dependencies which can either return cached structures or regenerate them in turn
+            NavigableMap<Double, Double> activeBaseArea = this.fetchActiveBaseArea();
+
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_volumeBijection = new VolumeBreakPointBijection(activeBaseArea);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.VOLUME_BIJECTION);
+        }
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.VOLUME_BIJECTION);
+        }
+        return m_volumeBijection;
+    }
+
+    /**
+     * Generates the volume to height function on every core, ahead of the first query that needs it. The profile is
+     * built straight from the tank store, without the edge maps, so volume queries and the array forms of the tank
+     * level queries can be answered as soon as this returns.
+     */
+    public void generateVolumeProfileInParallel()
+    {
+        RebuildEvent rebuild = RebuildEvent.start();
+        TankStore tankStore = m_tankStore;
+        int[] tankIndices = tankStore.indices();
+        double[] edges = new double[2 * tankIndices.length];
+        double[] areaDeltas = new double[2 * tankIndices.length];
+
+        // Each tank's bottom adds its base area and its top removes it
+        for (int i = 0; i < tankIndices.length; ++i)
+        {
+            int tankIndex = tankIndices[i];
+            edges[2 * i] = tankStore.bottom(tankIndex);
+            areaDeltas[2 * i] = tankStore.baseArea(tankIndex);
+            edges[2 * i + 1] = tankStore.top(tankIndex);
+            areaDeltas[2 * i + 1] = -tankStore.baseArea(tankIndex);
+        }
+
+        m_volumeBijection = VolumeProfileBuilder.parallelBuild(edges, areaDeltas);
+        this.rebuilt(rebuild, WaterSystemMetrics.Layer.VOLUME_BIJECTION);
+    }
+
+    /**
+     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterHeight. waterHeight must be
+     * within the range of tanks.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public Map<Tank, Double> heightToTankLevel(Double waterHeight)
+    {
+        // Time the query, and record it if it is slow
+        SlowQueryEvent query = new SlowQueryEvent("heightToTankLevel");
+        try
+        {
+            if (null == m_tankLevelCache)
+            {
+                return this.generateTankLevelMap(waterHeight);
+            }
+
+            // Validate the height as given, then answer at the quantized height
+            VolumeProfile volumeProfile = this.fetchVolumeProfile();
+            volumeProfile.throwIfInvalidWaterHeight(waterHeight);
+            double quantizedHeight = clamp(m_tankLevelCache.quantize(waterHeight), volumeProfile.minHeight(),
+                    volumeProfile.maxHeight());
+
+            Map<Tank, Double> tankLevelMap = m_tankLevelCache.get(false, m_version, quantizedHeight);
+            if (null == tankLevelMap)
+            {
+                tankLevelMap = Collections.unmodifiableMap(this.generateTankLevelMap(quantizedHeight));
+                m_tankLevelCache.put(false, m_version, quantizedHeight, tankLevelMap);
+            }
+            return tankLevelMap;
+        }
+        finally
+        {
+            query.commit();
+        }
+    }
+
+    /**
+     * Generate a new Map associating Tanks to their filled height if the WaterSystem is at waterHeight.
+     *
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return The desired map.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    private Map<Tank, Double> generateTankLevelMap(double waterHeight)
+    {
+        // Get the map of tanks by bottom and by top
+        NavigableMap<Double, IntList> tanksByBottom = this.fetchTanksByBottom();
+        NavigableMap<Double, IntList> tanksByTop = this.fetchTanksByTop();
+
+        // Ensure validity
+        throwIfInvalidWaterHeight(waterHeight, tanksByBottom, tanksByTop);
+
+        // Initialize the map to be returned
+        Map<Tank, Double> tankLevelMap = new HashMap<>();
+
+        // Full tanks are filled to their height, partially filled tanks to waterHeight, and empty tanks not at all
+        for (Tank tank : this.fullTanks(waterHeight))
+        {
+            tankLevelMap.put(tank, tank.getTop() - tank.getBottom());
+        }
+        for (Tank tank : this.partiallyFilledTanks(waterHeight))
+        {
+            tankLevelMap.put(tank, waterHeight - tank.getBottom());
+        }
+        for (Tank tank : this.emptyTanks(waterHeight))
+        {
+            tankLevelMap.put(tank, 0.0);
+        }
+
+        return tankLevelMap;
+    }
+
+    /**
+     * Get the stable index of a tank. A tank keeps its index until it is removed or the system is reset with
+     * setTankSystem, and the index of a removed tank may be reused by a later one.
+     *
+     * @param tank The Tank to look up.
+     * @return The index of the tank, or -1 if it is not in the system.
+     */
+    public int tankIndex(Tank tank)
+    {
+        return m_tankStore.indexOf(tank);
+    }
+
+    /**
+     * Get the tank with a stable index.
+     *
+     * @param tankIndex An index below tankIndexLimit().
+     * @return The tank, or null if no tank has the index.
+     */
+    public Tank tankAt(int tankIndex)
+    {
+        return m_tankStore.tank(tankIndex);
+    }
+
+    /**
+     * Get the upper bound on stable tank indices, which is the length needed for an array keyed by tank index.
      *
-     * @param initialSystem The set of Tanks to represent the WaterSystem.
+     * @return One more than the highest tank index in use.
      */
-    public WaterSystem(Set<Tank> initialSystem)
+    public int tankIndexLimit()
     {
-        // Store the raw set
-        this.setTankSystem(initialSystem);
+        return m_tankStore.limit();
     }
 
     /**
-     * Sets the system to the specified set of tanks.
+     * Passes each tank and its filled height, if the WaterSystem is at waterHeight, to a consumer. No objects are
+     * allocated per call once the system's structures have been generated.
      *
-     * @param tankSystem The set of Tanks representing the WaterSystem.
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @param consumer The callback to receive each tank and its filled height.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
+     * @throws NoSuchElementException if there are no tanks in the system.
      */
-    public void setTankSystem(Set<Tank> tankSystem)
+    public void forEachTankLevel(double waterHeight, TankLevelConsumer consumer)
     {
-        m_tankSet = new HashSet<>(tankSystem);
+        // Ensure validity against the volume profile, which may already exist when the edge maps do not
+        this.fetchVolumeProfile().throwIfInvalidWaterHeight(waterHeight);
 
-        // Invalidate the cache
-        m_tanksByBottom = m_tanksByTop = m_activeTanks = null;
-        m_activeBaseArea = null;
-        m_volumeBijection = null;
+        TankStore tankStore = m_tankStore;
+        for (int i = 0; i < tankStore.limit(); ++i)
+        {
+            Tank tank = tankStore.tank(i);
+            if (null != tank)
+            {
+                consumer.accept(i, tank, filledHeight(tankStore, i, waterHeight));
+            }
+        }
     }
 
     /**
-     * Get a NavigableMap associating bottom edges with sets of tanks.
+     * Fills an array with the filled height of each tank if the WaterSystem is at waterHeight. The array is keyed by
+     * stable tank index, and indices with no tank are set to NaN. No objects are allocated per call once the system's
+     * structures have been generated.
      *
-     * @return The desired Map.
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @param tankLevels The array to fill. Must be at least tankIndexLimit() long.
+     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks, or if tankLevels is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
      */
-    public NavigableMap<Double, Set<Tank>> tanksByBottom()
+    public void heightToTankLevel(double waterHeight, double[] tankLevels)
     {
-        return deepCloneMap(this.fetchTanksByBottom());
+        // Ensure validity against the volume profile, which may already exist when the edge maps do not
+        this.fetchVolumeProfile().throwIfInvalidWaterHeight(waterHeight);
+
+        TankStore tankStore = m_tankStore;
+        if (tankLevels.length < tankStore.limit())
+        {
+            throw new IllegalArgumentException(String.format("The tankLevels array has only %d elements. Expected: %d",
+                    tankLevels.length, tankStore.limit()));
+        }
+
+        // Free indices have NaN edges, which carry through to the level
+        for (int i = 0; i < tankStore.limit(); ++i)
+        {
+            tankLevels[i] = filledHeight(tankStore, i, waterHeight);
+        }
     }
 
     /**
-     * Helper method to fetch or generate map.
+     * Fills an array with the filled height of each tank if the WaterSystem is at waterVolume. The array is keyed by
+     * stable tank index, and indices with no tank are set to NaN. No objects are allocated per call once the system's
+     * structures have been generated.
      *
-     * @return The desired Map.
+     * @param waterVolume The volume of the WaterSystem at which to measure.
+     * @param tankLevels The array to fill. Must be at least tankIndexLimit() long.
+     * @throws IllegalArgumentException if the waterVolume is outside the range of tanks, or if tankLevels is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
      */
-    private NavigableMap<Double, Set<Tank>> fetchTanksByBottom()
+    public void volumeToTankLevel(double waterVolume, double[] tankLevels)
     {
-        // If the cache is invalid, then regenerate the requested map
-        if (null == m_tanksByBottom)
-        {
-            m_tanksByBottom = generateTanksByEdge(m_tankSet, false);
-        }
-        return m_tanksByBottom;
+        this.heightToTankLevel(this.fetchVolumeProfile().getWaterHeight(waterVolume), tankLevels);
     }
 
     /**
-     * Get a NavigableMap associating top edges with sets of tanks.
+     * Get the filled height of a stored tank.
      *
-     * @return The desired Map.
+     * @param tankStore The store holding the tank.
+     * @param tankIndex The index of the tank.
+     * @param waterHeight The height of the water.
+     * @return The filled height, or NaN if no tank has the index.
      */
-    public NavigableMap<Double, Set<Tank>> tanksByTop()
+    private static double filledHeight(TankStore tankStore, int tankIndex, double waterHeight)
     {
-        return deepCloneMap(this.fetchTanksByTop());
+        // The tank is full if its top is below waterHeight, and empty if its bottom is above it. A free index has NaN
+        // edges, which Math.min and Math.max carry through.
+        return Math.max(Math.min(tankStore.top(tankIndex), waterHeight) - tankStore.bottom(tankIndex), 0.0);
     }
 
     /**
-     * Helper method to fetch or generate map.
+     * Get the tanks that are partially filled if the WaterSystem is at waterHeight, that is, whose bottoms are below
+     * waterHeight and whose tops are above it. Only the partially filled tanks are visited.
      *
-     * @return The desired Map.
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A new Collection of the partially filled tanks.
      */
-    private NavigableMap<Double, Set<Tank>> fetchTanksByTop()
+    public Collection<Tank> partiallyFilledTanks(double waterHeight)
     {
-        // If the cache is invalid, then regenerate the requested map
-        if (null == m_tanksByTop)
-        {
-            m_tanksByTop = generateTanksByEdge(m_tankSet, true);
-        }
-        return m_tanksByTop;
+        return this.fetchIntervalTree().partiallyFilled(waterHeight);
     }
 
     /**
-     * Get a NavigableMap associating breakpoints to sets of active tanks.
+     * Get the tanks that are full if the WaterSystem is at waterHeight, that is, whose tops are at or below
+     * waterHeight. The tanks are enumerated lazily from the system's own index, so the view is only
+     * valid until the system next changes, and must be copied to be kept any longer.
      *
-     * @return The desired Map.
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A read-only view of the full tanks.
      */
-    public NavigableMap<Double, Set<Tank>> activeTanks()
+    public Collection<Tank> fullTanks(double waterHeight)
     {
-        return deepCloneMap(this.fetchActiveTanks());
+        return new TankRangeView(m_tankStore, this.fetchTanksByTop().headMap(waterHeight, true).values());
     }
 
     /**
-     * Helper method to fetch or generate map.
+     * Get the tanks that are empty if the WaterSystem is at waterHeight, that is, whose bottoms are at or above
+     * waterHeight. The tanks are enumerated lazily from the system's own index, so the view is only
+     * valid until the system next changes, and must be copied to be kept any longer.
      *
-     * @return The desired Map.
+     * @param waterHeight The height of the WaterSystem at which to measure.
+     * @return A read-only view of the empty tanks.
      */
-    private NavigableMap<Double, Set<Tank>> fetchActiveTanks()
+    public Collection<Tank> emptyTanks(double waterHeight)
     {
-        // If the cache is invalid, then regenerate the requested map
-        if (null == m_activeTanks)
-        {
-            // Call dependencies which can either return cached structures or regenerate them in turn
-            m_activeTanks = generateActiveTanks(this.fetchTanksByBottom(), this.fetchTanksByTop());
-        }
-        return m_activeTanks;
+        return new TankRangeView(m_tankStore, this.fetchTanksByBottom().tailMap(waterHeight, true).values());
     }
 
     /**
-     * Get a NavigableMap associating breakpoints to total active cross-section area.
+     * Passes every tank edge of the system to a listener, in increasing order of height, along with the active base
+     * area and tank count above each break point. The edges are swept from one sorted array, which is generated on
+     * the first call and kept until the system changes.
      *
-     * @return The desired Map.
+     * @param listener The callback to receive the edges and break points.
      */
-    public NavigableMap<Double, Double> activeBaseArea()
+    public void sweep(SweepListener listener)
     {
-        // Deep Cloning not necessary because Doubles are immutable
-        return new TreeMap<>(this.fetchActiveBaseArea());
+        this.fetchEdgeSweep().sweep(listener);
     }
 
     /**
-     * Helper method to fetch or generate map.
+     * Helper method to fetch or generate the edge sweep.
      *
-     * @return The desired Map.
+     * @return The desired sweep.
      */
-    private NavigableMap<Double, Double> fetchActiveBaseArea()
+    private EdgeSweep fetchEdgeSweep()
     {
-        // If the cache is invalid, then regenerate the requested map
-        if (null == m_activeBaseArea)
+        // If the cache is invalid, then regenerate the requested sweep
+        if (null == m_edgeSweep)
         {
-            // Call dependency which can either return cached structure or regenerate it in turn
-            m_activeBaseArea = generateActiveBaseArea(this.fetchActiveTanks());
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_edgeSweep = new EdgeSweep(m_tankStore);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.EDGE_SWEEP);
         }
-        return m_activeBaseArea;
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.EDGE_SWEEP);
+        }
+        return m_edgeSweep;
     }
 
     /**
-     * Helper method to fetch or generate the volume to height bijection.
-     *
-     * @return The object that maps height to volume and vice versa.
+     * Helper method to discard the interval index once it has taken so many patches that it may be far from balanced,
+     * so that it is rebuilt on the next query.
      */
-    private VolumeBreakPointBijection fetchVolumeBijection()
+    private void discardIntervalTreeIfUnbalanced()
     {
-        // If the cache is invalid, then regenerate the requested object
-        if (null == m_volumeBijection)
+        if (m_intervalTree.needsRebuild())
         {
-            // Create the object
-            m_volumeBijection = new VolumeBreakPointBijection(this.fetchActiveBaseArea());
+            m_intervalTree = null;
         }
-        return m_volumeBijection;
     }
 
     /**
-     * Get a Map associating Tanks to their filled height if the WaterSystem is at waterHeight. waterHeight must be
-     * within the range of tanks.
+     * Helper method to fetch or generate the interval index.
      *
-     * @param waterHeight The height of the WaterSystem at which to measure.
-     * @return The desired map.
-     * @throws IllegalArgumentException if the waterHeight is outside the range of tanks.
-     * @throws NoSuchElementException if there are no tanks in the system.
+     * @return The desired index.
      */
-    public Map<Tank, Double> heightToTankLevel(Double waterHeight)
+    private TankIntervalTree fetchIntervalTree()
     {
-        // Get the map of tanks by bottom and by top
-        NavigableMap<Double, Set<Tank>> tanksByBottom = this.fetchTanksByBottom();
-        NavigableMap<Double, Set<Tank>> tanksByTop = this.fetchTanksByTop();
-
-        // Ensure validity
-        throwIfInvalidWaterHeight(waterHeight, tanksByBottom, tanksByTop);
-
-        // Initialize the map to be returned
-        Map<Tank, Double> tankLevelMap = new HashMap<>();
-
-        // Iterate through all sets of tanks
-        for (Set<Tank> tankSet : tanksByBottom.values())
+        // If the cache is invalid, then regenerate the requested index
+        if (null == m_intervalTree)
         {
-            // Put each tank in the tankLevelMap, associated with its filled height
-            // (top - bottom if full, waterHeight - bottom if active, 0 if empty)
-            for (Tank tank : tankSet)
-            {
-                // The tank is full if tank.getTop is below waterHeight
-                double filledHeight = Math.min(tank.getTop(), waterHeight) - tank.getBottom();
-
-                // The tank is empty if filledHeight is negative
-                tankLevelMap.put(tank, Math.max(filledHeight, 0));
-            }
+            RebuildEvent rebuild = RebuildEvent.start();
+            m_intervalTree = new TankIntervalTree(m_tankStore);
+            this.rebuilt(rebuild, WaterSystemMetrics.Layer.INTERVAL_TREE);
         }
-
-        return tankLevelMap;
+        else
+        {
+            m_metrics.hit(WaterSystemMetrics.Layer.INTERVAL_TREE);
+        }
+        return m_intervalTree;
     }
 
     /**
@@ -248,22 +1051,24 @@ public class WaterSystem
      */
     public Double heightToVolume(Double waterHeight)
     {
-        // Get the map of tanks by bottom and by top
-        NavigableMap<Double, Set<Tank>> tanksByBottom = this.fetchTanksByBottom();
-        NavigableMap<Double, Set<Tank>> tanksByTop = this.fetchTanksByTop();
-
-        // Ensure validity
-        throwIfInvalidWaterHeight(waterHeight, tanksByBottom, tanksByTop);
-
-        // Get the volume bijection
-        VolumeBreakPointBijection volumeBijection = this.fetchVolumeBijection();
+        // Time the query, and record it if it is slow
+        SlowQueryEvent query = new SlowQueryEvent("heightToVolume");
+        try
+        {
+            // Get the volume profile, which validates waterHeight against its own break points
+            VolumeProfile volumeProfile = this.fetchVolumeProfile();
 
-        return volumeBijection.getWaterVolume(waterHeight);
+            return volumeProfile.getWaterVolume(waterHeight);
+        }
+        finally
+        {
+            query.commit();
+        }
     }
 
-    private void throwIfInvalidWaterHeight(Double waterHeight,
-                                           NavigableMap<Double, Set<Tank>> tanksByBottom,
-                                           NavigableMap<Double, Set<Tank>> tanksByTop)
+    private void throwIfInvalidWaterHeight(double waterHeight,
+                                           NavigableMap<Double, IntList> tanksByBottom,
+                                           NavigableMap<Double, IntList> tanksByTop)
     {
         // Make sure waterHeight is legal
         if (waterHeight > tanksByTop.lastKey())
@@ -289,402 +1094,315 @@ public class WaterSystem
      */
     public Map<Tank, Double> volumeToTankLevel(Double waterVolume)
     {
-        // Get the volume bijection
-        VolumeBreakPointBijection volumeBijection = this.fetchVolumeBijection();
+        // Time the query, and record it if it is slow
+        SlowQueryEvent query = new SlowQueryEvent("volumeToTankLevel");
+        try
+        {
+            // Get the volume profile
+            VolumeProfile volumeProfile = this.fetchVolumeProfile();
 
-        double waterHeight = volumeBijection.getWaterHeight(waterVolume);
+            if (null == m_tankLevelCache)
+            {
+                return this.generateTankLevelMap(volumeProfile.getWaterHeight(waterVolume));
+            }
 
-        return heightToTankLevel(waterHeight);
+            // Validate the volume as given, then answer at the quantized volume
+            volumeProfile.throwIfInvalidWaterVolume(waterVolume);
+            double quantizedVolume = clamp(m_tankLevelCache.quantize(waterVolume), 0, volumeProfile.maxVolume());
+
+            Map<Tank, Double> tankLevelMap = m_tankLevelCache.get(true, m_version, quantizedVolume);
+            if (null == tankLevelMap)
+            {
+                double waterHeight = volumeProfile.getWaterHeight(quantizedVolume);
+                tankLevelMap = Collections.unmodifiableMap(this.generateTankLevelMap(waterHeight));
+                m_tankLevelCache.put(true, m_version, quantizedVolume, tankLevelMap);
+            }
+            return tankLevelMap;
+        }
+        finally
+        {
+            query.commit();
+        }
     }
 
     /**
-     * Deep clones a map from Double to Set of Tanks
+     * Caches the maps returned by heightToTankLevel and volumeToTankLevel, replacing any existing cache. While the
+     * cache is enabled, the returned maps are unmodifiable, and a query is answered at its height or volume rounded to
+     * the nearest multiple of the quantum. Any change to the system invalidates the cache.
      *
-     * @param originalMap The map to be cloned.
-     * @return A new map with the same mappings and cloned Sets as values
+     * @param capacity The maximum number of cached maps.
+     * @param quantum The step that queried heights and volumes are rounded to, or zero for exact values.
+     * @throws IllegalArgumentException if the capacity is not positive, or the quantum is negative or not finite.
      */
-    private static NavigableMap<Double, Set<Tank>> deepCloneMap(NavigableMap<Double, Set<Tank>> originalMap)
+    public void enableTankLevelCache(int capacity, double quantum)
     {
-        // Initialize the map to be returned
-        NavigableMap<Double, Set<Tank>> clonedMap = new TreeMap<>();
+        m_tankLevelCache = new TankLevelCache(capacity, quantum);
+    }
+
+    /**
+     * Stops caching tank level maps and discards the cache.
+     */
+    public void disableTankLevelCache()
+    {
+        m_tankLevelCache = null;
+    }
+
+    /**
+     * Get the cache of tank level maps, for its statistics.
+     *
+     * @return The cache, or null if caching is disabled.
+     */
+    public TankLevelCache tankLevelCache()
+    {
+        return m_tankLevelCache;
+    }
 
-        // Iterate through the entrySet of the originalMap
-        Set<Entry<Double, Set<Tank>>> originalSet = originalMap.entrySet();
+    /**
+     * Restricts a value to a range.
+     *
+     * @param value The value.
+     * @param minimum The bottom of the range.
+     * @param maximum The top of the range.
+     * @return The closest value within the range.
+     */
+    private static double clamp(double value, double minimum, double maximum)
+    {
+        return Math.min(Math.max(value, minimum), maximum);
+    }
 
-        // Copy the tank Set into a new HashSet and put in new map
-        for (Entry<Double, Set<Tank>> entry : originalSet)
+    /**
+     * Get the total volume of water in the system at each of the specified water heights. The heights are validated
+     * once for the whole batch, and sorted heights are converted in a single pass over the break points.
+     *
+     * @param waterHeights The heights of the WaterSystem at which to measure.
+     * @param waterVolumes The array to fill with the volume at each height. Must be at least as long as waterHeights.
+     * @throws IllegalArgumentException if any waterHeight is outside the range of tanks, or if waterVolumes is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void heightToVolume(double[] waterHeights, double[] waterVolumes)
+    {
+        // Time the query, and record it if it is slow
+        SlowQueryEvent query = new SlowQueryEvent("heightToVolume");
+        try
+        {
+            this.fetchVolumeProfile().getWaterVolumes(waterHeights, waterVolumes);
+        }
+        finally
         {
-            clonedMap.put(entry.getKey(), new HashSet<Tank>(entry.getValue()));
+            query.commit();
         }
+    }
 
-        return clonedMap;
+    /**
+     * Get the water height of the system at each of the specified water volumes. The volumes are validated once for
+     * the whole batch, and sorted volumes are converted in a single pass over the break points.
+     *
+     * @param waterVolumes The volumes of the WaterSystem at which to measure.
+     * @param waterHeights The array to fill with the height at each volume. Must be at least as long as waterVolumes.
+     * @throws IllegalArgumentException if any waterVolume is outside the range of tanks, or if waterHeights is too
+     *             short.
+     * @throws NoSuchElementException if there are no tanks in the system.
+     */
+    public void volumeToHeight(double[] waterVolumes, double[] waterHeights)
+    {
+        // Time the query, and record it if it is slow
+        SlowQueryEvent query = new SlowQueryEvent("volumeToHeight");
+        try
+        {
+            this.fetchVolumeProfile().getWaterHeights(waterVolumes, waterHeights);
+        }
+        finally
+        {
+            query.commit();
+        }
     }
 
     /**
-     * Generate a NavigableMap of breakpoints to sets of tanks. Breakpoints can either be the tops or bottoms.
+     * Resolves a map from Double to tank indices into a map from Double to Set of Tanks
      *
-     * @param tankSet The set of Tanks in the WaterSystem.
-     * @param top true if the Map should associate top edges with tanks, false if it should associate bottom edges.
-     * @return The desired Map.
+     * @param indexMap The map to be resolved.
+     * @return A new map with the same keys and new Sets of the indexed tanks as values
      */
-    private static NavigableMap<Double, Set<Tank>> generateTanksByEdge(Set<Tank> tankSet, boolean top)
+    private NavigableMap<Double, Set<Tank>> materializeMap(NavigableMap<Double, IntList> indexMap)
     {
         // Initialize the map to be returned
-        NavigableMap<Double, Set<Tank>> tanksByEdge = new TreeMap<>();
+        NavigableMap<Double, Set<Tank>> tankMap = new TreeMap<>();
 
-        // Add each tank to the map with its top or bottom height as the key
-        for (Tank tank : tankSet)
+        // Resolve each list of indices into a new HashSet and put in new map
+        for (Entry<Double, IntList> entry : indexMap.entrySet())
         {
-            double edge = top ? tank.getTop() : tank.getBottom();
-
-            // Create a new Set if the breakpoint is not yet recognized
-            if (!tanksByEdge.containsKey(edge))
+            IntList tankIndices = entry.getValue();
+            Set<Tank> tanks = new HashSet<>();
+            for (int i = 0; i < tankIndices.size(); ++i)
             {
-                tanksByEdge.put(edge, new HashSet<Tank>());
+                tanks.add(m_tankStore.tank(tankIndices.get(i)));
             }
-
-            // Add the Tank to the Set
-            tanksByEdge.get(edge).add(tank);
+            tankMap.put(entry.getKey(), tanks);
         }
 
-        return tanksByEdge;
+        return tankMap;
     }
 
     /**
-     * Generate a NavigableMap of breakpoints to sets of active tanks.
+     * Wraps a newly materialized map from Double to Set of Tanks so that neither it nor its Sets can be modified. The
+     * map must not be referenced elsewhere, so that the wrapper is effectively immutable.
      *
-     * @param tanksByBottom A NavigableMap of bottom edges to sets of tanks.
-     * @param tanksByTop A NavigableMap of top edges to sets of tanks.
-     * @return The desired Map.
+     * @param tankMap The map to be frozen.
+     * @return An unmodifiable view of the map with unmodifiable Sets as values
      */
-    private static NavigableMap<Double, Set<Tank>> generateActiveTanks(NavigableMap<Double, Set<Tank>> tanksByBottom,
-                                                                       NavigableMap<Double, Set<Tank>> tanksByTop)
+    private static NavigableMap<Double, Set<Tank>> freeze(NavigableMap<Double, Set<Tank>> tankMap)
     {
-        // Initialize the map to be returned
-        NavigableMap<Double, Set<Tank>> activeTanks = new TreeMap<>();
-
-        // Create a running Set of active tanks
-        Set<Tank> runningActiveTanks = new HashSet<>();
-
-        // Iterate through the two sets in parallel using a BreakPointIterator
-        BreakPointIterator slider = new BreakPointIterator(tanksByBottom.entrySet(), tanksByTop.entrySet());
-
-        while (slider.iterate())
+        // Replace each Set in place with an unmodifiable view of itself
+        for (Entry<Double, Set<Tank>> entry : tankMap.entrySet())
         {
-            // Activate and deactivate tanks as indicated by the sliding BreakPointIterator
-            runningActiveTanks.addAll(slider.toActivate());
-            runningActiveTanks.removeAll(slider.toDeactivate());
-
-            // Populate the map
-            activeTanks.put(slider.currentBreakPoint(), new HashSet<Tank>(runningActiveTanks));
+            entry.setValue(Collections.unmodifiableSet(entry.getValue()));
         }
 
-        return activeTanks;
+        return Collections.unmodifiableNavigableMap(tankMap);
     }
 
     /**
-     * Generate a NavigableMap of breakpoints to the total base area of the active tanks.
+     * Generate a NavigableMap of breakpoints to tank indices. Breakpoints can either be the tops or bottoms.
      *
-     * @param activeTanks A NavigableMap associating breakpoints to sets of active tanks.
+     * @param tankStore The store of Tanks in the WaterSystem.
+     * @param top true if the Map should associate top edges with tanks, false if it should associate bottom edges.
      * @return The desired Map.
      */
-    private static NavigableMap<Double, Double> generateActiveBaseArea(NavigableMap<Double, Set<Tank>> activeTanks)
+    private static NavigableMap<Double, IntList> generateTanksByEdge(TankStore tankStore, boolean top)
     {
         // Initialize the map to be returned
-        NavigableMap<Double, Double> activeBaseArea = new TreeMap<>();
+        NavigableMap<Double, IntList> tanksByEdge = new TreeMap<>();
 
-        // Iterate through the break points and sum the areas at each height
-        for (double height : activeTanks.navigableKeySet())
+        // Add each tank to the map with its top or bottom height as the key, reading the edges from the store's arrays
+        double[] edges = top ? tankStore.tops() : tankStore.bottoms();
+        for (int tankIndex : tankStore.indices())
         {
-
-            // Get active tanks at height
-            Set<Tank> tanks = activeTanks.get(height);
-
-            // Get the total base area
-            double totalArea = 0;
-            for (Tank tank : tanks)
-            {
-                totalArea += tank.baseArea();
-            }
-
-            // Create the entry for this break point
-            activeBaseArea.put(height, totalArea);
+            addToEdgeMap(tanksByEdge, edges[tankIndex], tankIndex);
         }
 
-        return activeBaseArea;
+        return tanksByEdge;
     }
 
     /**
-     * Encapsulates the one-to-one mapping of system volume to break point heights.
+     * Add a tank to the list associated with one of its edges.
      *
+     * @param tanksByEdge A NavigableMap of edges to tank indices.
+     * @param edge The top or bottom height of the tank.
+     * @param tankIndex The index of the Tank to add.
      */
-    private class VolumeBreakPointBijection
+    private static void addToEdgeMap(NavigableMap<Double, IntList> tanksByEdge, double edge, int tankIndex)
     {
-        /**
-         * A map that associates each break point to the total volume at the break point.
-         */
-        private NavigableMap<Double, Double> m_breakPointToVolume;
-
-        /**
-         * A map that associates the total volume at each break point to the height of the break point.
-         */
-        private NavigableMap<Double, Double> m_volumeToBreakPoint;
-
-        /**
-         * The activeBaseArea map used to initialize the VolumeBreakPointBijection
-         */
-        private NavigableMap<Double, Double> m_activeBaseArea;
-
-        public VolumeBreakPointBijection(NavigableMap<Double, Double> activeBaseArea)
-        {
-            // Initialize bijection mappings
-            m_breakPointToVolume = new TreeMap<>();
-            m_volumeToBreakPoint = new TreeMap<>();
-
-            // Clone the input and store
-            m_activeBaseArea = new TreeMap<>(activeBaseArea);
-
-            // Calculate bijection
-            this.initialize();
-        }
-
-        private void initialize()
+        // Create a new list if the breakpoint is not yet recognized
+        IntList tanks = tanksByEdge.get(edge);
+        if (null == tanks)
         {
-            // Keep track of the total volume from the bottom of the system
-            double runningTotalVolume = 0.0;
-
-            // Keep track of base area of the previous cross-section
-            double lastBaseArea = 0.0;
-
-            // Initial height doesn't matter, because the difference to the first height will end up being multiplied
-            // by initial lastBaseArea, which is 0.
-            double lastHeight = 0.0;
-
-            // Get the mappings of break points to active base areas
-            Set<Entry<Double, Double>> breakPointBaseAreaSet = m_activeBaseArea.entrySet();
-
-            for (Entry<Double, Double> breakPointBaseArea : breakPointBaseAreaSet)
-            {
-                double breakPoint = breakPointBaseArea.getKey();
-
-                // Use the current height difference and the base area of the last cross-section to determine volume
-                double crossSectionVolume = (breakPoint - lastHeight) * lastBaseArea;
-
-                // Add volume of cross-section to running total
-                runningTotalVolume += crossSectionVolume;
-
-                // Register the mapping in both maps
-                m_breakPointToVolume.put(breakPoint, runningTotalVolume);
-                m_volumeToBreakPoint.put(runningTotalVolume, breakPoint);
-
-                // Pass information on to the next iteration
-                lastHeight = breakPoint;
-                lastBaseArea = breakPointBaseArea.getValue();
-            }
+            tanks = new IntList();
+            tanksByEdge.put(edge, tanks);
         }
 
-        /**
-         * Gets the volume at the given height.
-         *
-         * @param waterHeight The given height.
-         * @return The volume.
-         */
-        public Double getWaterVolume(Double waterHeight)
-        {
-            // Get the volume at the last break point before or at waterHeight
-            double lastBreak = m_breakPointToVolume.floorKey(waterHeight);
-            double volumeAtLastBreak = m_breakPointToVolume.get(lastBreak);
-
-            // Get the base area from last break
-            double crossSectionArea = m_activeBaseArea.get(lastBreak);
-
-            // Get the volume of the cross section
-            double crossSectionVolume = crossSectionArea * (waterHeight - lastBreak);
+        // Add the index to the list
+        tanks.add(tankIndex);
+    }
 
-            return volumeAtLastBreak + crossSectionVolume;
-        }
+    /**
+     * Remove a tank from the list associated with one of its edges, dropping the edge once its list is empty.
+     *
+     * @param tanksByEdge A NavigableMap of edges to tank indices.
+     * @param edge The top or bottom height of the tank.
+     * @param tankIndex The index of the Tank to remove.
+     */
+    private static void removeFromEdgeMap(NavigableMap<Double, IntList> tanksByEdge, double edge, int tankIndex)
+    {
+        IntList tanks = tanksByEdge.get(edge);
+        tanks.remove(tankIndex);
 
-        /**
-         * Gets the height at the given volume.
-         *
-         * @param waterVolume The given volume.
-         * @return The height.
-         */
-        public Double getWaterHeight(Double waterVolume)
+        if (tanks.isEmpty())
         {
-            if (waterVolume < 0)
-            {
-                throw new IllegalArgumentException("The waterVolume should not be negative.");
-            }
-
-            if (waterVolume > m_volumeToBreakPoint.lastKey())
-            {
-                throw new IllegalArgumentException("The waterVolume should not exceed the maximum volume.");
-            }
-
-            // Get the height of the last break point before this volume
-            double volumeAtLastBreak = m_volumeToBreakPoint.floorKey(waterVolume);
-            double lastBreak = m_volumeToBreakPoint.get(volumeAtLastBreak);
-
-            // Get the base area from last break
-            double crossSectionArea = m_activeBaseArea.get(lastBreak);
-
-            // Get the volume of the current cross section by subtracting the total volume at the break point
-            double crossSectionVolume = waterVolume - volumeAtLastBreak;
-
-            // The water height is the last break point + the cross section height (volume / area)
-            return lastBreak + (crossSectionVolume / crossSectionArea);
+            tanksByEdge.remove(edge);
         }
     }
 
     /**
-     * Encapsulates the parallel iteration for two sets of breakpoint->tankset maps
+     * Ensure a break point exists in a map of active base areas, copying the area and the active count from the break
+     * point below it.
      *
+     * @param activeBaseArea A NavigableMap associating breakpoints to total active cross-section area.
+     * @param activeCounts A NavigableMap associating the same breakpoints to the number of active tanks.
+     * @param breakPoint The break point to insert.
      */
-    private static class BreakPointIterator
+    private static void splitActiveBaseArea(NavigableMap<Double, Double> activeBaseArea,
+            NavigableMap<Double, Integer> activeCounts, double breakPoint)
     {
-        /**
-         * Iterator for the tanksByBottom entrySet
-         */
-        private Iterator<Entry<Double, Set<Tank>>> m_bottoms;
-
-        /**
-         * Iterator for the tanksByTop entrySet
-         */
-        private Iterator<Entry<Double, Set<Tank>>> m_tops;
-
-        /**
-         * Current entry in the bottom set
-         */
-        private Entry<Double, Set<Tank>> m_currentBottom;
-
-        /**
-         * Current entry in the top set
-         */
-        private Entry<Double, Set<Tank>> m_currentTop;
-
-        /**
-         * Object to represent the empty set for purposes of activation and deactivation
-         */
-        private Set<Tank> m_emptySet;
-
-        /**
-         * Signal that the bottom is finished and we now need only advance the top
-         */
-        private boolean m_bottomFinished;
-
-        /**
-         * Instantiates the slider, and prepares it for its first iteration. Call iterate() to begin.
-         *
-         * @param bottomSet The set of entries from break points to tank bottoms
-         * @param topSet The set of entries from break points to tank tops
-         */
-        public BreakPointIterator(Set<Entry<Double, Set<Tank>>> bottomSet, Set<Entry<Double, Set<Tank>>> topSet)
+        if (!activeBaseArea.containsKey(breakPoint))
         {
-            m_bottoms = bottomSet.iterator();
-            m_tops = topSet.iterator();
-
-            m_bottomFinished = false;
-
-            m_emptySet = new HashSet<>();
-
-            // Initialize current pointers to minimum possible value
-            m_currentBottom = m_currentTop = new SimpleEntry<>(Double.NEGATIVE_INFINITY, m_emptySet);
+            // Nothing is active below the lowest break point
+            Entry<Double, Double> below = activeBaseArea.floorEntry(breakPoint);
+            activeBaseArea.put(breakPoint, null == below ? 0.0 : below.getValue());
+            activeCounts.put(breakPoint, null == below ? 0 : activeCounts.get(below.getKey()));
         }
+    }
 
-        /**
-         * Get the set of tanks to activate at the current breakpoint.
-         *
-         * @return The set of tanks whose bottoms are at this breakpoint. May be empty.
-         */
-        public Set<Tank> toActivate()
+    /**
+     * Add an area and a tank count to every break point of an active base area map within the height range of a tank.
+     * Wherever the count falls to zero the area is set to exactly zero, discarding the rounding residue of the
+     * subtractions.
+     *
+     * @param activeBaseArea A NavigableMap associating breakpoints to total active cross-section area.
+     * @param activeCounts A NavigableMap associating the same breakpoints to the number of active tanks.
+     * @param tank The Tank whose range is affected. Its edges must already be break points.
+     * @param area The area to add, negative to subtract.
+     * @param count The number of tanks to add, negative to subtract.
+     */
+    private static void addToBaseArea(NavigableMap<Double, Double> activeBaseArea,
+            NavigableMap<Double, Integer> activeCounts, Tank tank, double area, int count)
+    {
+        // Both maps have the same keys, so their ranges can be walked in step
+        Iterator<Entry<Double, Integer>> counts = activeCounts.subMap(tank.getBottom(), true, tank.getTop(), false)
+                .entrySet().iterator();
+        for (Entry<Double, Double> entry : activeBaseArea.subMap(tank.getBottom(), true, tank.getTop(), false)
+                .entrySet())
         {
-            // We activate the tanks whose bottoms are at the current break point
-            if (m_currentBottom.getKey() == this.currentBreakPoint())
-            {
-                return m_currentBottom.getValue();
-            }
-            else
-            {
-                // If there are no tanks whose bottoms are at the current break point, no activation occurs
-                return m_emptySet;
-            }
+            Entry<Double, Integer> countEntry = counts.next();
+            countEntry.setValue(countEntry.getValue() + count);
+            entry.setValue(0 == countEntry.getValue() ? 0.0 : entry.getValue() + area);
         }
+    }
 
-        /**
-         * Get the set of tanks to deactivate at the current breakpoint.
-         *
-         * @return The set of tanks whose tops are at this breakpoint. May be empty.
-         */
-        public Set<Tank> toDeactivate()
-        {
-            // We deactivate the tanks whose tops are at the current break point
-            if (m_currentTop.getKey() == this.currentBreakPoint())
-            {
-                return m_currentTop.getValue();
-            }
-            else
-            {
-                // If there are no tanks whose tops are at the current break point, no deactivation occurs
-                return m_emptySet;
-            }
-        }
+    /**
+     * Generate a NavigableMap of breakpoints to the total base area of the active tanks.
+     *
+     * @param edgeSweep The sorted edges of the Tanks in the WaterSystem.
+     * @param activeCounts An empty map to fill with the number of active tanks at each break point.
+     * @return The desired Map.
+     */
+    private static NavigableMap<Double, Double> generateActiveBaseArea(EdgeSweep edgeSweep,
+            final NavigableMap<Double, Integer> activeCounts)
+    {
+        // Initialize the map to be returned
+        final NavigableMap<Double, Double> activeBaseArea = new TreeMap<>();
 
-        /**
-         * Get the current breakpoint.
-         *
-         * @return The breakpoint being currently considered. Will be NEGATIVE_INFINITY if iteration has not begun.
-         */
-        public double currentBreakPoint()
+        // Create the entry for each break point as the sweep passes it
+        edgeSweep.sweep(new SweepListener()
         {
-            // The top is now the current break point if we are out of bottoms
-            if (m_bottomFinished)
-            {
-                return m_currentTop.getKey();
-            }
-            else
+            @Override
+            public void tankActivated(double height, int tankIndex, Tank tank)
             {
-                // Otherwise, whichever is lower is the one we are currently considering
-                return Math.min(m_currentBottom.getKey(), m_currentTop.getKey());
             }
-        }
 
-        /**
-         * Advances to the next break point.
-         *
-         * @return false if there is no next break point.
-         */
-        public boolean iterate()
-        {
-            // There is no next break point if both iterators are exhausted
-            if (!m_bottoms.hasNext() && !m_tops.hasNext())
+            @Override
+            public void tankDeactivated(double height, int tankIndex, Tank tank)
             {
-                return false;
             }
 
-            // Get the current break point
-            double breakPoint = this.currentBreakPoint();
-
-            // Whichever current entry is at the current break point should be advanced
-            if (m_currentTop.getKey() == breakPoint)
+            @Override
+            public void breakPoint(double height, double runningArea, int runningCount)
             {
-                m_currentTop = m_tops.next();
-            }
-            if (m_currentBottom.getKey() == breakPoint)
-            {
-                // Only advance the bottom if it is not done
-                if (m_bottoms.hasNext())
-                {
-                    m_currentBottom = m_bottoms.next();
-                }
-                else
-                {
-                    // Signal that the bottom is exhausted, and we need to only advance the tops from now on
-                    m_bottomFinished = true;
-                }
+                activeBaseArea.put(height, runningArea);
+                activeCounts.put(height, runningCount);
             }
+        });
 
-            return true;
-        }
+        return activeBaseArea;
     }
 }
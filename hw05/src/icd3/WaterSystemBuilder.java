@@ -0,0 +1,218 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Accumulates tanks one record at a time, for building a WaterSystem or an OffHeapWaterSystem without first
+ * constructing a Set of Tanks. Each record is validated, packed off the heap in a TankBuffer, and turned into its two
+ * edge events in the same call, so the volume profile is ready to build as soon as the last record is added and the
+ * tanks never have to be read a second time. The heap holds only the edge events, a height and an area change per
+ * edge.
+ *
+ * Records are not deduplicated. A builder holds at most (Integer.MAX_VALUE - 8) / 2 tanks, as many as the longest
+ * array of edges.
+ *
+ * @author ian
+ *
+ */
+public class WaterSystemBuilder implements TankSink
+{
+    /**
+     * The initial number of tanks the builder has room for.
+     */
+    private static final int s_initialCapacity = 1024;
+
+    /**
+     * The maximum number of tanks, two edges per tank in the longest array the heap can allocate.
+     */
+    private static final int s_maxCapacity = (Integer.MAX_VALUE - 8) / 2;
+
+    /**
+     * The tanks added so far, packed off the heap. The buffer allocates its segments as it fills, so it is never copied.
+     */
+    private final TankBuffer m_tanks;
+
+    /**
+     * The height of each edge: the bottom of tank i at 2i and its top at 2i + 1.
+     */
+    private double[] m_edges;
+
+    /**
+     * The change in active base area at each edge.
+     */
+    private double[] m_areaDeltas;
+
+    /**
+     * Initializes an empty builder.
+     */
+    public WaterSystemBuilder()
+    {
+        m_tanks = TankBuffer.allocateDirect(s_maxCapacity);
+        m_edges = new double[2 * s_initialCapacity];
+        m_areaDeltas = new double[2 * s_initialCapacity];
+    }
+
+    @Override
+    public WaterSystemBuilder add(double[] bottomLeft, double[] topRight)
+    {
+        // Enforce parameter validity, exactly as a Tank would
+        Tank.throwIfInvalid(bottomLeft, topRight);
+
+        if (2 * m_tanks.size() == m_edges.length)
+        {
+            this.grow();
+        }
+        int tankIndex = m_tanks.add(bottomLeft, topRight);
+
+        // The bottom adds the base area and the top removes it
+        double baseArea = (topRight[0] - bottomLeft[0]) * (topRight[1] - bottomLeft[1]);
+        m_edges[2 * tankIndex] = bottomLeft[2];
+        m_areaDeltas[2 * tankIndex] = baseArea;
+        m_edges[2 * tankIndex + 1] = topRight[2];
+        m_areaDeltas[2 * tankIndex + 1] = -baseArea;
+
+        return this;
+    }
+
+    /**
+     * Adds a tank.
+     *
+     * @param tank The Tank to add.
+     * @return This builder.
+     * @throws IllegalStateException if the builder is full.
+     */
+    public WaterSystemBuilder add(Tank tank)
+    {
+        double[] bottomLeft = new double[3];
+        double[] topRight = new double[3];
+        for (int axis = 0; axis < 3; ++axis)
+        {
+            bottomLeft[axis] = tank.getMinimum(axis);
+            topRight[axis] = tank.getMaximum(axis);
+        }
+        return this.add(bottomLeft, topRight);
+    }
+
+    /**
+     * Get the number of tanks added.
+     *
+     * @return The number of tanks.
+     */
+    public int size()
+    {
+        return m_tanks.size();
+    }
+
+    /**
+     * Builds a read-only system over the tanks added so far, with its volume profile already generated from the
+     * accumulated edges. The tanks stay off the heap. Later additions do not affect the system.
+     *
+     * @return The new system.
+     */
+    public OffHeapWaterSystem buildOffHeap()
+    {
+        // Hand the system a read-only view that ends at the tanks added so far, so later additions cannot reach it
+        return new OffHeapWaterSystem(m_tanks.readOnlyView(), this.buildVolumeProfile());
+    }
+
+    /**
+     * Builds a mutable system over the tanks added so far. Each tank is created on the heap once, straight into the
+     * system's own store. If no tank was added twice, the volume profile is taken from the accumulated edges rather
+     * than generated on the first query.
+     *
+     * @return The new system.
+     */
+    public WaterSystem build()
+    {
+        final TankBuffer tanks = m_tanks;
+        TankStore tankStore = new TankStore(new Iterable<Tank>()
+        {
+            @Override
+            public Iterator<Tank> iterator()
+            {
+                return new TankIterator(tanks);
+            }
+        });
+
+        // Duplicates were counted twice in the edges, so only a system without them can use the accumulated profile
+        VolumeBreakPointBijection volumeBijection = null;
+        if (tankStore.size() == tanks.size())
+        {
+            volumeBijection = this.buildVolumeProfile();
+        }
+        return new WaterSystem(tankStore, volumeBijection);
+    }
+
+    /**
+     * Builds the volume profile from the accumulated edges.
+     *
+     * @return The desired bijection.
+     */
+    private VolumeBreakPointBijection buildVolumeProfile()
+    {
+        int edgeCount = 2 * m_tanks.size();
+        return VolumeProfileBuilder.build(Arrays.copyOf(m_edges, edgeCount), Arrays.copyOf(m_areaDeltas, edgeCount));
+    }
+
+    /**
+     * Doubles the room for edges.
+     *
+     * @throws IllegalStateException if the builder is already at its maximum capacity.
+     */
+    private void grow()
+    {
+        if (m_edges.length == 2 * s_maxCapacity)
+        {
+            throw new IllegalStateException(String.format("The WaterSystemBuilder is full at %d tanks.",
+                    s_maxCapacity));
+        }
+
+        int capacity = (int) Math.min(m_edges.length, (long) s_maxCapacity);
+        m_edges = Arrays.copyOf(m_edges, 2 * capacity);
+        m_areaDeltas = Arrays.copyOf(m_areaDeltas, 2 * capacity);
+    }
+
+    /**
+     * An iterator that recreates each tank in a buffer in turn.
+     *
+     */
+    private static class TankIterator implements Iterator<Tank>
+    {
+        private final TankBuffer m_tanks;
+
+        private int m_next;
+
+        public TankIterator(TankBuffer tanks)
+        {
+            m_tanks = tanks;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return m_next < m_tanks.size();
+        }
+
+        @Override
+        public Tank next()
+        {
+            if (!this.hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return m_tanks.tank(m_next++);
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters for the lazily generated layers of a WaterSystem: how often each layer is fetched from the cache, how often
+ * it is rebuilt, and how long the rebuilds take, along with the sizes of the structures. A hit costs one LongAdder
+ * increment and a rebuild two clock reads, so the metrics are always on.
+ *
+ * Rebuild times are exclusive of any layers the rebuild depends on, which are counted as their own rebuilds. Each
+ * layer keeps a histogram of rebuild times in powers of two: bucket i counts rebuilds that took at least 2^(i-1) and
+ * less than 2^i nanoseconds. The counters may be read from any thread, including over JMX once registered.
+ *
+ * @author ian
+ *
+ */
+public class WaterSystemMetrics implements WaterSystemMetricsMXBean
+{
+    /**
+     * The cached layers of a WaterSystem.
+     */
+    public enum Layer
+    {
+        TANKS_BY_BOTTOM, TANKS_BY_TOP, ACTIVE_TANKS, ACTIVE_BASE_AREA, VOLUME_BIJECTION, EDGE_SWEEP, INTERVAL_TREE
+    }
+
+    /**
+     * The number of histogram buckets per layer, enough for any rebuild time in nanoseconds.
+     */
+    private static final int s_bucketCount = 64;
+
+    private final LongAdder[] m_hitCounts;
+
+    private final LongAdder[] m_rebuildCounts;
+
+    private final AtomicLongArray m_rebuildNanos;
+
+    /**
+     * The histogram buckets of every layer, one layer after another.
+     */
+    private final AtomicLongArray m_histograms;
+
+    private volatile int m_tankCount;
+
+    private volatile int m_bottomEdgeCount;
+
+    private volatile int m_topEdgeCount;
+
+    private volatile int m_checkpointCount;
+
+    private volatile int m_breakPointCount;
+
+    /**
+     * Initializes every counter to zero.
+     */
+    WaterSystemMetrics()
+    {
+        int layerCount = Layer.values().length;
+
+        m_hitCounts = new LongAdder[layerCount];
+        m_rebuildCounts = new LongAdder[layerCount];
+        for (int i = 0; i < layerCount; ++i)
+        {
+            m_hitCounts[i] = new LongAdder();
+            m_rebuildCounts[i] = new LongAdder();
+        }
+        m_rebuildNanos = new AtomicLongArray(layerCount);
+        m_histograms = new AtomicLongArray(layerCount * s_bucketCount);
+    }
+
+    /**
+     * Counts a fetch that found the layer already generated.
+     *
+     * @param layer The layer fetched.
+     */
+    void hit(Layer layer)
+    {
+        m_hitCounts[layer.ordinal()].increment();
+    }
+
+    /**
+     * Counts a rebuild of a layer that has just finished.
+     *
+     * @param layer The layer rebuilt.
+     * @param startNanos The value of System.nanoTime() when the rebuild started.
+     */
+    void rebuilt(Layer layer, long startNanos)
+    {
+        long nanos = Math.max(System.nanoTime() - startNanos, 0);
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(nanos), s_bucketCount - 1);
+
+        m_rebuildCounts[layer.ordinal()].increment();
+        m_rebuildNanos.addAndGet(layer.ordinal(), nanos);
+        m_histograms.incrementAndGet(layer.ordinal() * s_bucketCount + bucket);
+    }
+
+    /**
+     * Records the current sizes of the structures. A structure that has not been generated has size zero.
+     *
+     * @param tankCount The number of tanks.
+     * @param bottomEdgeCount The number of distinct bottom edges.
+     * @param topEdgeCount The number of distinct top edges.
+     * @param checkpointCount The number of active sets retained by the active tank index.
+     * @param breakPointCount The number of break points in the volume profile.
+     */
+    void recordSizes(int tankCount, int bottomEdgeCount, int topEdgeCount, int checkpointCount, int breakPointCount)
+    {
+        m_tankCount = tankCount;
+        m_bottomEdgeCount = bottomEdgeCount;
+        m_topEdgeCount = topEdgeCount;
+        m_checkpointCount = checkpointCount;
+        m_breakPointCount = breakPointCount;
+    }
+
+    /**
+     * Get the number of fetches of a layer that found it already generated.
+     *
+     * @param layer The layer.
+     * @return The hit count.
+     */
+    public long hitCount(Layer layer)
+    {
+        return m_hitCounts[layer.ordinal()].sum();
+    }
+
+    /**
+     * Get the number of times a layer has been rebuilt.
+     *
+     * @param layer The layer.
+     * @return The rebuild count.
+     */
+    public long rebuildCount(Layer layer)
+    {
+        return m_rebuildCounts[layer.ordinal()].sum();
+    }
+
+    /**
+     * Get the total time spent rebuilding a layer.
+     *
+     * @param layer The layer.
+     * @return The total in nanoseconds.
+     */
+    public long rebuildNanos(Layer layer)
+    {
+        return m_rebuildNanos.get(layer.ordinal());
+    }
+
+    /**
+     * Get the histogram of rebuild times of a layer.
+     *
+     * @param layer The layer.
+     * @return A new array, in which element i counts rebuilds that took at least 2^(i-1) and less than 2^i
+     *         nanoseconds.
+     */
+    public long[] rebuildHistogram(Layer layer)
+    {
+        long[] histogram = new long[s_bucketCount];
+        for (int bucket = 0; bucket < s_bucketCount; ++bucket)
+        {
+            histogram[bucket] = m_histograms.get(layer.ordinal() * s_bucketCount + bucket);
+        }
+        return histogram;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server.
+     *
+     * @param name The object name to register under, such as "icd3:type=WaterSystem,name=plant".
+     * @return The registered name.
+     * @throws JMException if the name is malformed or already registered.
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(this, new ObjectName(name)).getObjectName();
+    }
+
+    @Override
+    public String[] getLayers()
+    {
+        Layer[] layers = Layer.values();
+        String[] names = new String[layers.length];
+        for (int i = 0; i < layers.length; ++i)
+        {
+            names[i] = layers[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public long[] getHitCounts()
+    {
+        long[] counts = new long[m_hitCounts.length];
+        for (int i = 0; i < counts.length; ++i)
+        {
+            counts[i] = m_hitCounts[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public long[] getRebuildCounts()
+    {
+        long[] counts = new long[m_rebuildCounts.length];
+        for (int i = 0; i < counts.length; ++i)
+        {
+            counts[i] = m_rebuildCounts[i].sum();
+        }
+        return counts;
+    }
+
+    @Override
+    public long[] getRebuildNanos()
+    {
+        long[] nanos = new long[m_rebuildNanos.length()];
+        for (int i = 0; i < nanos.length; ++i)
+        {
+            nanos[i] = m_rebuildNanos.get(i);
+        }
+        return nanos;
+    }
+
+    @Override
+    public long[][] getRebuildHistograms()
+    {
+        Layer[] layers = Layer.values();
+        long[][] histograms = new long[layers.length][];
+        for (int i = 0; i < layers.length; ++i)
+        {
+            histograms[i] = this.rebuildHistogram(layers[i]);
+        }
+        return histograms;
+    }
+
+    @Override
+    public int getTankCount()
+    {
+        return m_tankCount;
+    }
+
+    @Override
+    public int getBottomEdgeCount()
+    {
+        return m_bottomEdgeCount;
+    }
+
+    @Override
+    public int getTopEdgeCount()
+    {
+        return m_topEdgeCount;
+    }
+
+    @Override
+    public int getCheckpointCount()
+    {
+        return m_checkpointCount;
+    }
+
+    @Override
+    public int getBreakPointCount()
+    {
+        return m_breakPointCount;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+/**
+ * The management interface of WaterSystemMetrics, as seen over JMX. Each per-layer array is in the order of
+ * getLayers().
+ *
+ * @author ian
+ *
+ */
+public interface WaterSystemMetricsMXBean
+{
+    String[] getLayers();
+
+    long[] getHitCounts();
+
+    long[] getRebuildCounts();
+
+    long[] getRebuildNanos();
+
+    long[][] getRebuildHistograms();
+
+    int getTankCount();
+
+    int getBottomEdgeCount();
+
+    int getTopEdgeCount();
+
+    int getCheckpointCount();
+
+    int getBreakPointCount();
+}
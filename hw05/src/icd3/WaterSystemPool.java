@@ -0,0 +1,493 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A registry of many independent WaterSystems, such as one per tank farm, that are queried together in batches. Each
+ * batch asks every system one question, and the systems are split into ranges that run as work-stealing tasks on a
+ * ForkJoinPool, so thousands of small systems keep every core busy.
+ *
+ * Each system is built the first time a batch needs it, or ahead of time by buildAll. Building generates every cached
+ * structure, after which the system is only read, so built systems are queried without locking and batches may run
+ * from several threads at once. A system whose build fails is marked FAILED and fails every batch that reaches it.
+ *
+ * The pool counts its batches, the system queries they hold, and the time spent in them, to report throughput.
+ *
+ * @author ian
+ *
+ */
+public class WaterSystemPool
+{
+    /**
+     * The build state of a registered system.
+     */
+    public enum BuildState
+    {
+        PENDING, BUILDING, BUILT, FAILED
+    }
+
+    /**
+     * The largest number of systems handled by one task without splitting.
+     */
+    private static final int s_systemsPerTask = 16;
+
+    private final ForkJoinPool m_pool;
+
+    /**
+     * The registered systems, in registration order. Replaced rather than mutated, so a batch sees a fixed set.
+     */
+    private volatile Entry[] m_entries = new Entry[0];
+
+    /**
+     * The index of each registered system by name. Only accessed while holding this pool's lock.
+     */
+    private final Map<String, Integer> m_indices = new HashMap<>();
+
+    private final LongAdder m_batchCount = new LongAdder();
+
+    private final LongAdder m_systemQueryCount = new LongAdder();
+
+    private final LongAdder m_batchNanos = new LongAdder();
+
+    /**
+     * Initializes an empty pool that runs its batches on the common fork-join pool.
+     */
+    public WaterSystemPool()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Initializes an empty pool.
+     *
+     * @param pool The fork-join pool to run the batches on.
+     */
+    public WaterSystemPool(ForkJoinPool pool)
+    {
+        m_pool = pool;
+    }
+
+    /**
+     * Registers a new system. It is built when first needed.
+     *
+     * @param name The unique name of the system.
+     * @param tanks The set of Tanks to represent the system.
+     * @return The index of the system in every batch.
+     * @throws IllegalArgumentException if the name is already registered.
+     */
+    public synchronized int register(String name, Set<Tank> tanks)
+    {
+        if (m_indices.containsKey(name))
+        {
+            throw new IllegalArgumentException(String.format("A system named %s is already registered.", name));
+        }
+
+        Entry[] entries = Arrays.copyOf(m_entries, m_entries.length + 1);
+        entries[entries.length - 1] = new Entry(name, new WaterSystem(tanks));
+        m_indices.put(name, entries.length - 1);
+        m_entries = entries;
+        return entries.length - 1;
+    }
+
+    /**
+     * Get the index of a registered system.
+     *
+     * @param name The name of the system.
+     * @return The index, or -1 if no system has that name.
+     */
+    public synchronized int indexOf(String name)
+    {
+        Integer systemIndex = m_indices.get(name);
+        return null == systemIndex ? -1 : systemIndex;
+    }
+
+    /**
+     * Get the number of registered systems.
+     *
+     * @return The number of systems.
+     */
+    public int size()
+    {
+        return m_entries.length;
+    }
+
+    /**
+     * Get the name of a registered system.
+     *
+     * @param systemIndex The index of the system.
+     * @return The name.
+     */
+    public String name(int systemIndex)
+    {
+        return m_entries[systemIndex].m_name;
+    }
+
+    /**
+     * Get the build state of a registered system.
+     *
+     * @param systemIndex The index of the system.
+     * @return The state.
+     */
+    public BuildState buildState(int systemIndex)
+    {
+        return m_entries[systemIndex].m_buildState;
+    }
+
+    /**
+     * Get the number of registered systems in a build state.
+     *
+     * @param buildState The state.
+     * @return The number of systems in that state.
+     */
+    public int buildStateCount(BuildState buildState)
+    {
+        int count = 0;
+        for (Entry entry : m_entries)
+        {
+            if (entry.m_buildState == buildState)
+            {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds every system that has not been built, in parallel. A system that fails to build is marked FAILED rather
+     * than failing the others.
+     */
+    public void buildAll()
+    {
+        final Entry[] entries = m_entries;
+        this.forEachSystem(entries.length, new SystemBody()
+        {
+            @Override
+            public void compute(int systemIndex)
+            {
+                entries[systemIndex].build();
+            }
+        });
+    }
+
+    /**
+     * Get the total volume of water across the systems, each at its own height.
+     *
+     * @param waterHeights The height of each system, by index.
+     * @return The sum of the volumes.
+     * @throws IllegalArgumentException if waterHeights is shorter than the number of systems, or if any height is
+     *             outside the range of tanks of its system.
+     * @throws IllegalStateException if a system failed to build.
+     */
+    public double totalVolume(double[] waterHeights)
+    {
+        // Any volumes beyond the systems stay zero
+        double[] waterVolumes = new double[waterHeights.length];
+        this.heightToVolume(waterHeights, waterVolumes);
+
+        double totalVolume = 0;
+        for (double waterVolume : waterVolumes)
+        {
+            totalVolume += waterVolume;
+        }
+        return totalVolume;
+    }
+
+    /**
+     * Get the volume of water in each system, each at its own height.
+     *
+     * @param waterHeights The height of each system, by index.
+     * @param waterVolumes The array to fill with the volume of each system, by index.
+     * @throws IllegalArgumentException if either array is shorter than the number of systems, or if any height is
+     *             outside the range of tanks of its system.
+     * @throws IllegalStateException if a system failed to build.
+     */
+    public void heightToVolume(final double[] waterHeights, final double[] waterVolumes)
+    {
+        final Entry[] entries = m_entries;
+        throwIfTooShort("waterHeights", waterHeights.length, entries.length);
+        throwIfTooShort("waterVolumes", waterVolumes.length, entries.length);
+
+        this.runBatch(entries.length, new SystemBody()
+        {
+            @Override
+            public void compute(int systemIndex)
+            {
+                Entry entry = entries[systemIndex];
+                try
+                {
+                    waterVolumes[systemIndex] = entry.fetchSystem().heightToVolume(waterHeights[systemIndex]);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException(String.format("System %s: %s", entry.m_name, e.getMessage()),
+                            e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the filled height of every tank in each system, every system holding the same volume.
+     *
+     * @param waterVolume The volume of water in each system.
+     * @return A map associating each tank to its filled height for each system, by index.
+     * @throws IllegalArgumentException if any system cannot hold the waterVolume.
+     * @throws IllegalStateException if a system failed to build.
+     */
+    public List<Map<Tank, Double>> volumeToTankLevel(final double waterVolume)
+    {
+        final Entry[] entries = m_entries;
+        // Each task sets only its own positions, and the batch's join publishes them
+        final List<Map<Tank, Double>> tankLevels = new ArrayList<>(Collections.<Map<Tank, Double>> nCopies(
+                entries.length, null));
+
+        this.runBatch(entries.length, new SystemBody()
+        {
+            @Override
+            public void compute(int systemIndex)
+            {
+                Entry entry = entries[systemIndex];
+                try
+                {
+                    tankLevels.set(systemIndex, entry.fetchSystem().volumeToTankLevel(waterVolume));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    throw new IllegalArgumentException(String.format("System %s: %s", entry.m_name, e.getMessage()),
+                            e);
+                }
+            }
+        });
+
+        return tankLevels;
+    }
+
+    /**
+     * Get the number of batches run.
+     *
+     * @return The batch count.
+     */
+    public long batchCount()
+    {
+        return m_batchCount.sum();
+    }
+
+    /**
+     * Get the number of system queries answered, one per system per batch.
+     *
+     * @return The system query count.
+     */
+    public long systemQueryCount()
+    {
+        return m_systemQueryCount.sum();
+    }
+
+    /**
+     * Get the aggregate throughput of the batches run so far. Batches run from several threads at once overlap, so
+     * their combined throughput may exceed this.
+     *
+     * @return The system queries answered per second of batch time, or 0 if no batch has run.
+     */
+    public double systemQueriesPerSecond()
+    {
+        long nanos = m_batchNanos.sum();
+        return 0 == nanos ? 0 : m_systemQueryCount.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Runs a batch query over every system, counting it toward the throughput.
+     *
+     * @param systemCount The number of systems in the batch.
+     * @param body The query of a single system.
+     */
+    private void runBatch(int systemCount, SystemBody body)
+    {
+        long startNanos = System.nanoTime();
+        this.forEachSystem(systemCount, body);
+
+        m_batchNanos.add(System.nanoTime() - startNanos);
+        m_systemQueryCount.add(systemCount);
+        m_batchCount.increment();
+    }
+
+    /**
+     * Runs a body once for each system on the fork-join pool, and waits for every system to finish. If any system
+     * throws, the remaining systems are skipped and the first exception is rethrown here as it was thrown.
+     *
+     * @param systemCount The number of systems.
+     * @param body The work to do for each system.
+     */
+    private void forEachSystem(int systemCount, SystemBody body)
+    {
+        if (0 == systemCount)
+        {
+            return;
+        }
+
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        m_pool.invoke(new SystemTask(body, 0, systemCount, failure));
+        if (failure.get() != null)
+        {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Throws an exception if an array cannot hold a value for every system.
+     *
+     * @param name The name of the array.
+     * @param length The length of the array.
+     * @param systemCount The number of systems.
+     */
+    private static void throwIfTooShort(String name, int length, int systemCount)
+    {
+        if (length < systemCount)
+        {
+            throw new IllegalArgumentException(String.format("The %s array of length %d cannot hold %d systems.", name,
+                    length, systemCount));
+        }
+    }
+
+    /**
+     * A registered system and its build state.
+     *
+     */
+    private static class Entry
+    {
+        private final String m_name;
+
+        private final WaterSystem m_system;
+
+        private volatile BuildState m_buildState = BuildState.PENDING;
+
+        /**
+         * The reason the build failed, if it did.
+         */
+        private RuntimeException m_buildFailure;
+
+        public Entry(String name, WaterSystem system)
+        {
+            m_name = name;
+            m_system = system;
+        }
+
+        /**
+         * Builds the system if it has not been built. Only one thread builds it; any other waits for the build.
+         */
+        public synchronized void build()
+        {
+            if (m_buildState != BuildState.PENDING)
+            {
+                return;
+            }
+
+            m_buildState = BuildState.BUILDING;
+            try
+            {
+                m_system.generateStructures();
+                m_buildState = BuildState.BUILT;
+            }
+            catch (RuntimeException e)
+            {
+                m_buildFailure = e;
+                m_buildState = BuildState.FAILED;
+            }
+        }
+
+        /**
+         * Get the system, building it first if needed.
+         *
+         * @return The built system, safe to read from any thread.
+         * @throws IllegalStateException if the build failed.
+         */
+        public WaterSystem fetchSystem()
+        {
+            // The volatile read publishes everything the build wrote
+            if (m_buildState != BuildState.BUILT)
+            {
+                this.build();
+            }
+            if (m_buildState == BuildState.FAILED)
+            {
+                throw new IllegalStateException(String.format("The system %s failed to build.", m_name),
+                        m_buildFailure);
+            }
+            return m_system;
+        }
+    }
+
+    /**
+     * The work to do for a single system.
+     *
+     */
+    private interface SystemBody
+    {
+        void compute(int systemIndex);
+    }
+
+    /**
+     * A task that runs a body for a range of systems, splitting the range in half until it is small.
+     *
+     */
+    private static class SystemTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final SystemBody m_body;
+
+        private final int m_from;
+
+        private final int m_to;
+
+        /**
+         * The first exception thrown by any system of the batch.
+         */
+        private final AtomicReference<RuntimeException> m_failure;
+
+        public SystemTask(SystemBody body, int from, int to, AtomicReference<RuntimeException> failure)
+        {
+            m_body = body;
+            m_from = from;
+            m_to = to;
+            m_failure = failure;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (m_to - m_from <= s_systemsPerTask)
+            {
+                for (int systemIndex = m_from; systemIndex < m_to && null == m_failure.get(); ++systemIndex)
+                {
+                    try
+                    {
+                        m_body.compute(systemIndex);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        m_failure.compareAndSet(null, e);
+                    }
+                }
+                return;
+            }
+
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new SystemTask(m_body, m_from, middle, m_failure),
+                    new SystemTask(m_body, middle, m_to, m_failure));
+        }
+    }
+}
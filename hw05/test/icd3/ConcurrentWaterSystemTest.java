@@ -0,0 +1,92 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static icd3.TankFixtures.s_tankD;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class ConcurrentWaterSystemTest
+{
+    /**
+     * Test method for {@link icd3.ConcurrentWaterSystem#updateTanks(java.util.Collection, java.util.Collection)}.
+     */
+    @Test
+    public void testUpdateTanks()
+    {
+        ConcurrentWaterSystem system = new ConcurrentWaterSystem(new HashSet<>(Arrays.asList(s_tankA, s_tankB,
+                s_tankC)));
+        assertTrue(system.heightToVolume(16.0) == 69.0);
+
+        assertTrue(system.addTank(s_tankD));
+        assertFalse(system.addTank(s_tankD));
+        assertTrue(system.heightToVolume(23.0) == 131.0);
+        assertTrue(system.tanksByBottom() == system.tanksByBottom());
+
+        assertTrue(system.updateTanks(Arrays.asList(s_tankA), Arrays.asList(s_tankC, s_tankD)));
+        assertTrue(system.heightToVolume(18.0) == 75.0);
+        assertTrue(system.volumeToTankLevel(75.0).size() == 2);
+    }
+
+    /**
+     * Test method for {@link icd3.ConcurrentWaterSystem#heightToVolume(java.lang.Double)}.
+     */
+    @Test
+    public void testConcurrentReads() throws InterruptedException
+    {
+        final ConcurrentWaterSystem system = new ConcurrentWaterSystem(exampleTanks());
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicBoolean done = new AtomicBoolean();
+
+        // Readers only ever see the system with or without tank D, which differ in volume at the top of tank C
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; ++i)
+        {
+            readers[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    while (!done.get())
+                    {
+                        double volume = system.heightToVolume(21.0);
+                        if (volume != 115.0 && volume != 99.0)
+                        {
+                            failed.set(true);
+                        }
+                    }
+                }
+            };
+            readers[i].start();
+        }
+
+        for (int i = 0; i < 200; ++i)
+        {
+            system.removeTank(s_tankD);
+            system.addTank(s_tankD);
+        }
+        done.set(true);
+
+        for (Thread reader : readers)
+        {
+            reader.join();
+        }
+        assertFalse(failed.get());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.isClose;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class FlowSimulationTest
+{
+    private static WaterSystem s_testSystem;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        // Create the test case example from the assignment
+        s_testSystem = new WaterSystem(exampleTanks());
+    }
+
+    /**
+     * Test method for {@link icd3.FlowSimulation#next()}.
+     */
+    @Test
+    public void testFillAndDrain()
+    {
+        // Fill at 10 until t=20, then drain at 5 until t=30
+        FlowSchedule schedule = new FlowSchedule(new double[] { 0, 20 }, new double[] { 10, -5 }, 30);
+        FlowSimulation simulation = s_testSystem.simulate(0.0, schedule);
+
+        List<FlowEvent> breakPoints = new ArrayList<>();
+        FlowEvent last = null;
+        while (simulation.hasNext())
+        {
+            last = simulation.next();
+            if (last.getType() == FlowEvent.Type.BREAK_POINT)
+            {
+                breakPoints.add(last);
+            }
+            else if (last.getType() == FlowEvent.Type.TANK_FULL && last.getTank().equals(s_tankA))
+            {
+                assertTrue(isClose(last.getTime(), 5.0));
+            }
+            else if (last.getType() == FlowEvent.Type.SYSTEM_FULL)
+            {
+                assertTrue(isClose(last.getTime(), 13.1));
+            }
+            else if (last.getType() == FlowEvent.Type.TANK_STARTED_DRAINING)
+            {
+                assertTrue(last.getTank().equals(s_tankC) || last.getTank().equals(s_tankB));
+            }
+        }
+
+        // Rising through every break point above the bottom, then falling back through three
+        double[] times = { 3, 5, 6, 8.7, 9.1, 11.5, 13.1, 23.2, 28, 28.8 };
+        double[] heights = { 11, 13, 15, 18, 19, 21, 23, 21, 19, 18 };
+        assertTrue(breakPoints.size() == times.length);
+        for (int i = 0; i < times.length; ++i)
+        {
+            assertTrue(isClose(breakPoints.get(i).getTime(), times[i]));
+            assertTrue(breakPoints.get(i).getWaterHeight() == heights[i]);
+        }
+
+        // The schedule ends partway down the cross section above 15
+        assertTrue(last.getType() == FlowEvent.Type.END);
+        assertTrue(last.getTime() == 30.0);
+        assertTrue(isClose(last.getWaterVolume(), 81.0));
+        assertTrue(isClose(last.getWaterHeight(), 15.0 + 21.0 / 9.0));
+        assertFalse(simulation.hasNext());
+    }
+
+    /**
+     * Test method for {@link icd3.FlowSimulation#next()}.
+     */
+    @Test
+    public void testDrainToEmpty()
+    {
+        FlowSchedule schedule = new FlowSchedule(new double[] { 0 }, new double[] { -10 }, 10);
+        FlowSimulation simulation = s_testSystem.simulate(40.0, schedule);
+
+        FlowEvent event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.RATE_CHANGED);
+
+        // Down through 11, where B is drained, to the bottom of A
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.BREAK_POINT);
+        assertTrue(isClose(event.getTime(), 1.0));
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.TANK_EMPTY && event.getTank().equals(s_tankB));
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.BREAK_POINT);
+        assertTrue(isClose(event.getTime(), 4.0));
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.TANK_EMPTY && event.getTank().equals(s_tankA));
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.SYSTEM_EMPTY);
+        event = simulation.next();
+        assertTrue(event.getType() == FlowEvent.Type.END);
+        assertTrue(event.getWaterVolume() == 0.0);
+    }
+
+    /**
+     * Test method for {@link icd3.FlowSchedule#FlowSchedule(double[], double[], double)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testScheduleOutOfOrder()
+    {
+        new FlowSchedule(new double[] { 0, 5, 5 }, new double[] { 1, 2, 3 }, 10);
+    }
+}
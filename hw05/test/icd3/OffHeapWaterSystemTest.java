@@ -0,0 +1,291 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static icd3.TankFixtures.s_tankD;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class OffHeapWaterSystemTest
+{
+    private static OffHeapWaterSystem s_testSystem;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        // Create the test case example from the assignment
+        TankBuffer tanks = TankBuffer.allocateDirect(4);
+        tanks.add(s_tankA);
+        tanks.add(s_tankB);
+        tanks.add(s_tankC);
+        tanks.add(s_tankD);
+
+        s_testSystem = new OffHeapWaterSystem(tanks);
+    }
+
+    /**
+     * Test method for {@link icd3.TankBuffer#tank(int)}.
+     */
+    @Test
+    public void testTankBuffer()
+    {
+        TankBuffer tanks = TankBuffer.allocateDirect(1);
+        tanks.add(s_tankC);
+        assertTrue(tanks.tank(0).equals(s_tankC));
+        assertTrue(tanks.bottom(0) == 15.0);
+        assertTrue(tanks.top(0) == 21.0);
+        assertTrue(tanks.baseArea(0) == 4.0);
+    }
+
+    /**
+     * Test method for {@link icd3.TankBuffer#add(Tank)}.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testTankBufferFull()
+    {
+        TankBuffer tanks = TankBuffer.allocateDirect(1);
+        tanks.add(s_tankA);
+        tanks.add(s_tankB);
+    }
+
+    /**
+     * Test method for {@link icd3.TankBuffer#map(Path)}.
+     */
+    @Test
+    public void testMappedFile() throws IOException
+    {
+        Path file = Files.createTempFile("tanks", ".bin");
+        try
+        {
+            TankBuffer.write(file, Arrays.asList(s_tankA, s_tankB, s_tankC, s_tankD));
+            TankBuffer tanks = TankBuffer.map(file);
+            assertTrue(tanks.size() == 4);
+            assertTrue(tanks.tank(3).equals(s_tankD));
+
+            OffHeapWaterSystem system = new OffHeapWaterSystem(tanks);
+            assertTrue(system.heightToVolume(16.0) == 69.0);
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.TankBuffer#map(FileChannel, long, int, int)}, with segments of two tanks and a
+     * section that starts part way into the file.
+     */
+    @Test
+    public void testMappedFileSegments() throws IOException
+    {
+        Path file = Files.createTempFile("tanks", ".bin");
+        try
+        {
+            TankBuffer.write(file, Arrays.asList(s_tankA, s_tankA, s_tankB, s_tankC, s_tankD));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+            {
+                // Skip the first copy of A, leaving the last segment with one tank
+                TankBuffer tanks = TankBuffer.map(channel, TankBuffer.s_bytesPerTank, 4, 1);
+                assertTrue(tanks.size() == 4);
+                assertTrue(tanks.tank(0).equals(s_tankA) && tanks.tank(1).equals(s_tankB));
+                assertTrue(tanks.tank(2).equals(s_tankC) && tanks.tank(3).equals(s_tankD));
+                assertTrue(tanks.bottom(3) == 19.0 && tanks.top(2) == 21.0 && tanks.baseArea(1) == 5.0);
+
+                OffHeapWaterSystem system = new OffHeapWaterSystem(tanks);
+                assertTrue(system.heightToVolume(16.0) == 69.0);
+            }
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#writeSnapshot(Path)} and {@link icd3.WaterSystem#openSnapshot(Path)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSnapshot() throws IOException
+    {
+        WaterSystem system = new WaterSystem(exampleTanks());
+        Path file = Files.createTempFile("profile", ".bin");
+        try
+        {
+            system.writeSnapshot(file);
+            OffHeapWaterSystem snapshot = WaterSystem.openSnapshot(file);
+
+            // The mapped profile answers exactly as the system it was written from
+            for (double height = 5.0; height <= 23.0; height += 0.25)
+            {
+                assertTrue(snapshot.heightToVolume(height).equals(system.heightToVolume(height)));
+            }
+            double[] volumes = { 0.0, 30.0, 40.0, 69.0, 100.0, 131.0 };
+            double[] heights = new double[volumes.length];
+            double[] expectedHeights = new double[volumes.length];
+            snapshot.volumeToHeight(volumes, heights);
+            system.volumeToHeight(volumes, expectedHeights);
+            assertTrue(Arrays.equals(heights, expectedHeights));
+            assertTrue(snapshot.volumeToTankLevel(69.0).equals(system.volumeToTankLevel(69.0)));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#writeSnapshot(Path)}, replacing a snapshot that is still mapped.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSnapshotReplace() throws IOException
+    {
+        Path directory = Files.createTempDirectory("profiles");
+        Path file = directory.resolve("profile.bin");
+        try
+        {
+            new WaterSystem(exampleTanks()).writeSnapshot(file);
+            OffHeapWaterSystem oldSnapshot = WaterSystem.openSnapshot(file);
+            new WaterSystem(new HashSet<>(Arrays.asList(s_tankA, s_tankB))).writeSnapshot(file);
+            OffHeapWaterSystem newSnapshot = WaterSystem.openSnapshot(file);
+
+            // The old mapping still reads the old file, and no temporary file is left beside the new one
+            assertTrue(oldSnapshot.heightToVolume(16.0) == 69.0);
+            assertTrue(oldSnapshot.volumeToTankLevel(69.0).get(s_tankC) == 1.0);
+            assertTrue(newSnapshot.heightToVolume(16.0) == 65.0);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+            {
+                for (Path entry : files)
+                {
+                    assertTrue(entry.equals(file));
+                }
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#openSnapshot(Path)}.
+     *
+     * @throws IOException
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testSnapshotWrongFormat() throws IOException
+    {
+        Path file = Files.createTempFile("tanks", ".bin");
+        try
+        {
+            // A file of packed tanks is not a snapshot
+            TankBuffer.write(file, Arrays.asList(s_tankA, s_tankB, s_tankC, s_tankD));
+            WaterSystem.openSnapshot(file);
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.OffHeapWaterSystem#generateVolumeProfile(TankBuffer, int)}, checking that a profile
+     * spilled through an ExternalProfileBuilder matches one built on the heap.
+     */
+    @Test
+    public void testSpilledVolumeProfile()
+    {
+        TankBuffer tanks = TankBuffer.allocateDirect();
+        for (Tank tank : new TankNetworkGenerator(293, 2000, 4, 0.0, TankNetworkGenerator.HeightDistribution.UNIFORM))
+        {
+            tanks.add(tank);
+        }
+        VolumeProfile heapProfile = OffHeapWaterSystem.generateVolumeProfile(tanks, tanks.size());
+        VolumeProfile spilledProfile = OffHeapWaterSystem.generateVolumeProfile(tanks, 0);
+
+        assertTrue(spilledProfile instanceof MappedVolumeProfile);
+        assertTrue(spilledProfile.minHeight() == heapProfile.minHeight());
+        assertTrue(spilledProfile.maxHeight() == heapProfile.maxHeight());
+        double tolerance = 1e-9 * heapProfile.maxVolume();
+        for (int i = 0; i <= 100; ++i)
+        {
+            double height = heapProfile.minHeight() + (heapProfile.maxHeight() - heapProfile.minHeight()) * i / 100;
+            assertTrue(Math.abs(spilledProfile.getWaterVolume(height) - heapProfile.getWaterVolume(height))
+                    <= tolerance);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.OffHeapWaterSystem#heightToVolume(java.lang.Double)}.
+     */
+    @Test
+    public void testHeightToVolume()
+    {
+        assertTrue(s_testSystem.heightToVolume(5.0) == 0.0);
+        assertTrue(s_testSystem.heightToVolume(12.0) == 40.0);
+        assertTrue(s_testSystem.heightToVolume(16.0) == 69.0);
+        assertTrue(s_testSystem.heightToVolume(23.0) == 131.0);
+    }
+
+    /**
+     * Test method for {@link icd3.OffHeapWaterSystem#heightToVolume(java.lang.Double)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeightToVolumeHighHeight()
+    {
+        s_testSystem.heightToVolume(24.0);
+    }
+
+    /**
+     * Test method for {@link icd3.OffHeapWaterSystem#volumeToTankLevel(java.lang.Double)}.
+     */
+    @Test
+    public void testVolumeToTankLevel()
+    {
+        Map<Tank, Double> tanks = s_testSystem.volumeToTankLevel(69.0);
+        assertTrue(tanks.get(s_tankA) == 8.0);
+        assertTrue(tanks.get(s_tankB) == 5.0);
+        assertTrue(tanks.get(s_tankC) == 1.0);
+        assertTrue(tanks.get(s_tankD) == 0.0);
+    }
+
+    /**
+     * Test method for {@link icd3.OffHeapWaterSystem#volumeToTankLevel(double, double[])}.
+     */
+    @Test
+    public void testTankLevelArray()
+    {
+        double[] levels = new double[4];
+        s_testSystem.volumeToTankLevel(69.0, levels);
+        assertTrue(Arrays.equals(levels, new double[] { 8.0, 5.0, 1.0, 0.0 }));
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.isClose;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class ShardedWaterSystemTest
+{
+    private static WaterSystem s_expectedSystem;
+    private static ShardedWaterSystem s_testSystem;
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        // Three shards of six units each split every tank but A
+        Set<Tank> tanks = exampleTanks();
+        s_expectedSystem = new WaterSystem(tanks);
+        s_testSystem = ShardedWaterSystem.start(tanks, 3, "-Xmx32m");
+    }
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        s_testSystem.close();
+    }
+
+    /**
+     * Test method for {@link icd3.ShardedWaterSystem#heightToVolume(java.lang.Double)}.
+     */
+    @Test
+    public void testHeightToVolume()
+    {
+        assertTrue(s_testSystem.heightToVolume(5.0) == 0.0);
+        assertTrue(s_testSystem.heightToVolume(12.0) == 40.0);
+        assertTrue(s_testSystem.heightToVolume(16.0) == 69.0);
+        assertTrue(s_testSystem.heightToVolume(23.0) == 131.0);
+    }
+
+    /**
+     * Test method for {@link icd3.ShardedWaterSystem#heightToVolume(java.lang.Double)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeightToVolumeHighHeight()
+    {
+        s_testSystem.heightToVolume(24.0);
+    }
+
+    /**
+     * Test method for {@link icd3.ShardedWaterSystem#volumeToHeight(double[], double[])}.
+     */
+    @Test
+    public void testVolumeToHeight()
+    {
+        // Include the volumes at the shard boundaries, 11 and 17
+        double[] volumes = { 0.0, 30.0, 40.0, 69.0, 80.0, 100.0, 131.0 };
+        double[] heights = new double[volumes.length];
+        double[] expectedHeights = new double[volumes.length];
+        s_testSystem.volumeToHeight(volumes, heights);
+        s_expectedSystem.volumeToHeight(volumes, expectedHeights);
+        for (int i = 0; i < volumes.length; ++i)
+        {
+            assertTrue(isClose(heights[i], expectedHeights[i]));
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.ShardedWaterSystem#heightToVolume(double[], double[])}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testGeneratedSystem() throws IOException
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(41, 2000, 6, 0.5,
+                TankNetworkGenerator.HeightDistribution.EXPONENTIAL);
+        Set<Tank> tanks = generator.toSet();
+        WaterSystem expected = new WaterSystem(tanks);
+
+        try (ShardedWaterSystem system = ShardedWaterSystem.start(generator, 4, "-Xmx32m"))
+        {
+            double[] heights = new double[200];
+            for (int i = 0; i < heights.length; ++i)
+            {
+                heights[i] = generator.span() * i / heights.length;
+            }
+            heights[0] = expected.tanksByBottom().firstKey();
+
+            double[] volumes = new double[heights.length];
+            double[] expectedVolumes = new double[heights.length];
+            system.heightToVolume(heights, volumes);
+            expected.heightToVolume(heights, expectedVolumes);
+            for (int i = 0; i < heights.length; ++i)
+            {
+                assertTrue(isClose(volumes[i], expectedVolumes[i]));
+            }
+
+            // Round trip through the volumes
+            double[] roundTrip = new double[heights.length];
+            system.volumeToHeight(volumes, roundTrip);
+            for (int i = 0; i < heights.length; ++i)
+            {
+                assertTrue(isClose(roundTrip[i], heights[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Fixtures shared by the tests: the four tanks of the test case example from the assignment, and a comparison for
+ * values that are only equal up to rounding.
+ *
+ * The example system fills from 5 to 23, with a volume of 40 at 12, 69 at 16 and 131 when full.
+ *
+ * @author ian
+ *
+ */
+final class TankFixtures
+{
+    /**
+     * Tank A, from 5 to 13 with a base area of 5.
+     */
+    static final Tank s_tankA = new Tank(new double[] { 0, 0, 5 }, new double[] { 5, 1, 13 });
+
+    /**
+     * Tank B, from 11 to 18 with a base area of 5.
+     */
+    static final Tank s_tankB = new Tank(new double[] { 0, 0, 11 }, new double[] { 5, 1, 18 });
+
+    /**
+     * Tank C, from 15 to 21 with a base area of 4.
+     */
+    static final Tank s_tankC = new Tank(new double[] { 0, 0, 15 }, new double[] { 4, 1, 21 });
+
+    /**
+     * Tank D, from 19 to 23 with a base area of 8.
+     */
+    static final Tank s_tankD = new Tank(new double[] { 0, 0, 19 }, new double[] { 8, 1, 23 });
+
+    private TankFixtures()
+    {
+    }
+
+    /**
+     * Get the tanks of the example from the assignment.
+     *
+     * @return A new Set of tanks A through D, which the caller may modify.
+     */
+    static Set<Tank> exampleTanks()
+    {
+        return new HashSet<>(Arrays.asList(s_tankA, s_tankB, s_tankC, s_tankD));
+    }
+
+    /**
+     * Get whether a value matches the expected value up to the rounding of a few operations.
+     *
+     * @param actual The value computed.
+     * @param expected The value expected.
+     * @return true if they differ by at most a billionth, relative to the expected value when it is large.
+     */
+    static boolean isClose(double actual, double expected)
+    {
+        return Math.abs(actual - expected) <= 1e-9 * Math.max(Math.abs(expected), 1.0);
+    }
+}
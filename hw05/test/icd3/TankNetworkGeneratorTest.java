@@ -0,0 +1,207 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.isClose;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class TankNetworkGeneratorTest
+{
+    /**
+     * Test method for {@link icd3.TankNetworkGenerator#iterator()}.
+     */
+    @Test
+    public void testDeterministic()
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(293, 1000, 4,
+                0.5, TankNetworkGenerator.HeightDistribution.UNIFORM);
+        TankNetworkGenerator same = new TankNetworkGenerator(293, 1000, 4,
+                0.5, TankNetworkGenerator.HeightDistribution.UNIFORM);
+
+        // Iteration and random access agree, and so do two generators with the same seed
+        Iterator<Tank> tanks = same.iterator();
+        long index = 0;
+        for (Tank tank : generator)
+        {
+            assertTrue(tank.equals(tanks.next()));
+            assertTrue(tank.equals(generator.tank(index++)));
+        }
+        assertTrue(index == 1000);
+    }
+
+    /**
+     * Test method for {@link icd3.TankNetworkGenerator#TankNetworkGenerator(long, long, double, double,
+     * icd3.TankNetworkGenerator.HeightDistribution)}.
+     */
+    @Test
+    public void testDuplication()
+    {
+        TankNetworkGenerator distinct = new TankNetworkGenerator(293, 1000, 4,
+                0.0, TankNetworkGenerator.HeightDistribution.EXPONENTIAL);
+        TankNetworkGenerator duplicated = new TankNetworkGenerator(293, 1000, 4,
+                1.0, TankNetworkGenerator.HeightDistribution.EXPONENTIAL);
+
+        // Without snapping every edge is its own break point, and with it they crowd onto the grid
+        assertTrue(breakPoints(distinct).size() == 2000);
+        assertTrue(breakPoints(duplicated).size() <= 2 * duplicated.span() + 100);
+    }
+
+    /**
+     * Test method for {@link icd3.TankNetworkGenerator#span()}.
+     */
+    @Test
+    public void testOverlapDepth()
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(293, 20000, 8,
+                0.0, TankNetworkGenerator.HeightDistribution.CONSTANT);
+        WaterSystem system = new WaterSystem(generator.toSet());
+
+        // Away from the ends of the span, about overlapDepth tanks are active at any height
+        double totalActive = 0;
+        for (int i = 1; i < 100; ++i)
+        {
+            totalActive += system.activeTanksAt(generator.span() * i / 100).size();
+        }
+        assertTrue(Math.abs(totalActive / 99 - 8) < 1);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#heightToVolume(Double)} and
+     * {@link icd3.OffHeapWaterSystem#heightToVolume(Double)} against the per-tank summation.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testHeightToVolumeAgainstSummation() throws IOException
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(2931, 20000, 16,
+                0.3, TankNetworkGenerator.HeightDistribution.EXPONENTIAL);
+
+        double[] waterHeights = new double[64];
+        for (int i = 0; i < waterHeights.length; ++i)
+        {
+            waterHeights[i] = generator.span() * i / (waterHeights.length - 1);
+        }
+
+        // Stream the tanks through the summation, one tank at a time
+        double[] expected = new double[waterHeights.length];
+        double minBottom = Double.POSITIVE_INFINITY;
+        for (Tank tank : generator)
+        {
+            minBottom = Math.min(minBottom, tank.getBottom());
+            for (int i = 0; i < waterHeights.length; ++i)
+            {
+                double filledHeight = Math.max(Math.min(tank.getTop(), waterHeights[i]) - tank.getBottom(), 0.0);
+                expected[i] += filledHeight * tank.baseArea();
+            }
+        }
+        waterHeights[0] = minBottom;
+
+        // Stream the tanks into a file as well, so that the off-heap system sees the same tanks
+        Path path = Files.createTempFile("TankNetworkGeneratorTest", ".tanks");
+        try
+        {
+            TankBuffer.write(path, generator);
+            OffHeapWaterSystem offHeap = new OffHeapWaterSystem(TankBuffer.map(path));
+            WaterSystem system = new WaterSystem(generator.toSet());
+
+            for (int i = 0; i < waterHeights.length; ++i)
+            {
+                assertTrue(isClose(system.heightToVolume(waterHeights[i]), expected[i]));
+                assertTrue(isClose(offHeap.heightToVolume(waterHeights[i]), expected[i]));
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.TankNetworkGenerator#tank(long)}, checking that consecutive tanks are drawn
+     * independently.
+     */
+    @Test
+    public void testConsecutiveTanksUncorrelated()
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(293, 20001, 4,
+                0.0, TankNetworkGenerator.HeightDistribution.UNIFORM);
+        double[] bottoms = new double[20001];
+        double[] heights = new double[20001];
+        int index = 0;
+        for (Tank tank : generator)
+        {
+            bottoms[index] = tank.getBottom();
+            heights[index] = tank.getTop() - tank.getBottom();
+            ++index;
+        }
+
+        // Pair each tank with the next. With 20000 pairs, independent draws correlate by about 0.007.
+        double[] bottoms0 = Arrays.copyOfRange(bottoms, 0, 20000);
+        double[] bottoms1 = Arrays.copyOfRange(bottoms, 1, 20001);
+        double[] heights0 = Arrays.copyOfRange(heights, 0, 20000);
+        double[] heights1 = Arrays.copyOfRange(heights, 1, 20001);
+        assertTrue(Math.abs(correlation(bottoms0, bottoms1)) < 0.05);
+        assertTrue(Math.abs(correlation(heights0, heights1)) < 0.05);
+        assertTrue(Math.abs(correlation(heights0, bottoms1)) < 0.05);
+        assertTrue(Math.abs(correlation(bottoms0, heights1)) < 0.05);
+    }
+
+    /**
+     * Test method for {@link icd3.TankNetworkGenerator#tank(long)}.
+     */
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testTankOutOfRange()
+    {
+        new TankNetworkGenerator(293, 10, 1, 0, TankNetworkGenerator.HeightDistribution.CONSTANT).tank(10);
+    }
+
+    private static Set<Double> breakPoints(TankNetworkGenerator generator)
+    {
+        Set<Double> breakPoints = new HashSet<>();
+        for (Tank tank : generator)
+        {
+            breakPoints.add(tank.getBottom());
+            breakPoints.add(tank.getTop());
+        }
+        return breakPoints;
+    }
+
+    private static double correlation(double[] x, double[] y)
+    {
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < x.length; ++i)
+        {
+            meanX += x[i] / x.length;
+            meanY += y[i] / y.length;
+        }
+
+        double covariance = 0;
+        double varianceX = 0;
+        double varianceY = 0;
+        for (int i = 0; i < x.length; ++i)
+        {
+            covariance += (x[i] - meanX) * (y[i] - meanY);
+            varianceX += (x[i] - meanX) * (x[i] - meanX);
+            varianceY += (y[i] - meanY) * (y[i] - meanY);
+        }
+        return covariance / Math.sqrt(varianceX * varianceY);
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests for the store of tanks and the primitive index structures built on it.
+ *
+ * @author ian
+ *
+ */
+public class TankStoreTest
+{
+    /**
+     * Test method for {@link icd3.IndexSort#sort(int[], double[])}.
+     */
+    @Test
+    public void testSort()
+    {
+        // Short enough to be sorted by insertion alone
+        double[] keys = { 3.0, 1.0, 2.0, 1.0, 0.5 };
+        int[] indices = { 0, 1, 2, 3, 4 };
+        IndexSort.sort(indices, keys);
+        assertTrue(Arrays.equals(indices, new int[] { 4, 1, 3, 2, 0 }));
+
+        // An empty array has nothing to sort
+        int[] empty = new int[0];
+        IndexSort.sort(empty, keys);
+        assertTrue(empty.length == 0);
+    }
+
+    /**
+     * Test method for {@link icd3.IndexSort#sort(int[], double[])}, checking stability over many merges.
+     */
+    @Test
+    public void testSortRandomized()
+    {
+        Random random = new Random(293);
+        for (int length : new int[] { 15, 16, 17, 100, 1000 })
+        {
+            int[] indices = shuffledIndices(length, random);
+            double[] keys = randomKeys(length, random);
+            int[] expected = stableSort(indices, keys);
+
+            IndexSort.sort(indices, keys);
+            assertTrue(Arrays.equals(indices, expected));
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.IndexSort#parallelSort(int[], double[])}, on arrays long enough to be split and
+     * merged in parallel, with enough ties that the split points fall among equal keys.
+     */
+    @Test
+    public void testParallelSort()
+    {
+        Random random = new Random(4293);
+        for (int length : new int[] { 10, (1 << 13) + 1, 100000 })
+        {
+            int[] indices = shuffledIndices(length, random);
+            double[] keys = randomKeys(length, random);
+            int[] expected = stableSort(indices, keys);
+
+            IndexSort.parallelSort(indices, keys);
+            assertTrue(Arrays.equals(indices, expected));
+        }
+
+        // A skewed array, where one run of the merge is far longer than the other
+        int[] indices = shuffledIndices(50000, random);
+        double[] keys = new double[50000];
+        Arrays.fill(keys, 1.0);
+        for (int i = 0; i < 100; ++i)
+        {
+            keys[random.nextInt(keys.length)] = random.nextInt(3);
+        }
+        int[] expected = stableSort(indices, keys);
+        IndexSort.parallelSort(indices, keys);
+        assertTrue(Arrays.equals(indices, expected));
+    }
+
+    /**
+     * Test method for {@link icd3.IntList}.
+     */
+    @Test
+    public void testIntList()
+    {
+        IntList list = new IntList();
+        assertTrue(list.isEmpty());
+        for (int i = 0; i < 10; ++i)
+        {
+            list.add(i);
+        }
+        assertTrue(list.size() == 10);
+
+        // A copy is independent of the original
+        IntList copy = new IntList(list);
+        assertTrue(list.remove(3));
+        assertFalse(list.remove(3));
+        assertTrue(copy.size() == 10);
+        assertTrue(copy.get(3) == 3);
+
+        // Removal moves the last value into the hole
+        assertTrue(list.size() == 9);
+        assertTrue(list.get(3) == 9);
+        assertTrue(Arrays.equals(list.toArray(), new int[] { 0, 1, 2, 9, 4, 5, 6, 7, 8 }));
+
+        // An empty copy can still grow
+        IntList emptyCopy = new IntList(new IntList());
+        emptyCopy.add(7);
+        assertTrue(emptyCopy.size() == 1 && emptyCopy.get(0) == 7);
+    }
+
+    /**
+     * Test method for {@link icd3.IndexSet}.
+     */
+    @Test
+    public void testIndexSet()
+    {
+        IndexSet set = new IndexSet(8);
+        set.add(5);
+        set.add(2);
+        set.add(5);
+        set.add(7);
+        assertTrue(set.size() == 3);
+        assertTrue(set.contains(2) && set.contains(5) && set.contains(7));
+        assertFalse(set.contains(0));
+
+        // Removing a member, and then a non-member, leaves the rest intact
+        set.remove(2);
+        set.remove(2);
+        assertTrue(set.size() == 2);
+        assertFalse(set.contains(2));
+        assertTrue(set.contains(5) && set.contains(7));
+
+        // A removed index can be added back, and a copy holds the same members
+        set.add(2);
+        int[] members = new IndexSet(set).toIntList().toArray();
+        Arrays.sort(members);
+        assertTrue(Arrays.equals(members, new int[] { 2, 5, 7 }));
+
+        // Indices far beyond the expected size grow the set, and removals keep every other member reachable
+        Random random = new Random(293);
+        Set<Integer> expected = new HashSet<>();
+        IndexSet grown = new IndexSet(0);
+        for (int i = 0; i < 20000; ++i)
+        {
+            int index = random.nextInt(5000);
+            if (random.nextInt(3) == 0)
+            {
+                grown.remove(index);
+                expected.remove(index);
+            }
+            else
+            {
+                grown.add(index);
+                expected.add(index);
+            }
+        }
+        assertTrue(grown.size() == expected.size());
+        for (int index = 0; index < 5000; ++index)
+        {
+            assertTrue(grown.contains(index) == expected.contains(index));
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.ActiveTankIndex#addTank(int, double, double)} and
+     * {@link icd3.ActiveTankIndex#removeTank(int, double, double)}, adding many tanks within the range of a single tank
+     * so that its gap must be checkpointed again.
+     */
+    @Test
+    public void testActiveTankIndexAddRemove()
+    {
+        // A single tall tank leaves one gap between its edges
+        Tank tall = new Tank(new double[] { 0, 0, 0 }, new double[] { 1, 1, 100 });
+        TankStore store = new TankStore(Arrays.asList(tall));
+        NavigableMap<Double, IntList> tanksByBottom = new TreeMap<>();
+        NavigableMap<Double, IntList> tanksByTop = new TreeMap<>();
+        addEdges(store, tall, tanksByBottom, tanksByTop);
+        ActiveTankIndex index = new ActiveTankIndex(store, tanksByBottom, tanksByTop);
+        int initialCheckpoints = index.checkpointCount();
+
+        // Add short tanks throughout the gap, and below and above the tall tank
+        Random random = new Random(293);
+        List<Tank> tanks = new ArrayList<>(Arrays.asList(tall));
+        for (int i = 0; i < 500; ++i)
+        {
+            double bottom = random.nextInt(1200) / 10.0 - 10.0;
+            Tank tank = new Tank(new double[] { 0, 0, bottom }, new double[] { 1, 1, bottom + 1 + random.nextInt(50)
+                    / 10.0 });
+            if (store.indexOf(tank) < 0)
+            {
+                int tankIndex = addEdges(store, tank, tanksByBottom, tanksByTop);
+                index.addTank(tankIndex, tank.getBottom(), tank.getTop());
+                tanks.add(tank);
+            }
+        }
+        assertTrue(index.checkpointCount() > initialCheckpoints + 10);
+        assertActiveTanks(index, tanks, random);
+
+        // Remove half of the tanks
+        Collections.shuffle(tanks, random);
+        for (Tank tank : new ArrayList<>(tanks.subList(0, tanks.size() / 2)))
+        {
+            int tankIndex = store.remove(tank);
+            tanksByBottom.get(tank.getBottom()).remove(tankIndex);
+            tanksByTop.get(tank.getTop()).remove(tankIndex);
+            index.removeTank(tankIndex, tank.getBottom(), tank.getTop());
+            tanks.remove(tank);
+        }
+        assertActiveTanks(index, tanks, random);
+    }
+
+    /**
+     * Test method for {@link icd3.TankStore#add(Tank)} and {@link icd3.TankStore#remove(Tank)}.
+     */
+    @Test
+    public void testAddRemove()
+    {
+        TankStore store = new TankStore(Arrays.asList(s_tankA, s_tankB));
+
+        // Tanks are indexed in iteration order, and adding a stored tank returns its index
+        assertTrue(store.indexOf(s_tankA) == 0);
+        assertTrue(store.indexOf(s_tankB) == 1);
+        assertTrue(store.add(new Tank(new double[] { 0, 0, 11 }, new double[] { 5, 1, 18 })) == 1);
+        assertTrue(store.size() == 2);
+        assertTrue(store.bottom(1) == 11.0 && store.top(1) == 18.0 && store.baseArea(1) == 5.0);
+
+        // A removed index reads as empty and is reused by the next tank
+        assertTrue(store.remove(s_tankA) == 0);
+        assertTrue(store.remove(s_tankA) == -1);
+        assertTrue(store.indexOf(s_tankA) == -1);
+        assertTrue(null == store.tank(0));
+        assertTrue(Double.isNaN(store.bottom(0)) && store.baseArea(0) == 0.0);
+        assertTrue(store.add(s_tankC) == 0);
+        assertTrue(store.tank(0) == s_tankC);
+        assertTrue(Arrays.equals(store.indices(), new int[] { 0, 1 }));
+        assertTrue(store.limit() == 2);
+    }
+
+    /**
+     * Test method for {@link icd3.TankStore#indexOf(Tank)}, across enough tanks to grow the store and crowd its hash
+     * table, and enough removals to shift entries back into freed slots.
+     */
+    @Test
+    public void testIndexOfRandomized()
+    {
+        List<Tank> tanks = new ArrayList<>();
+        for (Tank tank : new TankNetworkGenerator(293, 2000, 4, 0.0, TankNetworkGenerator.HeightDistribution.UNIFORM))
+        {
+            tanks.add(tank);
+        }
+        TankStore store = new TankStore(tanks);
+        assertTrue(store.size() == 2000);
+
+        // Remove a random half
+        Random random = new Random(293);
+        List<Tank> removed = new ArrayList<>(tanks);
+        Collections.shuffle(removed, random);
+        removed = removed.subList(0, 1000);
+        for (Tank tank : removed)
+        {
+            assertTrue(store.remove(tank) >= 0);
+        }
+        assertTrue(store.size() == 1000);
+
+        // Every tank left is found at its index, and every tank removed is not found
+        for (Tank tank : tanks)
+        {
+            int index = store.indexOf(tank);
+            assertTrue(removed.contains(tank) ? index == -1 : store.tank(index) == tank);
+        }
+
+        // Adding the removed tanks back fills the freed indices without extending the limit
+        for (Tank tank : removed)
+        {
+            store.add(tank);
+        }
+        assertTrue(store.size() == 2000 && store.limit() == 2000);
+        for (Tank tank : tanks)
+        {
+            assertTrue(store.tank(store.indexOf(tank)) == tank);
+        }
+    }
+
+    /**
+     * Helper method to store a tank and add its edges to a pair of edge maps.
+     *
+     * @param store The store to add the tank to.
+     * @param tank The tank.
+     * @param tanksByBottom The map of bottom edges to tank indices.
+     * @param tanksByTop The map of top edges to tank indices.
+     * @return The index of the tank.
+     */
+    private static int addEdges(TankStore store, Tank tank, NavigableMap<Double, IntList> tanksByBottom,
+                                NavigableMap<Double, IntList> tanksByTop)
+    {
+        int tankIndex = store.add(tank);
+        if (!tanksByBottom.containsKey(tank.getBottom()))
+        {
+            tanksByBottom.put(tank.getBottom(), new IntList());
+        }
+        if (!tanksByTop.containsKey(tank.getTop()))
+        {
+            tanksByTop.put(tank.getTop(), new IntList());
+        }
+        tanksByBottom.get(tank.getBottom()).add(tankIndex);
+        tanksByTop.get(tank.getTop()).add(tankIndex);
+        return tankIndex;
+    }
+
+    /**
+     * Helper method to check the active sets of an index at random heights, and at every edge, against brute force.
+     *
+     * @param index The index to check.
+     * @param tanks The tanks in the index.
+     * @param random The source of the heights.
+     */
+    private static void assertActiveTanks(ActiveTankIndex index, List<Tank> tanks, Random random)
+    {
+        List<Double> heights = new ArrayList<>();
+        for (Tank tank : tanks)
+        {
+            heights.add(tank.getBottom());
+            heights.add(tank.getTop());
+            heights.add(random.nextDouble() * 130.0 - 15.0);
+        }
+
+        for (double height : heights)
+        {
+            Set<Tank> expected = new HashSet<>();
+            for (Tank tank : tanks)
+            {
+                if (tank.getBottom() <= height && height < tank.getTop())
+                {
+                    expected.add(tank);
+                }
+            }
+            assertTrue(index.activeAt(height).equals(expected));
+        }
+    }
+
+    /**
+     * Helper method to generate the indices below a length in random order.
+     *
+     * @param length The number of indices.
+     * @param random The source of the order.
+     * @return The shuffled indices.
+     */
+    private static int[] shuffledIndices(int length, Random random)
+    {
+        List<Integer> shuffled = new ArrayList<>();
+        for (int i = 0; i < length; ++i)
+        {
+            shuffled.add(i);
+        }
+        Collections.shuffle(shuffled, random);
+
+        int[] indices = new int[length];
+        for (int i = 0; i < length; ++i)
+        {
+            indices[i] = shuffled.get(i);
+        }
+        return indices;
+    }
+
+    /**
+     * Helper method to generate keys with many ties.
+     *
+     * @param length The number of keys.
+     * @param random The source of the keys.
+     * @return The keys.
+     */
+    private static double[] randomKeys(int length, Random random)
+    {
+        double[] keys = new double[length];
+        for (int i = 0; i < length; ++i)
+        {
+            keys[i] = random.nextInt(Math.max(length / 8, 2)) / 4.0;
+        }
+        return keys;
+    }
+
+    /**
+     * Helper method to sort indices by key with the library's stable sort, as the expected result.
+     *
+     * @param indices The indices to sort, which are left unchanged.
+     * @param keys The key of each index.
+     * @return A new array of the sorted indices.
+     */
+    private static int[] stableSort(int[] indices, final double[] keys)
+    {
+        List<Integer> boxed = new ArrayList<>();
+        for (int index : indices)
+        {
+            boxed.add(index);
+        }
+        Collections.sort(boxed, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer left, Integer right)
+            {
+                return Double.compare(keys[left], keys[right]);
+            }
+        });
+
+        int[] sorted = new int[indices.length];
+        for (int i = 0; i < sorted.length; ++i)
+        {
+            sorted[i] = boxed.get(i);
+        }
+        return sorted;
+    }
+}
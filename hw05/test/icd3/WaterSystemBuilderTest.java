@@ -0,0 +1,274 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.isClose;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static icd3.TankFixtures.s_tankD;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class WaterSystemBuilderTest
+{
+    /**
+     * The tanks from the assignment as CSV, with a comment, a blank line and Windows line endings.
+     */
+    private static final String s_csv = "# x1,y1,z1,x2,y2,z2\r\n0,0,5,5,1,13\r\n\r\n0, 0, 11, 5, 1, 18\r\n"
+            + "0,0,15,4,1,21\r\n0,0,19,8,1,23";
+
+    /**
+     * Test method for {@link icd3.TankFileLoader#loadCsv(Path, TankSink)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadCsv() throws IOException
+    {
+        WaterSystemBuilder builder = new WaterSystemBuilder();
+        assertTrue(loadCsv(s_csv, builder) == 4);
+
+        OffHeapWaterSystem offHeap = builder.buildOffHeap();
+        WaterSystem system = builder.build();
+        double[] heights = { 5.0, 12.0, 16.0, 23.0 };
+        double[] volumes = { 0.0, 40.0, 69.0, 131.0 };
+        for (int i = 0; i < heights.length; ++i)
+        {
+            assertTrue(offHeap.heightToVolume(heights[i]) == volumes[i]);
+            assertTrue(system.heightToVolume(heights[i]) == volumes[i]);
+        }
+        assertTrue(system.tanksByBottom().get(19.0).contains(s_tankD));
+        assertTrue(system.volumeToTankLevel(69.0).get(s_tankB) == 5.0);
+    }
+
+    /**
+     * Test method for {@link icd3.TankFileLoader#loadBinary(Path, TankSink)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadBinary() throws IOException
+    {
+        // Enough tanks to cross several reads and make the builder grow
+        TankNetworkGenerator generator = new TankNetworkGenerator(293, 5000, 8, 0.5,
+                TankNetworkGenerator.HeightDistribution.UNIFORM);
+        Set<Tank> tanks = generator.toSet();
+        WaterSystem expected = new WaterSystem(tanks);
+
+        Path file = Files.createTempFile("tanks", ".bin");
+        try
+        {
+            TankBuffer.write(file, generator);
+            WaterSystemBuilder builder = new WaterSystemBuilder();
+            assertTrue(TankFileLoader.loadBinary(file, builder) == 5000);
+
+            WaterSystem system = builder.build();
+            OffHeapWaterSystem offHeap = builder.buildOffHeap();
+            for (int i = 1; i < 100; ++i)
+            {
+                double height = generator.span() * i / 100;
+                assertTrue(isClose(system.heightToVolume(height), expected.heightToVolume(height)));
+                assertTrue(isClose(offHeap.heightToVolume(height), expected.heightToVolume(height)));
+            }
+            assertTrue(system.tanksByTop().equals(expected.tanksByTop()));
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystemBuilder#build()}.
+     */
+    @Test
+    public void testBuildDuplicates()
+    {
+        WaterSystemBuilder builder = new WaterSystemBuilder();
+        builder.add(s_tankA).add(s_tankB).add(s_tankA);
+
+        // The system holds each tank once
+        WaterSystem system = builder.build();
+        assertTrue(system.tanksByBottom().size() == 2);
+        assertTrue(system.heightToVolume(18.0) == 75.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystemBuilder#buildOffHeap()}, across more tanks than fit in one segment of
+     * the buffer.
+     */
+    @Test
+    public void testBuildOffHeapSegments()
+    {
+        final List<Tank> tanks = new ArrayList<>();
+        WaterSystemBuilder builder = new WaterSystemBuilder();
+        double maxHeight = Double.NEGATIVE_INFINITY;
+        for (Tank tank : new TankNetworkGenerator(293, 70000, 4, 0.0, TankNetworkGenerator.HeightDistribution.UNIFORM))
+        {
+            tanks.add(tank);
+            builder.add(tank);
+            maxHeight = Math.max(maxHeight, tank.getMaximum(2));
+        }
+        OffHeapWaterSystem system = builder.buildOffHeap();
+
+        // Tanks added after the build are past the end of the system's view
+        builder.add(s_tankA);
+        assertTrue(builder.size() == 70001);
+
+        // Every tank reads back in order and full at the top, on both sides of each segment boundary
+        final int[] count = new int[1];
+        system.forEachTankLevel(maxHeight, new TankLevelConsumer()
+        {
+            @Override
+            public void accept(int tankIndex, Tank tank, double level)
+            {
+                assertTrue(tank.equals(tanks.get(tankIndex)));
+                assertTrue(level == tank.getMaximum(2) - tank.getMinimum(2));
+                ++count[0];
+            }
+        });
+        assertTrue(count[0] == 70000);
+    }
+
+    /**
+     * Test method for {@link icd3.ExternalProfileBuilder#build(Path)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testExternalBuild() throws IOException
+    {
+        Path directory = Files.createTempDirectory("external");
+        Path profile = directory.resolve("profile.bin");
+        try
+        {
+            // Runs of three edges split tanks across runs
+            ExternalProfileBuilder builder = new ExternalProfileBuilder(directory, 3);
+            assertTrue(loadCsv(s_csv, builder) == 4);
+            OffHeapWaterSystem system = builder.build(profile);
+
+            assertTrue(system.heightToVolume(5.0) == 0.0);
+            assertTrue(system.heightToVolume(12.0) == 40.0);
+            assertTrue(system.heightToVolume(16.0) == 69.0);
+            assertTrue(system.heightToVolume(23.0) == 131.0);
+            assertTrue(system.volumeToTankLevel(69.0).get(s_tankC) == 1.0);
+
+            // Only the profile is left behind
+            assertTrue(directory.toFile().list().length == 1);
+        }
+        finally
+        {
+            Files.deleteIfExists(profile);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.ExternalProfileBuilder#build(Path)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testExternalBuildMergePasses() throws IOException
+    {
+        TankNetworkGenerator generator = new TankNetworkGenerator(17, 5000, 8, 0.5,
+                TankNetworkGenerator.HeightDistribution.EXPONENTIAL);
+        Set<Tank> tanks = generator.toSet();
+        WaterSystem expected = new WaterSystem(tanks);
+
+        Path directory = Files.createTempDirectory("external");
+        Path profile = directory.resolve("profile.bin");
+        try
+        {
+            // Enough runs that they cannot all be merged at once
+            ExternalProfileBuilder builder = new ExternalProfileBuilder(directory, 64);
+            for (Tank tank : generator)
+            {
+                builder.add(tank);
+            }
+            OffHeapWaterSystem system = builder.build(profile);
+
+            double[] volumes = new double[99];
+            double[] heights = new double[volumes.length];
+            double[] expectedHeights = new double[volumes.length];
+            for (int i = 0; i < volumes.length; ++i)
+            {
+                double height = generator.span() * (i + 1) / 100;
+                assertTrue(isClose(system.heightToVolume(height), expected.heightToVolume(height)));
+                volumes[i] = expected.heightToVolume(height);
+            }
+            system.volumeToHeight(volumes, heights);
+            expected.volumeToHeight(volumes, expectedHeights);
+            for (int i = 0; i < volumes.length; ++i)
+            {
+                assertTrue(isClose(heights[i], expectedHeights[i]));
+            }
+        }
+        finally
+        {
+            Files.deleteIfExists(profile);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.TankFileLoader#loadCsv(Path, TankSink)}.
+     *
+     * @throws IOException
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testLoadCsvTooFewFields() throws IOException
+    {
+        loadCsv("0,0,5,5,1,13\n0,0,11,5,1\n", new WaterSystemBuilder());
+    }
+
+    /**
+     * Test method for {@link icd3.TankFileLoader#loadCsv(Path, TankSink)}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testLoadCsvInvalidTank() throws IOException
+    {
+        try
+        {
+            loadCsv("0,0,5,5,1,13\n\n0,0,11,5,1,11\n", new WaterSystemBuilder());
+            assertTrue(false);
+        }
+        catch (IllegalArgumentException e)
+        {
+            // The message names the line of the flat tank
+            assertTrue(e.getMessage().startsWith("Line 3 of "));
+        }
+    }
+
+    private static int loadCsv(String csv, TankSink sink) throws IOException
+    {
+        Path file = Files.createTempFile("tanks", ".csv");
+        try
+        {
+            Files.write(file, csv.getBytes(StandardCharsets.US_ASCII));
+            return TankFileLoader.loadCsv(file, sink);
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+}
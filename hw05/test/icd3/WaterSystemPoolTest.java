@@ -0,0 +1,85 @@
+/**
+ * Ian Dimayuga
+ * EECS293 HW05
+ */
+package icd3;
+
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static icd3.TankFixtures.s_tankD;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author ian
+ *
+ */
+public class WaterSystemPoolTest
+{
+    /**
+     * Test method for {@link icd3.WaterSystemPool#totalVolume(double[])}.
+     */
+    @Test
+    public void testTotalVolume()
+    {
+        // Alternate between the full example and just its two lowest tanks
+        WaterSystemPool pool = new WaterSystemPool();
+        for (int i = 0; i < 200; ++i)
+        {
+            HashSet<Tank> tanks = new HashSet<>(Arrays.asList(s_tankA, s_tankB));
+            if (i % 2 == 0)
+            {
+                tanks.addAll(Arrays.asList(s_tankC, s_tankD));
+            }
+            assertTrue(pool.register("farm" + i, tanks) == i);
+        }
+        assertTrue(pool.indexOf("farm7") == 7);
+        assertTrue(pool.indexOf("farm200") == -1);
+        assertTrue(pool.buildStateCount(WaterSystemPool.BuildState.PENDING) == 200);
+
+        double[] heights = new double[200];
+        Arrays.fill(heights, 16.0);
+        assertTrue(pool.totalVolume(heights) == 100 * 69.0 + 100 * 65.0);
+        assertTrue(pool.buildStateCount(WaterSystemPool.BuildState.BUILT) == 200);
+
+        List<Map<Tank, Double>> tankLevels = pool.volumeToTankLevel(69.0);
+        assertTrue(tankLevels.get(0).get(s_tankB) == 5.0);
+        assertTrue(Math.abs(tankLevels.get(1).get(s_tankB) - 5.8) < 1e-9);
+
+        assertTrue(pool.batchCount() == 2);
+        assertTrue(pool.systemQueryCount() == 400);
+        assertTrue(pool.systemQueriesPerSecond() > 0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystemPool#heightToVolume(double[], double[])}.
+     */
+    @Test
+    public void testHeightToVolumeInvalidHeight()
+    {
+        WaterSystemPool pool = new WaterSystemPool();
+        pool.register("full", exampleTanks());
+        pool.register("low", new HashSet<>(Arrays.asList(s_tankA, s_tankB)));
+        pool.buildAll();
+        assertTrue(pool.buildState(1) == WaterSystemPool.BuildState.BUILT);
+
+        try
+        {
+            // The second system tops out at 18
+            pool.heightToVolume(new double[] { 22.0, 22.0 }, new double[2]);
+            assertTrue(false);
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertTrue(e.getMessage().startsWith("System low: "));
+        }
+    }
+}
@@ -4,13 +4,37 @@
  */
 package icd3;
 
+import static icd3.TankFixtures.exampleTanks;
+import static icd3.TankFixtures.s_tankA;
+import static icd3.TankFixtures.s_tankB;
+import static icd3.TankFixtures.s_tankC;
+import static icd3.TankFixtures.s_tankD;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -21,10 +45,6 @@ import org.junit.Test;
  */
 public class WaterSystemTest
 {
-    private static Tank s_tankA;
-    private static Tank s_tankB;
-    private static Tank s_tankC;
-    private static Tank s_tankD;
     private static WaterSystem s_testSystem;
 
     /**
@@ -34,27 +54,7 @@ public class WaterSystemTest
     public static void setUpBeforeClass() throws Exception
     {
         // Create the test case example from the assignment
-        double[] bottomA = { 0, 0, 5 };
-        double[] topA = { 5, 1, 13 };
-        double[] bottomB = { 0, 0, 11 };
-        double[] topB = { 5, 1, 18 };
-        double[] bottomC = { 0, 0, 15 };
-        double[] topC = { 4, 1, 21 };
-        double[] bottomD = { 0, 0, 19 };
-        double[] topD = { 8, 1, 23 };
-
-        s_tankA = new Tank(bottomA, topA);
-        s_tankB = new Tank(bottomB, topB);
-        s_tankC = new Tank(bottomC, topC);
-        s_tankD = new Tank(bottomD, topD);
-
-        Set<Tank> tankSet = new HashSet<Tank>();
-        tankSet.add(s_tankA);
-        tankSet.add(s_tankB);
-        tankSet.add(s_tankC);
-        tankSet.add(s_tankD);
-
-        s_testSystem = new WaterSystem(tankSet);
+        s_testSystem = new WaterSystem(exampleTanks());
     }
 
     /**
@@ -123,6 +123,90 @@ public class WaterSystemTest
         assertTrue(tanks.get(23.0).size() == 0);
     }
 
+    /**
+     * Test method for {@link icd3.WaterSystem#activeTanksAt(double)}.
+     */
+    @Test
+    public void testActiveTanksAt()
+    {
+        assertTrue(s_testSystem.activeTanksAt(4.0).isEmpty());
+        assertTrue(s_testSystem.activeTanksAt(16.0).equals(new HashSet<Tank>(Arrays.asList(s_tankB, s_tankC))));
+        assertTrue(s_testSystem.activeTanksAt(19.0).equals(new HashSet<Tank>(Arrays.asList(s_tankC, s_tankD))));
+        assertTrue(s_testSystem.activeTanksAt(22.5).equals(new HashSet<Tank>(Arrays.asList(s_tankD))));
+        assertTrue(s_testSystem.activeTanksAt(23.0).isEmpty());
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#sweep(icd3.SweepListener)}.
+     */
+    @Test
+    public void testSweep()
+    {
+        final NavigableMap<Double, Double> activeBaseArea = new TreeMap<>();
+        final Set<Tank> activeTanks = new HashSet<>();
+
+        s_testSystem.sweep(new SweepListener()
+        {
+            @Override
+            public void tankActivated(double height, int tankIndex, Tank tank)
+            {
+                assertTrue(tank.getBottom() == height);
+                assertTrue(activeTanks.add(tank));
+            }
+
+            @Override
+            public void tankDeactivated(double height, int tankIndex, Tank tank)
+            {
+                assertTrue(tank.getTop() == height);
+                assertTrue(activeTanks.remove(tank));
+            }
+
+            @Override
+            public void breakPoint(double height, double area, int count)
+            {
+                assertTrue(activeTanks.size() == count);
+                activeBaseArea.put(height, area);
+            }
+        });
+
+        assertTrue(activeTanks.isEmpty());
+        assertTrue(activeBaseArea.equals(s_testSystem.activeBaseArea()));
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#tanksByBottomSnapshot()}.
+     */
+    @Test
+    public void testSnapshots()
+    {
+        WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+
+        // Repeated calls share one snapshot
+        NavigableMap<Double, Set<Tank>> tanksByBottom = system.tanksByBottomSnapshot();
+        NavigableMap<Double, Double> activeBaseArea = system.activeBaseAreaSnapshot();
+        assertTrue(tanksByBottom == system.tanksByBottomSnapshot());
+        assertTrue(activeBaseArea == system.activeBaseAreaSnapshot());
+        assertTrue(system.activeTanksSnapshot().get(11.0).size() == 2);
+        assertTrue(system.tanksByTopSnapshot().get(18.0).contains(s_tankB));
+
+        // A change produces a new snapshot and leaves the old one as it was
+        system.addTank(s_tankC);
+        assertTrue(tanksByBottom != system.tanksByBottomSnapshot());
+        assertFalse(tanksByBottom.containsKey(15.0));
+        assertTrue(system.tanksByBottomSnapshot().get(15.0).contains(s_tankC));
+        assertFalse(activeBaseArea.containsKey(15.0));
+        assertTrue(system.activeBaseAreaSnapshot().get(15.0) == 9.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#activeTanksSnapshot()}.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSnapshotImmutable()
+    {
+        s_testSystem.activeTanksSnapshot().get(11.0).remove(s_tankA);
+    }
+
     /**
      * Test method for {@link icd3.WaterSystem#activeBaseArea()}.
      */
@@ -153,6 +237,77 @@ public class WaterSystemTest
         assertTrue(tanks.get(s_tankD) == 0.0);
     }
 
+    /**
+     * Test method for {@link icd3.WaterSystem#forEachTankLevel(double, TankLevelConsumer)}.
+     */
+    @Test
+    public void testForEachTankLevel()
+    {
+        final Map<Tank, Double> tanks = new HashMap<Tank, Double>();
+        s_testSystem.forEachTankLevel(16.0, new TankLevelConsumer()
+        {
+            @Override
+            public void accept(int tankIndex, Tank tank, double level)
+            {
+                assertTrue(s_testSystem.tankAt(tankIndex).equals(tank));
+                tanks.put(tank, level);
+            }
+        });
+        assertTrue(tanks.equals(s_testSystem.heightToTankLevel(16.0)));
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#heightToTankLevel(double, double[])} and
+     * {@link icd3.WaterSystem#volumeToTankLevel(double, double[])}.
+     */
+    @Test
+    public void testTankLevelArray()
+    {
+        double[] levels = new double[s_testSystem.tankIndexLimit()];
+        s_testSystem.volumeToTankLevel(69.0, levels);
+        assertTrue(levels[s_testSystem.tankIndex(s_tankA)] == 8.0);
+        assertTrue(levels[s_testSystem.tankIndex(s_tankB)] == 5.0);
+        assertTrue(levels[s_testSystem.tankIndex(s_tankC)] == 1.0);
+        assertTrue(levels[s_testSystem.tankIndex(s_tankD)] == 0.0);
+
+        // A removed tank's index reads as NaN
+        WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+        int indexA = system.tankIndex(s_tankA);
+        system.removeTank(s_tankA);
+        levels = new double[system.tankIndexLimit()];
+        system.heightToTankLevel(12.0, levels);
+        assertTrue(Double.isNaN(levels[indexA]));
+        assertTrue(levels[system.tankIndex(s_tankB)] == 1.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#partiallyFilledTanks(double)}.
+     */
+    @Test
+    public void testPartiallyFilledTanks()
+    {
+        assertTrue(new HashSet<Tank>(s_testSystem.partiallyFilledTanks(16.0)).equals(
+                new HashSet<Tank>(Arrays.asList(s_tankB, s_tankC))));
+        assertTrue(new HashSet<Tank>(s_testSystem.partiallyFilledTanks(19.0)).equals(
+                new HashSet<Tank>(Arrays.asList(s_tankC))));
+        assertTrue(s_testSystem.partiallyFilledTanks(5.0).isEmpty());
+        assertTrue(s_testSystem.partiallyFilledTanks(23.0).isEmpty());
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#fullTanks(double)} and {@link icd3.WaterSystem#emptyTanks(double)}.
+     */
+    @Test
+    public void testFullAndEmptyTanks()
+    {
+        assertTrue(new HashSet<Tank>(s_testSystem.fullTanks(18.0)).equals(
+                new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB))));
+        assertTrue(new HashSet<Tank>(s_testSystem.emptyTanks(15.0)).equals(
+                new HashSet<Tank>(Arrays.asList(s_tankC, s_tankD))));
+        assertTrue(s_testSystem.fullTanks(12.0).isEmpty());
+        assertTrue(s_testSystem.emptyTanks(4.0).size() == 4);
+    }
+
     /**
      * Test method for below-minimum water height behavior of {@link icd3.WaterSystem#heightToTankLevel(Double)}.
      */
@@ -194,4 +349,463 @@ public class WaterSystemTest
         assertTrue(tanks.get(s_tankC) == 1.0);
         assertTrue(tanks.get(s_tankD) == 0.0);
     }
+
+    /**
+     * Test method for full-system behavior of {@link icd3.WaterSystem#volumeToTankLevel(Double)}.
+     */
+    @Test
+    public void testVolumeToTankLevelFull()
+    {
+        Map<Tank, Double> tanks = s_testSystem.volumeToTankLevel(131.0);
+        assertTrue(tanks.get(s_tankA) == 8.0);
+        assertTrue(tanks.get(s_tankB) == 7.0);
+        assertTrue(tanks.get(s_tankC) == 6.0);
+        assertTrue(tanks.get(s_tankD) == 4.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#cursor()}.
+     */
+    @Test
+    public void testCursor()
+    {
+        BijectionCursor cursor = s_testSystem.cursor();
+
+        // Sweep up and back down, checking against the plain queries
+        for (double height = 5.0; height <= 23.0; height += 0.5)
+        {
+            assertTrue(cursor.heightToVolume(height) == s_testSystem.heightToVolume(height));
+        }
+        for (double height = 23.0; height >= 5.0; height -= 0.5)
+        {
+            assertTrue(cursor.heightToVolume(height) == s_testSystem.heightToVolume(height));
+        }
+
+        // The active area is the slope of the current cross section
+        cursor.heightToVolume(12.0);
+        assertTrue(cursor.activeArea() == 10.0);
+        assertTrue(cursor.volumeToHeight(69.0) == 16.0);
+        assertTrue(cursor.activeArea() == 9.0);
+        assertTrue(cursor.volumeToHeight(30.0) == 11.0);
+        assertTrue(cursor.activeArea() == 10.0);
+    }
+
+    /**
+     * Test method for out-of-range behavior of {@link icd3.BijectionCursor#volumeToHeight(double)}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCursorHighVolume()
+    {
+        s_testSystem.cursor().volumeToHeight(132.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#generateVolumeProfileInParallel()}.
+     */
+    @Test
+    public void testParallelVolumeProfile()
+    {
+        // Enough tanks to split the build into several chunks, with many shared edges and gaps between tanks
+        Random random = new Random(293);
+        Set<Tank> tankSet = new HashSet<>();
+        while (tankSet.size() < 50000)
+        {
+            double bottom = 100 * random.nextInt(200) + random.nextInt(50);
+            double[] bottomLeft = { random.nextInt(100), 0, bottom };
+            double[] topRight = { bottomLeft[0] + 1 + random.nextInt(4), 1, bottom + 1 + random.nextInt(30) };
+            tankSet.add(new Tank(bottomLeft, topRight));
+        }
+
+        WaterSystem sequential = new WaterSystem(tankSet);
+        WaterSystem parallel = new WaterSystem(tankSet);
+        parallel.generateVolumeProfileInParallel();
+
+        for (double height = 0; height <= 19900; height += 7.25)
+        {
+            double expected = sequential.heightToVolume(height);
+            assertTrue(Math.abs(parallel.heightToVolume(height) - expected) <= 1e-9 * expected);
+        }
+
+        double[] volumes = { sequential.heightToVolume(5000.0), sequential.heightToVolume(15000.0) };
+        double[] expectedHeights = new double[2];
+        double[] heights = new double[2];
+        sequential.volumeToHeight(volumes, expectedHeights);
+        parallel.volumeToHeight(volumes, heights);
+        assertTrue(Math.abs(heights[0] - expectedHeights[0]) <= 1e-9 * expectedHeights[0]);
+        assertTrue(Math.abs(heights[1] - expectedHeights[1]) <= 1e-9 * expectedHeights[1]);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#enableTankLevelCache(int, double)}.
+     */
+    @Test
+    public void testTankLevelCache()
+    {
+        WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+        system.enableTankLevelCache(2, 0.5);
+        TankLevelCache cache = system.tankLevelCache();
+
+        // Heights within a quantum share one map, answered at the quantized height
+        Map<Tank, Double> levels = system.heightToTankLevel(12.1);
+        assertTrue(levels.get(s_tankA) == 7.0);
+        assertTrue(levels.get(s_tankB) == 1.0);
+        assertTrue(system.heightToTankLevel(11.9) == levels);
+        assertTrue(cache.hitCount() == 1 && cache.missCount() == 1);
+
+        // Volume queries are keyed separately, and the least recently used entry is evicted
+        assertTrue(system.volumeToTankLevel(40.0).get(s_tankB) == 1.0);
+        system.heightToTankLevel(6.0);
+        assertTrue(cache.evictionCount() == 1 && cache.size() == 2);
+        assertTrue(system.volumeToTankLevel(40.0).get(s_tankA) == 7.0);
+        assertTrue(cache.hitCount() == 2);
+
+        // A change to the system invalidates the cache
+        system.addTank(s_tankC);
+        assertTrue(system.heightToTankLevel(16.0).get(s_tankC) == 1.0);
+        assertTrue(cache.size() == 1 && cache.evictionCount() == 1);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#enableTankLevelCache(int, double)}.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTankLevelCacheImmutable()
+    {
+        WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+        system.enableTankLevelCache(4, 0.0);
+        system.heightToTankLevel(12.0).put(s_tankC, 0.0);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#metrics()}.
+     *
+     * @throws JMException
+     */
+    @Test
+    public void testMetrics() throws JMException
+    {
+        WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+        WaterSystemMetrics metrics = system.metrics();
+
+        // The first fetch rebuilds and the second hits
+        system.tanksByBottom();
+        system.tanksByBottom();
+        assertTrue(metrics.rebuildCount(WaterSystemMetrics.Layer.TANKS_BY_BOTTOM) == 1);
+        assertTrue(metrics.hitCount(WaterSystemMetrics.Layer.TANKS_BY_BOTTOM) == 1);
+
+        // A layer rebuilds the layers it depends on
+        system.heightToVolume(12.0);
+        assertTrue(metrics.rebuildCount(WaterSystemMetrics.Layer.EDGE_SWEEP) == 1);
+        assertTrue(metrics.rebuildCount(WaterSystemMetrics.Layer.ACTIVE_BASE_AREA) == 1);
+        assertTrue(metrics.rebuildCount(WaterSystemMetrics.Layer.VOLUME_BIJECTION) == 1);
+        system.heightToVolume(13.0);
+        assertTrue(metrics.hitCount(WaterSystemMetrics.Layer.VOLUME_BIJECTION) == 1);
+
+        // Every rebuild lands in one histogram bucket
+        long bucketTotal = 0;
+        for (long count : metrics.rebuildHistogram(WaterSystemMetrics.Layer.VOLUME_BIJECTION))
+        {
+            bucketTotal += count;
+        }
+        assertTrue(bucketTotal == 1);
+
+        assertTrue(metrics.getTankCount() == 2);
+        assertTrue(metrics.getBottomEdgeCount() == 2);
+        assertTrue(metrics.getBreakPointCount() == 4);
+
+        // The same counters are visible over JMX
+        ObjectName name = metrics.register("icd3:type=WaterSystem,name=testMetrics");
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            long[] rebuildCounts = (long[]) server.getAttribute(name, "RebuildCounts");
+            assertTrue(rebuildCounts[WaterSystemMetrics.Layer.TANKS_BY_BOTTOM.ordinal()] == 1);
+            assertTrue((Integer) server.getAttribute(name, "TankCount") == 2);
+        }
+        finally
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+
+    /**
+     * Test method for the flight recorder events of {@link icd3.WaterSystem}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testFlightRecorderEvents() throws IOException
+    {
+        Path dump = Files.createTempFile("WaterSystemTest", ".jfr");
+        try (Recording recording = new Recording())
+        {
+            // Record every query, however fast
+            recording.enable("icd3.Invalidation");
+            recording.enable("icd3.Rebuild");
+            recording.enable("icd3.SlowQuery").withThreshold(Duration.ZERO);
+            recording.start();
+
+            WaterSystem system = new WaterSystem(new HashSet<Tank>(Arrays.asList(s_tankA, s_tankB)));
+            system.heightToVolume(12.0);
+            system.addTank(s_tankC);
+
+            recording.stop();
+            recording.dump(dump);
+
+            Set<String> layers = new HashSet<>();
+            Set<String> causes = new HashSet<>();
+            int queryCount = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(dump))
+            {
+                String type = event.getEventType().getName();
+                if (type.equals("icd3.Rebuild"))
+                {
+                    layers.add(event.getString("layer"));
+                }
+                else if (type.equals("icd3.Invalidation"))
+                {
+                    causes.add(event.getString("cause"));
+                }
+                else if (type.equals("icd3.SlowQuery"))
+                {
+                    assertTrue(event.getString("query").equals("heightToVolume"));
+                    ++queryCount;
+                }
+            }
+
+            assertTrue(layers.contains("VOLUME_BIJECTION") && layers.contains("ACTIVE_BASE_AREA"));
+            assertTrue(causes.contains("setTankSystem") && causes.contains("addTank"));
+            assertTrue(queryCount == 1);
+        }
+        finally
+        {
+            Files.delete(dump);
+        }
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#heightToVolume(double[], double[])}.
+     */
+    @Test
+    public void testHeightToVolumeBatch()
+    {
+        double[] heights = { 5.0, 16.0, 23.0, 12.0, 19.0 };
+        double[] volumes = new double[heights.length];
+        s_testSystem.heightToVolume(heights, volumes);
+        assertTrue(Arrays.equals(volumes, new double[] { 0.0, 69.0, 131.0, 40.0, 91.0 }));
+    }
+
+    /**
+     * Test method for out-of-range behavior of {@link icd3.WaterSystem#heightToVolume(double[], double[])}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeightToVolumeBatchHighHeight()
+    {
+        s_testSystem.heightToVolume(new double[] { 6.0, 24.0 }, new double[2]);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#volumeToHeight(double[], double[])}.
+     */
+    @Test
+    public void testVolumeToHeightBatch()
+    {
+        double[] volumes = { 0.0, 35.0, 69.0, 91.0, 131.0, 69.0 };
+        double[] heights = new double[volumes.length];
+        s_testSystem.volumeToHeight(volumes, heights);
+        assertTrue(Arrays.equals(heights, new double[] { 5.0, 11.5, 16.0, 19.0, 23.0, 16.0 }));
+    }
+
+    /**
+     * Test method for short output behavior of {@link icd3.WaterSystem#volumeToHeight(double[], double[])}.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testVolumeToHeightBatchShortOutput()
+    {
+        s_testSystem.volumeToHeight(new double[] { 1.0, 2.0 }, new double[1]);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#addTank(Tank)} and {@link icd3.WaterSystem#removeTank(Tank)}.
+     */
+    @Test
+    public void testAddRemoveTank()
+    {
+        Set<Tank> tankSet = exampleTanks();
+        WaterSystem system = new WaterSystem(tankSet);
+
+        // Generate every cached structure before mutating
+        system.activeTanks();
+        system.heightToVolume(16.0);
+
+        // A tank with a new bottom break point and a top shared with tank C
+        Tank tankE = new Tank(new double[] { 0, 0, 12 }, new double[] { 2, 1, 21 });
+        assertTrue(system.addTank(tankE));
+        assertFalse(system.addTank(tankE));
+
+        tankSet.add(tankE);
+        WaterSystem expected = new WaterSystem(tankSet);
+        assertTrue(system.tanksByBottom().equals(expected.tanksByBottom()));
+        assertTrue(system.tanksByTop().equals(expected.tanksByTop()));
+        assertTrue(system.activeTanks().equals(expected.activeTanks()));
+        assertTrue(system.activeBaseArea().equals(expected.activeBaseArea()));
+        assertTrue(system.heightToVolume(16.0) == 77.0);
+        assertTrue(system.heightToVolume(23.0) == 149.0);
+        assertTrue(system.volumeToTankLevel(77.0).get(tankE) == 4.0);
+        assertTrue(system.volumeToTankLevel(149.0).get(tankE) == 9.0);
+
+        // Removing the tank again merges away its unshared break point
+        assertTrue(system.removeTank(tankE));
+        assertFalse(system.removeTank(tankE));
+        assertFalse(system.activeTanks().containsKey(12.0));
+        assertTrue(system.activeTanks().equals(s_testSystem.activeTanks()));
+        assertTrue(system.activeBaseArea().equals(s_testSystem.activeBaseArea()));
+        assertTrue(system.heightToVolume(16.0) == 69.0);
+        assertTrue(system.volumeToTankLevel(69.0).equals(s_testSystem.volumeToTankLevel(69.0)));
+
+        // Fractional areas above the top of tank D, whose sum does not cancel exactly when subtracted
+        Tank tankF = new Tank(new double[] { 0, 0, 23 }, new double[] { 1, 0.1, 25 });
+        Tank tankG = new Tank(new double[] { 0, 0, 23 }, new double[] { 1, 0.2, 25 });
+        assertTrue(system.addTank(tankF));
+        assertTrue(system.addTank(tankG));
+        assertTrue(system.removeTank(tankF));
+        assertTrue(system.removeTank(tankG));
+
+        // No tank is active from the top of tank D, so its area is exactly zero
+        assertTrue(system.activeBaseArea().get(23.0) == 0.0);
+        assertTrue(system.activeBaseArea().equals(s_testSystem.activeBaseArea()));
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#removeTank(Tank)}, checking that merging away a break point does not
+     * generate the edge maps.
+     */
+    @Test
+    public void testRemoveTankLeavesEdgeMapsUngenerated()
+    {
+        Set<Tank> tankSet = exampleTanks();
+        WaterSystem system = new WaterSystem(tankSet);
+        system.activeBaseArea();
+
+        // Tank E has an unshared bottom and a top shared with tank C
+        Tank tankE = new Tank(new double[] { 0, 0, 12 }, new double[] { 2, 1, 21 });
+        system.addTank(tankE);
+        system.removeTank(tankE);
+
+        assertTrue(system.metrics().rebuildCount(WaterSystemMetrics.Layer.TANKS_BY_BOTTOM) == 0);
+        assertTrue(system.metrics().rebuildCount(WaterSystemMetrics.Layer.TANKS_BY_TOP) == 0);
+        assertTrue(system.activeBaseArea().equals(s_testSystem.activeBaseArea()));
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#addTank(Tank)} and {@link icd3.WaterSystem#removeTank(Tank)}, checking
+     * that the interval index is patched rather than rebuilt after each mutation, and still answers correctly.
+     */
+    @Test
+    public void testAddRemoveTankPatchesIntervalTree()
+    {
+        Random random = new Random(293);
+        List<Tank> candidates = new ArrayList<>();
+        for (int i = 0; i < 200; ++i)
+        {
+            double bottom = random.nextInt(100);
+            double[] bottomLeft = { i, 0, bottom };
+            double[] topRight = { i + 1, 1, bottom + 1 + random.nextInt(20) };
+            candidates.add(new Tank(bottomLeft, topRight));
+        }
+
+        Set<Tank> tankSet = new HashSet<>(candidates.subList(0, 100));
+        WaterSystem system = new WaterSystem(tankSet);
+        system.partiallyFilledTanks(50.0);
+
+        for (int step = 0; step < 150; ++step)
+        {
+            Tank tank = candidates.get(random.nextInt(candidates.size()));
+            if (tankSet.remove(tank))
+            {
+                assertTrue(system.removeTank(tank));
+            }
+            else
+            {
+                assertTrue(system.addTank(tank));
+                tankSet.add(tank);
+            }
+
+            // Compare against a scan of every tank, at a height that may fall on an edge
+            double height = random.nextInt(120) + (random.nextBoolean() ? 0.5 : 0.0);
+            Set<Tank> expected = new HashSet<>();
+            for (Tank candidate : tankSet)
+            {
+                if (candidate.getBottom() < height && candidate.getTop() > height)
+                {
+                    expected.add(candidate);
+                }
+            }
+            assertTrue(new HashSet<>(system.partiallyFilledTanks(height)).equals(expected));
+        }
+
+        // Built once, and rebuilt once after as many patches as it had tanks
+        assertTrue(system.metrics().rebuildCount(WaterSystemMetrics.Layer.INTERVAL_TREE) == 2);
+    }
+
+    /**
+     * Test method for {@link icd3.WaterSystem#addTank(Tank)} and {@link icd3.WaterSystem#removeTank(Tank)}, checking
+     * the volume queries of a long run of random mutations against a system built fresh from the same tanks.
+     */
+    @Test
+    public void testAddRemoveTankRandomized()
+    {
+        // Fractional areas leave rounding residue, gaps leave heights with no active tank, and the offset magnifies both
+        Random random = new Random(4293);
+        List<Tank> candidates = new ArrayList<>();
+        for (int i = 0; i < 60; ++i)
+        {
+            double bottom = 1000 + 5 * random.nextInt(40) + random.nextDouble();
+            double[] bottomLeft = { i, 0, bottom };
+            double[] topRight = { i + 0.1 + random.nextDouble(), 0.3 + random.nextDouble(), bottom + 1 + 8 * random
+                    .nextDouble() };
+            candidates.add(new Tank(bottomLeft, topRight));
+        }
+
+        Set<Tank> tankSet = new HashSet<>(candidates.subList(0, 20));
+        WaterSystem system = new WaterSystem(tankSet);
+        system.heightToVolume(system.tanksByBottom().firstKey());
+
+        for (int step = 1; step <= 400; ++step)
+        {
+            Tank tank = candidates.get(random.nextInt(candidates.size()));
+            if (tankSet.contains(tank) && tankSet.size() > 5)
+            {
+                assertTrue(system.removeTank(tank));
+                tankSet.remove(tank);
+            }
+            else if (!tankSet.contains(tank))
+            {
+                assertTrue(system.addTank(tank));
+                tankSet.add(tank);
+            }
+
+            if (step % 20 != 0)
+            {
+                continue;
+            }
+
+            WaterSystem expected = new WaterSystem(tankSet);
+            double minHeight = expected.tanksByBottom().firstKey();
+            double maxHeight = expected.tanksByTop().lastKey();
+            for (int i = 0; i <= 50; ++i)
+            {
+                double height = minHeight + (maxHeight - minHeight) * i / 50;
+                double volume = expected.heightToVolume(height);
+                assertTrue(Math.abs(system.heightToVolume(height) - volume) <= 1e-9 * Math.max(volume, 1.0));
+
+                // The fresh system's volumes must be accepted, and fill every tank to the same level
+                Map<Tank, Double> levels = system.volumeToTankLevel(volume);
+                for (Map.Entry<Tank, Double> level : expected.volumeToTankLevel(volume).entrySet())
+                {
+                    assertTrue(Math.abs(levels.get(level.getKey()) - level.getValue()) <= 1e-6);
+                }
+            }
+        }
+    }
 }